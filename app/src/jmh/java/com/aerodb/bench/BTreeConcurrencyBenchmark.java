@@ -0,0 +1,60 @@
+package com.aerodb.bench;
+
+import com.aerodb.buffer.BufferManager;
+import com.aerodb.index.BTreeFile;
+import com.aerodb.storage.HeapFile;
+import com.aerodb.storage.RecordId;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lookups with a 5% insert mix on one shared index, to see throughput scale with threads.
+ * Run it at several thread counts, e.g. ./gradlew jmh -PjmhIncludes=BTreeConcurrency -PjmhThreads=8
+ * (JMH reports the total over all threads). The pool holds the whole tree, so this
+ * measures latching, not I/O.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class BTreeConcurrencyBenchmark {
+    private static final int PRELOADED = 1_000_000;
+    private static final int WRITE_PERCENT = 5;
+
+    private File file;
+    private HeapFile heapFile;
+    private BTreeFile tree;
+    // Inserted keys are odd, so they never collide with the even preloaded ones
+    private final AtomicInteger nextKey = new AtomicInteger();
+
+    @Setup
+    public void setup() throws IOException {
+        file = File.createTempFile("btree-bench", ".db");
+        heapFile = new HeapFile(file);
+        tree = new BTreeFile(new BufferManager(heapFile, 16384));
+        for (int i = 0; i < PRELOADED; i++) {
+            tree.insert(i * 2, new RecordId(i, 0));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        heapFile.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public Object mixed() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextInt(100) < WRITE_PERCENT) {
+            int key = nextKey.getAndIncrement() * 2 + 1;
+            tree.insert(key, new RecordId(key, 1));
+            return null;
+        }
+        return tree.find(random.nextInt(PRELOADED) * 2);
+    }
+}
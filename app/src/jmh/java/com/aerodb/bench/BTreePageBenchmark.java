@@ -0,0 +1,140 @@
+package com.aerodb.bench;
+
+import com.aerodb.index.BTreeInternalPage;
+import com.aerodb.index.BTreeLeafPage;
+import com.aerodb.storage.Page;
+import com.aerodb.storage.RecordId;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point lookups and inserts on a full leaf and a full internal page.
+ * The *Linear and *PerEntry variants are the old algorithms (linear scan, entry-by-entry
+ * shifting), kept here as the baseline for the binary search and bulk move.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class BTreePageBenchmark {
+    private static final int HEADER_SIZE = 12;
+    private static final int LEAF_ENTRY = 12;
+    // Leaves keep their sibling links between the header and the entries
+    private static final int LEAF_ENTRIES = HEADER_SIZE + 8;
+    private static final int INTERNAL_ENTRY = 8;
+
+    private BTreeLeafPage leaf;
+    private BTreeInternalPage internal;
+    private Page leafPage;
+    private Page internalPage;
+    private int leafCount;
+    private int internalCount;
+
+    // Template for the insert benchmarks: one slot short of full
+    private Page almostFullLeaf;
+    private Page work;
+
+    private int[] probes;
+    private int next;
+
+    @Setup
+    public void setup() {
+        leafPage = new Page(0);
+        leaf = new BTreeLeafPage(leafPage);
+        leafCount = leaf.getMaxCapacity();
+        for (int i = 0; i < leafCount; i++) {
+            leaf.insert(i * 2, new RecordId(i, i));
+        }
+
+        internalPage = new Page(1);
+        internal = new BTreeInternalPage(internalPage);
+        internalCount = internal.getMaxCapacity();
+        internal.setPointer(0, 0);
+        for (int i = 1; i <= internalCount; i++) {
+            internal.insert(i * 2, i);
+        }
+
+        almostFullLeaf = new Page(2);
+        BTreeLeafPage l = new BTreeLeafPage(almostFullLeaf);
+        for (int i = 0; i < l.getMaxCapacity() - 1; i++) {
+            l.insert(i * 2 + 2, new RecordId(i, i));
+        }
+        work = new Page(3);
+
+        Random rnd = new Random(42);
+        probes = new int[4096];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = rnd.nextInt(leafCount * 2);
+        }
+    }
+
+    private int nextProbe() {
+        return probes[next++ & (probes.length - 1)];
+    }
+
+    @Benchmark
+    public RecordId leafLookupBinary() {
+        return leaf.lookup(nextProbe());
+    }
+
+    @Benchmark
+    public RecordId leafLookupLinear() {
+        int key = nextProbe();
+        int count = leafPage.getInt(4);
+        for (int i = 0; i < count; i++) {
+            int offset = LEAF_ENTRIES + i * LEAF_ENTRY;
+            if (leafPage.getInt(offset) == key) {
+                return new RecordId(leafPage.getInt(offset + 4), leafPage.getInt(offset + 8));
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public int internalLookupBinary() {
+        return internal.lookup(nextProbe());
+    }
+
+    @Benchmark
+    public int internalLookupLinear() {
+        int key = nextProbe();
+        int count = internalPage.getInt(4);
+        for (int i = count; i > 0; i--) {
+            int offset = HEADER_SIZE + i * INTERNAL_ENTRY;
+            if (key >= internalPage.getInt(offset)) {
+                return internalPage.getInt(offset + 4);
+            }
+        }
+        return internalPage.getInt(HEADER_SIZE + 4);
+    }
+
+    // Inserting the smallest key moves every entry: the worst case for both
+    @Benchmark
+    public Page leafInsertBulk() {
+        work.copyFrom(almostFullLeaf, 0, 0, Page.USABLE_SIZE);
+        new BTreeLeafPage(work).insert(0, new RecordId(0, 0));
+        return work;
+    }
+
+    @Benchmark
+    public Page leafInsertPerEntry() {
+        work.copyFrom(almostFullLeaf, 0, 0, Page.USABLE_SIZE);
+        int count = work.getInt(4);
+        int i = count - 1;
+        while (i >= 0 && work.getInt(LEAF_ENTRIES + i * LEAF_ENTRY) > 0) {
+            int from = LEAF_ENTRIES + i * LEAF_ENTRY;
+            int to = from + LEAF_ENTRY;
+            work.setInt(to, work.getInt(from));
+            work.setInt(to + 4, work.getInt(from + 4));
+            work.setInt(to + 8, work.getInt(from + 8));
+            i--;
+        }
+        int offset = LEAF_ENTRIES + (i + 1) * LEAF_ENTRY;
+        work.setInt(offset, 0);
+        work.setInt(offset + 4, 0);
+        work.setInt(offset + 8, 0);
+        work.setInt(4, count + 1);
+        return work;
+    }
+}
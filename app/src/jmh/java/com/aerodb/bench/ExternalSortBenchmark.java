@@ -0,0 +1,79 @@
+package com.aerodb.bench;
+
+import com.aerodb.buffer.BufferManager;
+import com.aerodb.exec.ExternalSort;
+import com.aerodb.exec.SeqScan;
+import com.aerodb.storage.FreeSpaceMap;
+import com.aerodb.storage.HeapFile;
+import com.aerodb.storage.TableHeap;
+import com.aerodb.storage.Tuple;
+import com.aerodb.storage.TupleDesc;
+import com.aerodb.storage.Type;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ORDER BY age, name over a table of about 2000 pages, with sort memory from a few
+ * pages (several merge passes) to enough for the whole table (no run is written).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ExternalSortBenchmark {
+    private static final int ROWS = 250_000;
+
+    // Frames the sort may use
+    @Param({"8", "64", "4096"})
+    public int memoryPages;
+
+    private File dataFile;
+    private File fsmFile;
+    private HeapFile heapFile;
+    private TableHeap table;
+    private TupleDesc td;
+
+    @Setup
+    public void setup() throws IOException {
+        td = new TupleDesc();
+        td.addField(Type.INT, "id");
+        td.addField(Type.STRING, "name");
+        td.addField(Type.INT, "age");
+
+        dataFile = File.createTempFile("sort-bench", ".db");
+        fsmFile = File.createTempFile("sort-bench", ".fsm");
+        heapFile = new HeapFile(dataFile);
+        table = new TableHeap(new BufferManager(heapFile, 4096), new FreeSpaceMap(new BufferManager(new HeapFile(fsmFile), 8)), td);
+        Random random = new Random(42);
+        Tuple t = new Tuple(td);
+        for (int i = 0; i < ROWS; i++) {
+            t.setField(0, i);
+            t.setField(1, "user-" + random.nextInt(ROWS));
+            t.setField(2, random.nextInt(90));
+            table.insertTuple(t);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        heapFile.close();
+        dataFile.delete();
+        fsmFile.delete();
+    }
+
+    @Benchmark
+    public long sort() {
+        ExternalSort sort = new ExternalSort(new SeqScan(table, td), memoryPages, 2, 1);
+        sort.open();
+        long checksum = 0;
+        Tuple t;
+        while ((t = sort.next()) != null) {
+            checksum = checksum * 31 + (Integer) t.getField(0);
+        }
+        sort.close();
+        return checksum;
+    }
+}
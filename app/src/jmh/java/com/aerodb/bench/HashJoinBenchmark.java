@@ -0,0 +1,98 @@
+package com.aerodb.bench;
+
+import com.aerodb.buffer.BufferManager;
+import com.aerodb.exec.HashJoin;
+import com.aerodb.exec.SeqScan;
+import com.aerodb.storage.FreeSpaceMap;
+import com.aerodb.storage.HeapFile;
+import com.aerodb.storage.TableHeap;
+import com.aerodb.storage.Tuple;
+import com.aerodb.storage.TupleDesc;
+import com.aerodb.storage.Type;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * orders JOIN users ON orders.user = users.id, with a budget that holds the whole build
+ * side and with budgets that force one or more rounds of grace partitioning.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class HashJoinBenchmark {
+    private static final int USERS = 200_000;
+    private static final int ORDERS = 1_000_000;
+
+    // Bytes of build rows held in memory at a time
+    @Param({"268435456", "4194304", "262144"})
+    public long memory;
+
+    private final File[] files = new File[4];
+    private final HeapFile[] heapFiles = new HeapFile[4];
+    private TableHeap users;
+    private TableHeap orders;
+    private TupleDesc userDesc;
+    private TupleDesc orderDesc;
+
+    @Setup
+    public void setup() throws IOException {
+        userDesc = new TupleDesc();
+        userDesc.addField(Type.INT, "id");
+        userDesc.addField(Type.STRING, "name");
+        orderDesc = new TupleDesc();
+        orderDesc.addField(Type.INT, "id");
+        orderDesc.addField(Type.INT, "user");
+        orderDesc.addField(Type.LONG, "amount");
+        users = openTable(0);
+        orders = openTable(2);
+
+        Random random = new Random(42);
+        Tuple user = new Tuple(userDesc);
+        for (int i = 0; i < USERS; i++) {
+            user.setField(0, i);
+            user.setField(1, "user-" + i);
+            users.insertTuple(user);
+        }
+        Tuple order = new Tuple(orderDesc);
+        for (int i = 0; i < ORDERS; i++) {
+            order.setField(0, i);
+            order.setField(1, random.nextInt(USERS));
+            order.setField(2, (long) random.nextInt(10_000));
+            orders.insertTuple(order);
+        }
+    }
+
+    private TableHeap openTable(int first) throws IOException {
+        for (int i = first; i < first + 2; i++) {
+            files[i] = File.createTempFile("join-bench", ".db");
+            heapFiles[i] = new HeapFile(files[i]);
+        }
+        return new TableHeap(new BufferManager(heapFiles[first], 1024),
+                new FreeSpaceMap(new BufferManager(heapFiles[first + 1], 8)));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (int i = 0; i < files.length; i++) {
+            heapFiles[i].close();
+            files[i].delete();
+        }
+    }
+
+    @Benchmark
+    public long join() {
+        HashJoin join = new HashJoin(new SeqScan(orders, orderDesc), 1, new SeqScan(users, userDesc), 0, memory);
+        join.open();
+        long sum = 0;
+        Tuple t;
+        while ((t = join.next()) != null) {
+            sum += (Long) t.getField(2);
+        }
+        join.close();
+        return sum;
+    }
+}
@@ -0,0 +1,84 @@
+package com.aerodb.bench;
+
+import com.aerodb.buffer.BufferManager;
+import com.aerodb.exec.AggregateResult;
+import com.aerodb.exec.BatchFilter;
+import com.aerodb.exec.ParallelScan;
+import com.aerodb.storage.FreeSpaceMap;
+import com.aerodb.storage.HeapFile;
+import com.aerodb.storage.TableHeap;
+import com.aerodb.storage.Tuple;
+import com.aerodb.storage.TupleDesc;
+import com.aerodb.storage.Type;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The grouped, filtered aggregate of VectorizedScanBenchmark run by ParallelScan on
+ * pools of 1..N workers, and a parallel stream over the same table. The buffer pool
+ * is smaller than the table, so pages keep being read back from disk.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ParallelScanBenchmark {
+    private static final int ROWS = 500_000;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private File dataFile;
+    private File fsmFile;
+    private HeapFile heapFile;
+    private ForkJoinPool pool;
+    private ParallelScan scan;
+
+    @Setup
+    public void setup() throws IOException {
+        TupleDesc td = new TupleDesc();
+        td.addField(Type.INT, "id");
+        td.addField(Type.STRING, "name");
+        td.addField(Type.INT, "age");
+
+        dataFile = File.createTempFile("parallel-bench", ".db");
+        fsmFile = File.createTempFile("parallel-bench", ".fsm");
+        heapFile = new HeapFile(dataFile);
+        BufferManager bufferManager = new BufferManager(heapFile, 1024);
+        TableHeap table = new TableHeap(bufferManager, new FreeSpaceMap(new BufferManager(new HeapFile(fsmFile), 8)), td);
+        Random random = new Random(42);
+        Tuple t = new Tuple(td);
+        for (int i = 0; i < ROWS; i++) {
+            t.setField(0, i);
+            t.setField(1, "user-" + i);
+            t.setField(2, random.nextInt(90));
+            table.insertTuple(t);
+        }
+        table.flush();
+        pool = new ForkJoinPool(threads);
+        scan = new ParallelScan(table, td, pool, ParallelScan.DEFAULT_MORSEL_PAGES);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        heapFile.close();
+        dataFile.delete();
+        fsmFile.delete();
+    }
+
+    @Benchmark
+    public AggregateResult aggregate() {
+        // Batch columns: 0 = id, 1 = age
+        return scan.aggregate(s -> new BatchFilter(s, 1, 30, 60), 1, 0, 0, 2);
+    }
+
+    @Benchmark
+    public long stream() throws Exception {
+        return pool.submit(() -> scan.stream().filter(t -> (Integer) t.getField(2) >= 30).count()).get();
+    }
+}
@@ -0,0 +1,66 @@
+package com.aerodb.bench;
+
+import com.aerodb.storage.HeapPage;
+import com.aerodb.storage.Page;
+import com.aerodb.storage.Tuple;
+import com.aerodb.storage.TupleDesc;
+import com.aerodb.storage.Type;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserting a tuple into a heap page: serialized to a byte[] and copied in (the old path)
+ * versus encoded straight into the page. Run with -prof gc to see the allocation rate:
+ * ./gradlew jmh -PjmhIncludes=TupleSerialize -PjmhProfilers=gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class TupleSerializeBenchmark {
+    // HeapPage header: Count(4B), FreeSpacePtr(4B)
+    private static final int OFF_COUNT = 0;
+    private static final int OFF_FREE_PTR = 4;
+
+    private Page page;
+    private HeapPage heapPage;
+    private Tuple tuple;
+    private int size;
+
+    @Setup
+    public void setup() {
+        TupleDesc td = new TupleDesc();
+        td.addField(Type.INT, "id");
+        td.addField(Type.STRING, "name");
+        td.addField(Type.INT, "age");
+        tuple = new Tuple(td);
+        tuple.setField(0, 42);
+        tuple.setField(1, "Grace Hopper-M\u00fcller");
+        tuple.setField(2, 85);
+        size = tuple.getSerializedSize();
+
+        page = new Page(0);
+        heapPage = new HeapPage(page);
+    }
+
+    // Empties the page once the next tuple would not fit
+    private void makeRoom() {
+        if (heapPage.getFreeSpace() < HeapPage.spaceNeeded(size)) {
+            page.setInt(OFF_COUNT, 0);
+            page.setInt(OFF_FREE_PTR, Page.USABLE_SIZE);
+        }
+        page.clearChanges();
+    }
+
+    @Benchmark
+    public int serializeAndCopy() {
+        makeRoom();
+        return heapPage.insertTuple(tuple.serialize());
+    }
+
+    @Benchmark
+    public int serializeIntoPage() {
+        makeRoom();
+        return heapPage.insertTuple(tuple);
+    }
+}
@@ -0,0 +1,62 @@
+package com.aerodb.bench;
+
+import com.aerodb.storage.HeapPage;
+import com.aerodb.storage.Page;
+import com.aerodb.storage.Tuple;
+import com.aerodb.storage.TupleDesc;
+import com.aerodb.storage.TupleView;
+import com.aerodb.storage.Type;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Summing one INT column (behind a string) over a full heap page: decoding every tuple
+ * (getAllTuples) versus one reused TupleView. Run with -PjmhProfilers=gc for allocations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class TupleViewBenchmark {
+    private TupleDesc td;
+    private HeapPage heapPage;
+    private TupleView view;
+
+    @Setup
+    public void setup() {
+        td = new TupleDesc();
+        td.addField(Type.INT, "id");
+        td.addField(Type.STRING, "name");
+        td.addField(Type.INT, "age");
+        heapPage = new HeapPage(new Page(0));
+        Tuple t = new Tuple(td);
+        for (int i = 0; ; i++) {
+            t.setField(0, i);
+            t.setField(1, "user-" + i);
+            t.setField(2, i % 100);
+            if (heapPage.getFreeSpace() < HeapPage.spaceNeeded(t.getSerializedSize())) {
+                break;
+            }
+            heapPage.insertTuple(t);
+        }
+        view = new TupleView(td);
+    }
+
+    @Benchmark
+    public long projectWithTuples() {
+        long sum = 0;
+        for (Tuple t : heapPage.getAllTuples(td)) {
+            sum += (Integer) t.getField(2);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long projectWithView() {
+        long sum = 0;
+        for (int i = 0; i < heapPage.getNumTuples(); i++) {
+            sum += heapPage.getTupleView(i, view).getInt(2);
+        }
+        return sum;
+    }
+}
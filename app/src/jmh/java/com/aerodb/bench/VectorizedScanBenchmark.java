@@ -0,0 +1,99 @@
+package com.aerodb.bench;
+
+import com.aerodb.buffer.BufferManager;
+import com.aerodb.exec.AggregateResult;
+import com.aerodb.exec.BatchAggregate;
+import com.aerodb.exec.BatchFilter;
+import com.aerodb.exec.BatchScan;
+import com.aerodb.storage.FreeSpaceMap;
+import com.aerodb.storage.HeapFile;
+import com.aerodb.storage.HeapPage;
+import com.aerodb.storage.Page;
+import com.aerodb.storage.TableHeap;
+import com.aerodb.storage.Tuple;
+import com.aerodb.storage.TupleDesc;
+import com.aerodb.storage.Type;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SELECT age, COUNT(*), SUM(id) FROM people WHERE age BETWEEN 30 AND 60 GROUP BY age,
+ * row at a time over HeapPage.getAllTuples versus BatchScan -> BatchFilter -> BatchAggregate.
+ * The pool holds the whole table, so this measures decoding and aggregation, not I/O.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class VectorizedScanBenchmark {
+    private static final int ROWS = 200_000;
+
+    private File dataFile;
+    private File fsmFile;
+    private HeapFile heapFile;
+    private BufferManager bufferManager;
+    private TableHeap table;
+    private TupleDesc td;
+
+    @Setup
+    public void setup() throws IOException {
+        td = new TupleDesc();
+        td.addField(Type.INT, "id");
+        td.addField(Type.STRING, "name");
+        td.addField(Type.INT, "age");
+
+        dataFile = File.createTempFile("vector-bench", ".db");
+        fsmFile = File.createTempFile("vector-bench", ".fsm");
+        heapFile = new HeapFile(dataFile);
+        bufferManager = new BufferManager(heapFile, 4096);
+        table = new TableHeap(bufferManager, new FreeSpaceMap(new BufferManager(new HeapFile(fsmFile), 8)), td);
+        Random random = new Random(42);
+        Tuple t = new Tuple(td);
+        for (int i = 0; i < ROWS; i++) {
+            t.setField(0, i);
+            t.setField(1, "user-" + i);
+            t.setField(2, random.nextInt(90));
+            table.insertTuple(t);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        heapFile.close();
+        dataFile.delete();
+        fsmFile.delete();
+    }
+
+    @Benchmark
+    public Map<Integer, long[]> rowAtATime() {
+        Map<Integer, long[]> groups = new HashMap<>();
+        for (int pageId = 0; pageId < table.getNumPages(); pageId++) {
+            Page page = bufferManager.pinPage(pageId);
+            try {
+                for (Tuple t : new HeapPage(page).getAllTuples(td)) {
+                    int age = (Integer) t.getField(2);
+                    if (age >= 30 && age <= 60) {
+                        long[] acc = groups.computeIfAbsent(age, k -> new long[2]);
+                        acc[0]++;
+                        acc[1] += (Integer) t.getField(0);
+                    }
+                }
+            } finally {
+                bufferManager.unpinPage(pageId, false);
+            }
+        }
+        return groups;
+    }
+
+    @Benchmark
+    public AggregateResult vectorized() {
+        // Batch columns: 0 = id, 1 = age
+        BatchScan scan = new BatchScan(table, td, 0, 2);
+        return new BatchAggregate(new BatchFilter(scan, 1, 30, 60), 1, 0).run();
+    }
+}
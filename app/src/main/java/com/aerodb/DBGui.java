@@ -2,6 +2,7 @@ package com.aerodb;
 
 import com.aerodb.buffer.BufferManager;
 import com.aerodb.index.BTreeFile;
+import com.aerodb.wal.LogManager;
 import com.aerodb.storage.*;
 
 import javax.swing.*;
@@ -15,10 +16,10 @@ public class DBGui {
     private JTextField idField, nameField, ageField, searchField;
 
     // Backend References
-    private HeapPage heapPage;
+    private TableHeap table;
     private BTreeFile index;
-    private HeapFile heapFile;
     private BufferManager indexBm;
+    private LogManager wal;
     private TupleDesc schema;
 
     // --- COLORS (Dark Theme) ---
@@ -30,11 +31,11 @@ public class DBGui {
     private final Color BTN_SEARCH = new Color(33, 150, 243);    // Blue
     private final Color BTN_EXIT = new Color(244, 67, 54);       // Red
 
-    public DBGui(HeapPage heapPage, BTreeFile index, HeapFile heapFile, BufferManager indexBm, TupleDesc schema) {
-        this.heapPage = heapPage;
+    public DBGui(TableHeap table, BTreeFile index, BufferManager indexBm, LogManager wal, TupleDesc schema) {
+        this.table = table;
         this.index = index;
-        this.heapFile = heapFile;
         this.indexBm = indexBm;
+        this.wal = wal;
         this.schema = schema;
         initializeUI();
     }
@@ -139,10 +140,12 @@ public class DBGui {
                 t.setField(1, name);
                 t.setField(2, age);
 
-                int slot = heapPage.insertTuple(t);
-                index.insert(id, new RecordId(0, slot));
+                RecordId rid = table.insertTuple(t);
+                index.insert(id, rid);
+                // Durable once the log is on disk; the pages follow later
+                wal.commit();
 
-                log(">> Inserted: [" + name + "] (ID: " + id + ") at Slot " + slot);
+                log(">> Inserted: [" + name + "] (ID: " + id + ") at Page " + rid.pageId + ", Slot " + rid.slotNumber);
                 
                 idField.setText("");
                 nameField.setText("");
@@ -161,14 +164,7 @@ public class DBGui {
 
                 if (rid != null) {
                     log("Index Hit! (" + (end - start) + "ns)");
-                    Tuple t;
-                    if (rid.pageId == 0) {
-                        t = heapPage.getTuple(rid.slotNumber, schema);
-                    } else {
-                        // In a real scenario, fetch via buffer pool
-                        Page p = heapFile.readPage(rid.pageId); 
-                        t = new HeapPage(p).getTuple(rid.slotNumber, schema);
-                    }
+                    Tuple t = table.getTuple(rid, schema);
                     log(">> FOUND: ID=" + t.getField(0) + ", Name=" + t.getField(1)+", Age="+ t.getField(2));
                 } else {
                     log(">> ID " + key + " not found.");
@@ -181,8 +177,9 @@ public class DBGui {
         flushBtn.addActionListener(e -> {
             log("Flushing data...");
             try {
-                heapFile.writePage(heapPage.getPage());
+                table.flush();
                 indexBm.flushAll();
+                wal.checkpoint();
                 log("Saved. Exiting...");
                 frame.dispose();
                 
@@ -3,6 +3,7 @@ package com.aerodb;
 import com.aerodb.buffer.BufferManager;
 import com.aerodb.index.BTreeFile;
 import com.aerodb.storage.*;
+import com.aerodb.wal.LogManager;
 
 import javax.swing.*;
 import java.io.File;
@@ -15,7 +16,6 @@ public class Main {
         // 1. Setup Phase (Initialization)
         File dbFile = new File("data.db");
         File indexFile = new File("index.db");
-        boolean isExistingDb = dbFile.exists();
 
         // Define Schema
         TupleDesc schema = new TupleDesc();
@@ -26,29 +26,30 @@ public class Main {
         // Initialize Storage
         HeapFile heapFile = new HeapFile(dbFile);
         BufferManager bm = new BufferManager(heapFile, 50);
+        // Keep a quarter of the data pool clean so inserts rarely wait on a write
+        bm.startBackgroundWriter(0.25, 100);
+        HeapFile fsmFile = new HeapFile(new File("data.fsm"));
+        BufferManager fsmBm = new BufferManager(fsmFile, 8);
 
-        HeapPage heapPage;
-        if (isExistingDb) {
-            Page p0 = heapFile.readPage(0);
-            heapPage = new HeapPage(p0);
-        } else {
-            Page p0 = new Page(0);
-            heapPage = new HeapPage(p0);
-        }
-
-        // Initialize Index
         HeapFile indexDisk = new HeapFile(indexFile);
-        if (!isExistingDb || !indexFile.exists()) {
-            Page rootPage = new Page(0);
-            indexDisk.writePage(rootPage);
-        }
         BufferManager indexBm = new BufferManager(indexDisk, 50);
-        BTreeFile index = new BTreeFile(indexBm, 0);
+
+        // Write-ahead log: replay what a crash left out before anything reads the files
+        LogManager wal = new LogManager(new File("aerodb.wal"));
+        wal.register(0, bm);
+        wal.register(1, fsmBm);
+        wal.register(2, indexBm);
+        wal.recover();
+
+        TableHeap table = new TableHeap(bm, new FreeSpaceMap(fsmBm), schema);
+
+        // Initialize Index (formats a new index file on first start)
+        BTreeFile index = new BTreeFile(indexBm);
 
         // 2. Launch GUI
         // We pass ALL the necessary backend objects to the GUI
         SwingUtilities.invokeLater(() -> {
-            new DBGui(heapPage, index, heapFile, indexBm, schema).show();
+            new DBGui(table, index, indexBm, wal, schema).show();
         });
     }
 }
\ No newline at end of file
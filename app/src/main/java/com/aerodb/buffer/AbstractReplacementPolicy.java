@@ -0,0 +1,97 @@
+package com.aerodb.buffer;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the hit/miss counters every policy exposes, so workloads can be compared.
+ * A prefetched page enters the policy through onPrefetch(), with no reference history,
+ * and its first pin is reported as its load; one evicted before it was ever pinned
+ * leaves no history behind (see isUnusedPrefetch). Read-ahead must not make a page that
+ * is used once look like one used twice, or a prefetched scan would get past the scan
+ * resistance of LRU-K, 2Q and ARC.
+ */
+public abstract class AbstractReplacementPolicy implements ReplacementPolicy {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    protected final int numFrames;
+    // 1 for a frame whose page was prefetched and has not been pinned since, and that page
+    private final AtomicIntegerArray unpinnedPrefetch;
+    private final int[] prefetchedPage;
+
+    protected AbstractReplacementPolicy(int numFrames) {
+        this.numFrames = numFrames;
+        this.unpinnedPrefetch = new AtomicIntegerArray(numFrames);
+        this.prefetchedPage = new int[numFrames];
+    }
+
+    @Override
+    public final void recordHit(int frame) {
+        hits.increment();
+        // The first pin of a prefetched page is its first reference: to the policy, its load
+        if (unpinnedPrefetch.get(frame) == 1 && unpinnedPrefetch.compareAndSet(frame, 1, 0)) {
+            onLoad(frame, prefetchedPage[frame]);
+        } else {
+            onHit(frame);
+        }
+    }
+
+    @Override
+    public final void recordLoad(int frame, int pageId) {
+        misses.increment();
+        unpinnedPrefetch.set(frame, 0);
+        onLoad(frame, pageId);
+    }
+
+    // Not a miss: the first pin of a prefetched page counts as a hit
+    @Override
+    public final void recordPrefetch(int frame, int pageId) {
+        prefetchedPage[frame] = pageId;
+        unpinnedPrefetch.set(frame, 1);
+        onPrefetch(frame, pageId);
+    }
+
+    /**
+     * True if the page in 'frame' was prefetched and never pinned. Policies that remember
+     * evicted pages (ghost lists, retained history) forget such a page when it is removed:
+     * it was never referenced, so loading it again is no sign that it is in demand.
+     */
+    protected final boolean isUnusedPrefetch(int frame) {
+        return unpinnedPrefetch.get(frame) == 1;
+    }
+
+    protected abstract void onHit(int frame);
+
+    protected abstract void onLoad(int frame, int pageId);
+
+    /**
+     * A page was read into 'frame' ahead of its first use. It must become evictable, but
+     * not count as referenced: onLoad() follows on its first pin. By default the same as
+     * a load, which suits policies that only track recency.
+     */
+    protected void onPrefetch(int frame, int pageId) {
+        onLoad(frame, pageId);
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRatio() {
+        long h = getHits();
+        long total = h + getMisses();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{hits=" + getHits() + ", misses=" + getMisses() + "}";
+    }
+}
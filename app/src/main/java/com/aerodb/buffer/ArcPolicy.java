@@ -0,0 +1,90 @@
+package com.aerodb.buffer;
+
+import java.util.function.IntPredicate;
+
+/**
+ * ARC (Megiddo and Modha). T1 holds pages seen once recently, T2 pages seen at least
+ * twice; the ghost lists B1 and B2 remember what was evicted from each. A miss that hits
+ * a ghost list shifts the target size 'p' of T1, so the split between recency and
+ * frequency adapts to the workload with no tuning knob.
+ */
+public class ArcPolicy extends AbstractReplacementPolicy {
+    private final FrameList t1;
+    private final FrameList t2;
+    private final GhostList b1;
+    private final GhostList b2;
+    private int p; // target size of T1
+
+    public ArcPolicy(int numFrames) {
+        super(numFrames);
+        this.t1 = new FrameList(numFrames);
+        this.t2 = new FrameList(numFrames);
+        this.b1 = new GhostList(numFrames);
+        this.b2 = new GhostList(numFrames);
+    }
+
+    @Override
+    protected synchronized void onHit(int frame) {
+        // Seen again: frequent
+        t1.remove(frame);
+        t2.moveToHead(frame);
+    }
+
+    @Override
+    protected synchronized void onLoad(int frame, int pageId) {
+        t1.remove(frame);
+        t2.remove(frame);
+        if (b1.remove(pageId)) {
+            // Evicted from T1 too early: give T1 more room
+            p = Math.min(numFrames, p + Math.max(b2.size() / Math.max(b1.size(), 1), 1));
+            t2.pushHead(frame);
+        } else if (b2.remove(pageId)) {
+            // Evicted from T2 too early: give T2 more room
+            p = Math.max(0, p - Math.max(b1.size() / Math.max(b2.size(), 1), 1));
+            t2.pushHead(frame);
+        } else {
+            t1.pushHead(frame);
+        }
+        // Keep |T1|+|B1| <= c and the whole directory <= 2c
+        b1.trim(numFrames - t1.size());
+        b2.trim(2 * numFrames - t1.size() - t2.size() - b1.size());
+    }
+
+    // Into T1 without consulting the ghost lists: that happens on its first pin
+    @Override
+    protected synchronized void onPrefetch(int frame, int pageId) {
+        t1.remove(frame);
+        t2.remove(frame);
+        t1.pushHead(frame);
+    }
+
+    @Override
+    public synchronized void recordRemoval(int frame, int pageId) {
+        boolean unused = isUnusedPrefetch(frame);
+        if (t1.contains(frame)) {
+            t1.remove(frame);
+            if (!unused) {
+                b1.add(pageId);
+            }
+        } else if (t2.contains(frame)) {
+            t2.remove(frame);
+            if (!unused) {
+                b2.add(pageId);
+            }
+        }
+    }
+
+    @Override
+    public synchronized int pickVictim(int incomingPageId, IntPredicate evictable) {
+        boolean fromT1 = t1.size() > 0
+                && (t1.size() > p || (b2.contains(incomingPageId) && t1.size() == p));
+        FrameList first = fromT1 ? t1 : t2;
+        FrameList second = fromT1 ? t2 : t1;
+        int frame = first.findFromTail(evictable);
+        return frame != -1 ? frame : second.findFromTail(evictable);
+    }
+
+    public synchronized int getTargetT1Size() {
+        return p;
+    }
+}
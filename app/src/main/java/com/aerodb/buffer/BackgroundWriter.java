@@ -0,0 +1,71 @@
+package com.aerodb.buffer;
+
+/**
+ * Daemon thread that keeps a share of a BufferManager's frames clean.
+ * It wakes up every 'intervalMs', or sooner when a miss had to evict a dirty page,
+ * and writes back dirty unpinned pages in page id order until the clean target is met.
+ * A failed write stops it; BufferManager.stopBackgroundWriter() then throws the failure.
+ */
+class BackgroundWriter extends Thread {
+    private final BufferManager pool;
+    private final double cleanTarget;
+    private final long intervalMs;
+    private volatile boolean running = true;
+    private volatile RuntimeException failure;
+
+    BackgroundWriter(BufferManager pool, double cleanTarget, long intervalMs) {
+        super("aerodb-page-writer");
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("intervalMs must be positive");
+        }
+        this.pool = pool;
+        this.cleanTarget = cleanTarget;
+        this.intervalMs = intervalMs;
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            synchronized (this) {
+                try {
+                    wait(intervalMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            if (!running) {
+                return;
+            }
+            try {
+                pool.writeBehind(cleanTarget);
+            } catch (RuntimeException e) {
+                // The pages stay dirty for the next checkpoint, which fails too if the
+                // disk still does; writing on in the background would only hide it
+                failure = e;
+                running = false;
+                return;
+            }
+        }
+    }
+
+    // The error that stopped the thread, or null
+    RuntimeException getFailure() {
+        return failure;
+    }
+
+    synchronized void wakeUp() {
+        notifyAll();
+    }
+
+    // Stops the thread and waits for the round in progress to finish
+    void shutdown() {
+        running = false;
+        wakeUp();
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
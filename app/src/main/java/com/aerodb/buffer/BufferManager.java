@@ -2,55 +2,217 @@ package com.aerodb.buffer;
 
 import com.aerodb.storage.Page;
 import com.aerodb.storage.HeapFile;
+import com.aerodb.wal.LogManager;
 
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
 
+/**
+ * Fixed-size, thread-safe page cache over one HeapFile.
+ * All frames come from one off-heap FrameArena allocated up front, and each frame has
+ * a single Page handle that is reused for whatever disk page it holds.
+ *
+ * Callers pin a page while they use it and unpin it when done; a pinned frame is never
+ * evicted. The page table is split into lock stripes, so threads hitting different pages
+ * do not contend. Page contents are guarded by each Page's latch.
+ *
+ * Which frame to evict is up to a pluggable ReplacementPolicy chosen at construction:
+ * CLOCK (the default, lock-free on hits), LRU, LRU-K, 2Q or ARC.
+ *
+ * Dirty pages are written back in page id order, with neighbouring pages merged into
+ * one gather write: by checkpoint(), by flushAll(), and by an optional background writer
+ * that keeps a target share of frames clean so misses rarely have to write on their own.
+ *
+ * Sequential access is detected per file (see ReadAhead), and the next pages are then
+ * read asynchronously into free frames with one scatter read per run, so scans see
+ * sequential bandwidth instead of one 4 KB read per miss. Callers that know their access
+ * pattern can also ask for pages ahead of time with prefetch().
+ *
+ * With a LogManager attached, marking a page dirty logs its changes first, and a page is
+ * only written once the log is durable up to the page's LSN (write-ahead logging). Dirty
+ * pages must then be marked while the caller still holds the page's exclusive latch.
+ */
 public class BufferManager {
-    
+
+    private static final int NONE = -1;
+    private static final int MAX_STRIPES = 64;
+    //Longest run of neighbouring pages merged into one gather write (256 KB)
+    private static final int MAX_RUN = 64;
+
     private final HeapFile diskManager;
-    private final Map<Integer, Page> pageCache;
     private final int maxPages;
 
-    private final Map<Integer, Boolean> dirtyPages;
+    //Frames and their state, indexed by frame number
+    private final FrameArena arena;
+    private final Page[] frames;
+    private final AtomicIntegerArray framePage; //page held by each frame, or NONE
+    private final AtomicIntegerArray pins;
+    private final AtomicIntegerArray dirty;
+    private final AtomicIntegerArray loading;
+    //Writes of each frame under way: its dirty bit is already clear, but the page is not on disk yet
+    private final AtomicIntegerArray writing;
+    private final AtomicInteger dirtyCount=new AtomicInteger();
+
+    //Page table split into stripes by page id. A frame's pin count is only
+    //raised while holding the stripe lock of the page it holds
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    //Eviction state: free frames and the replacement policy
+    private final ReentrantLock evictionLock=new ReentrantLock();
+    private final int[] freeFrames;
+    private int numFree;
+    private final ReplacementPolicy policy;
+    //Frames already tried during the current eviction round are skipped
+    private final int[] triedInRound;
+    private int round;
+    private final IntPredicate evictable;
+
+    private volatile BackgroundWriter writer;
+
+    //Read-ahead: detection, and one daemon thread doing the reads. A full queue drops requests
+    private final ReadAhead readAhead;
+    private volatile boolean readAheadEnabled;
+    private final ThreadPoolExecutor prefetcher;
+    private final AtomicInteger prefetchedPages=new AtomicInteger();
+
+    //Run at the start of every checkpoint, to write state kept in memory into its pages
+    private final List<Runnable> checkpointHooks=new CopyOnWriteArrayList<>();
+
+    //Write-ahead log, if any, and the id this file has in it
+    private volatile LogManager log;
+    private int logFileId;
+
+    private static final class Stripe {
+        final ReentrantLock lock=new ReentrantLock();
+        final Condition loaded=lock.newCondition();
+        final PageTable table;
+
+        Stripe(int expectedEntries){
+            this.table=new PageTable(expectedEntries);
+        }
+    }
 
     public BufferManager (HeapFile diskManager, int maxPages){
+        this(diskManager,maxPages,ClockPolicy::new);
+    }
+
+    //e.g. new BufferManager(file, 1000, ArcPolicy::new)
+    public BufferManager (HeapFile diskManager, int maxPages, IntFunction<ReplacementPolicy> policyFactory){
 
         //Store dependencies
         this.diskManager=diskManager;
         this.maxPages=maxPages;
-        this.dirtyPages=new HashMap<>();
-
-        //The LRU Cache
-        // Initial Capacity: maxPages
-        // Load Factor: 0.75f (standard)
-        // Access Order: true (Crucial for LRU: orders by access, not insertion)
-        this.pageCache=new LinkedHashMap<>(maxPages,0.75f,true){
-            /**
-             * This method is called by LinkedHashMap after every 'put' or 'putAll'.
-             * If the map size exceeds the limit, the eldest (least recently used) entry is returned here.
-             */
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<Integer,Page> eldest){
-                if(size()>BufferManager.this.maxPages){
-                    evictPage(eldest.getKey());
-                    return true;
-                }
-                return false;
+        this.policy=policyFactory.apply(maxPages);
+
+        //A memory-mapped file hands out views into the mapping, so no arena is needed
+        this.arena=diskManager.isMemoryMapped() ? null : new FrameArena(maxPages);
+        this.frames=new Page[maxPages];
+        if(arena!=null){
+            for(int i=0;i<maxPages;i++){
+                frames[i]=arena.newFrame(i);
             }
-        };
+        }
+        this.framePage=new AtomicIntegerArray(maxPages);
+        this.pins=new AtomicIntegerArray(maxPages);
+        this.dirty=new AtomicIntegerArray(maxPages);
+        this.loading=new AtomicIntegerArray(maxPages);
+        this.writing=new AtomicIntegerArray(maxPages);
+        this.triedInRound=new int[maxPages];
+        this.evictable=frame->triedInRound[frame]!=round && framePage.get(frame)!=NONE
+                && pins.get(frame)==0 && loading.get(frame)==0;
+
+        int numStripes=Integer.highestOneBit(Math.max(1,Math.min(MAX_STRIPES,maxPages)));
+        this.stripes=new Stripe[numStripes];
+        this.stripeMask=numStripes-1;
+        for(int i=0;i<numStripes;i++){
+            stripes[i]=new Stripe(maxPages/numStripes+1);
+        }
+
+        this.freeFrames=new int[maxPages];
+        for(int i=0;i<maxPages;i++){
+            framePage.set(i,NONE);
+            freeFrames[i]=maxPages-1-i;
+        }
+        this.numFree=maxPages;
+
+        //Read-ahead only pays off when a miss costs a read; a mapped file leaves it to the OS
+        this.readAhead=new ReadAhead(maxPages);
+        this.readAheadEnabled=arena!=null;
+        this.prefetcher=new ThreadPoolExecutor(1,1,30,TimeUnit.SECONDS,new ArrayBlockingQueue<>(4),r->{
+            Thread t=new Thread(r,"aerodb-prefetch");
+            t.setDaemon(true);
+            return t;
+        },new ThreadPoolExecutor.DiscardPolicy());
+        prefetcher.allowCoreThreadTimeOut(true);
     }
 
-    //Retrives a Page. If not in cache, loads it from disk.
-    public Page getPage(int pageId){
-        if (pageCache.containsKey(pageId))
-            return pageCache.get(pageId);
+    /**
+     * Pins a page in the pool, loading it from disk if needed, and returns it.
+     * The page stays in its frame until a matching unpinPage() call.
+     */
+    public Page pinPage(int pageId){
+        Stripe s=stripeOf(pageId);
+        while(true){
+            int frame;
+            s.lock.lock();
+            try{
+                frame=s.table.get(pageId);
+                //Another thread is reading this page in: wait for it instead of reading it twice
+                while(frame!=NONE && loading.get(frame)==1){
+                    s.loaded.awaitUninterruptibly();
+                    frame=s.table.get(pageId);
+                }
+                if(frame!=NONE){
+                    pins.incrementAndGet(frame);
+                }
+            }finally{
+                s.lock.unlock();
+            }
+            if(frame!=NONE){
+                policy.recordHit(frame);
+                readAhead(pageId);
+                return frames[frame];
+            }
+
+            //Not in cache? Load it from Disk into a free (or evicted) frame
+            Page p=load(pageId);
+            if(p!=null){
+                readAhead(pageId);
+                return p;
+            }
+        }
+    }
 
-        //Not in cache? Load it from Disk
-        Page p =diskManager.readPage(pageId);
-        pageCache.put(pageId,p);
-        return p;
+    /**
+     * Releases one pin on a page. If 'isDirty' the page will be written to disk
+     * when evicted or flushed, and its changes are logged if there is a log.
+     */
+    public void unpinPage(int pageId, boolean isDirty){
+        int frame=lookup(pageId);
+        if(frame==NONE){
+            throw new IllegalStateException("Page "+pageId+" is not in the buffer pool");
+        }
+        //Mark dirty before dropping the pin so an evictor never sees it clean and unpinned
+        if(isDirty){
+            markDirty(frame);
+            logChanges(frame);
+        }
+        if(pins.decrementAndGet(frame)<0){
+            pins.incrementAndGet(frame);
+            throw new IllegalStateException("Page "+pageId+" is not pinned");
+        }
     }
 
     /**
@@ -58,43 +220,565 @@ public class BufferManager {
      * It will be written to disk when evicted or flushed
      */
     public void setPageDirty(int pageId, boolean dirty){
-        if (pageCache.containsKey(pageId))
-            dirtyPages.put((pageId), dirty);
+        int frame=lookup(pageId);
+        if(frame==NONE)
+            return;
+        if(dirty){
+            markDirty(frame);
+            logChanges(frame);
+        }else if(this.dirty.getAndSet(frame,0)==1)
+            dirtyCount.decrementAndGet();
     }
 
-    //Helper to write a specific page back to disk
-    private void evictPage(int pageId){
-        if(dirtyPages.getOrDefault(pageId, false)){
-            Page p= pageCache.get(pageId);
-            if(p!=null){
-                diskManager.writePage(p);
-                dirtyPages.remove(p);
+    /**
+     * Writes every dirty page to disk and forces it to the device, but keeps
+     * the cache as it is. Pages are written in page id order, neighbours in one write.
+     * Writes already started by the background writer or an eviction are waited for, so
+     * every change made before the call is on the device when it returns.
+     */
+    public void checkpoint(){
+        for(Runnable hook:checkpointHooks){
+            hook.run();
+        }
+        writeBack(Integer.MAX_VALUE,false);
+        //A page another thread is writing looked clean to writeBack
+        for(int frame=0;frame<maxPages;frame++){
+            while(writing.get(frame)!=0){
+                Thread.yield();
             }
         }
+        //Make the writes durable (also msyncs a memory-mapped file)
+        diskManager.force();
+    }
+
+    /**
+     * Runs 'hook' at the start of every checkpoint (and so of every flushAll()), before
+     * the dirty pages are written: a user of the file that keeps some of its state in
+     * memory writes it into its pages there.
+     */
+    public void addCheckpointHook(Runnable hook){
+        checkpointHooks.add(hook);
     }
 
-    //Forces all dirty pages to disk
     /**
      * Flushes all pages in the cache.
-     * Iterates through every page in memory, writes dirty ones to disk,
-     * and completely clears the cache.
-     * * Typically used during system shutdown or transaction commits.
+     * Checkpoints every dirty page, then clears the cache (pinned pages stay).
+     * * Typically used during system shutdown.
      */
     public void flushAll(){
-        for(Integer pageId: pageCache.keySet()){
-            evictPage(pageId);
+        checkpoint();
+        //Drop every clean, unpinned page
+        evictionLock.lock();
+        try{
+            for(int frame=0;frame<maxPages;frame++){
+                int pageId=framePage.get(frame);
+                if(pageId!=NONE && tryRemove(frame,pageId)){
+                    policy.recordRemoval(frame,pageId);
+                    pins.set(frame,0);
+                    freeFrames[numFree++]=frame;
+                }
+            }
+        }finally{
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Starts a daemon thread that writes dirty, unpinned pages back in the background
+     * whenever fewer than 'cleanTarget' (0..1) of the frames are clean.
+     */
+    public synchronized void startBackgroundWriter(double cleanTarget, long intervalMs){
+        if(cleanTarget<0 || cleanTarget>1){
+            throw new IllegalArgumentException("cleanTarget must be between 0 and 1");
+        }
+        stopBackgroundWriter();
+        writer=new BackgroundWriter(this,cleanTarget,intervalMs);
+        writer.start();
+    }
+
+    /**
+     * Stops the background writer, if any. If it had stopped itself because a write
+     * failed, that failure is thrown here.
+     */
+    public synchronized void stopBackgroundWriter(){
+        BackgroundWriter w=writer;
+        if(w==null){
+            return;
+        }
+        writer=null;
+        w.shutdown();
+        if(w.getFailure()!=null){
+            throw new IllegalStateException("Background writer stopped after a failed write",w.getFailure());
+        }
+    }
+
+    /**
+     * Stops the background threads (writer and read-ahead), waiting for reads in progress,
+     * so the file can be closed. Dirty pages are not written; flushAll() first to keep them.
+     */
+    public void close(){
+        try{
+            stopBackgroundWriter();
+        }finally{
+            readAheadEnabled=false;
+            //Requests made from now on are dropped by the executor's DiscardPolicy
+            prefetcher.shutdown();
+            try{
+                prefetcher.awaitTermination(1,TimeUnit.MINUTES);
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public int getDirtyPageCount(){
+        return dirtyCount.get();
+    }
+
+    //Called by the background writer: cleans pages until the clean target is met
+    void writeBehind(double cleanTarget){
+        int allowedDirty=(int)(maxPages*(1-cleanTarget));
+        int excess=dirtyCount.get()-allowedDirty;
+        if(excess>0){
+            writeBack(excess,true);
+        }
+    }
+
+    /**
+     * Writes back up to 'limit' dirty pages. They are sorted by page id and runs of
+     * neighbouring pages go out as one gather write, so the disk sees sequential I/O.
+     * Returns the number of pages written.
+     */
+    private int writeBack(int limit, boolean unpinnedOnly){
+        //1. Pin the dirty frames so none is evicted while we work
+        long[] batch=new long[Math.min(limit,maxPages)];
+        int n=0;
+        for(int frame=0;frame<maxPages && n<batch.length;frame++){
+            if(dirty.get(frame)==0 || (unpinnedOnly && pins.get(frame)!=0)){
+                continue;
+            }
+            int pageId=framePage.get(frame);
+            if(pageId!=NONE && tryPin(frame,pageId)){
+                batch[n++]=((long)pageId<<32)|frame;
+            }
+        }
+        //2. Sort by page id
+        Arrays.sort(batch,0,n);
+
+        //3. Write runs of consecutive ids
+        Page[] run=new Page[MAX_RUN];
+        int[] runFrames=new int[MAX_RUN];
+        int written=0;
+        try{
+            int i=0;
+            while(i<n){
+                int len=0;
+                while(i+len<n && len<MAX_RUN){
+                    int frame=(int)batch[i+len];
+                    int pageId=(int)(batch[i+len]>>>32);
+                    if(len>0 && pageId!=run[len-1].getPageId()+1){
+                        break;
+                    }
+                    //Holding no latch yet we can wait; with some held, only try (no deadlock)
+                    ReentrantReadWriteLock.ReadLock latch=frames[frame].getLatch().readLock();
+                    if(len==0){
+                        latch.lock();
+                    }else if(!latch.tryLock()){
+                        break;
+                    }
+                    run[len]=frames[frame];
+                    runFrames[len]=frame;
+                    len++;
+                }
+                try{
+                    //Clear first: a change made while we write marks the page dirty again.
+                    //Counted as writing before that, so a checkpoint waits for the write
+                    for(int j=0;j<len;j++){
+                        writing.incrementAndGet(runFrames[j]);
+                        if(dirty.compareAndSet(runFrames[j],1,0)){
+                            dirtyCount.decrementAndGet();
+                        }
+                    }
+                    try{
+                        long maxLsn=0;
+                        for(int j=0;j<len;j++){
+                            maxLsn=Math.max(maxLsn,run[j].getLsn());
+                        }
+                        flushLog(maxLsn);
+                        diskManager.writePages(run,0,len);
+                    }catch(RuntimeException e){
+                        for(int j=0;j<len;j++){
+                            markDirty(runFrames[j]);
+                        }
+                        throw e;
+                    }finally{
+                        for(int j=0;j<len;j++){
+                            writing.decrementAndGet(runFrames[j]);
+                        }
+                    }
+                    written+=len;
+                }finally{
+                    for(int j=0;j<len;j++){
+                        run[j].getLatch().readLock().unlock();
+                    }
+                }
+                i+=len;
+            }
+        }finally{
+            for(int i=0;i<n;i++){
+                pins.decrementAndGet((int)batch[i]);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Hint that pages firstPageId..firstPageId+count-1 will be needed soon.
+     * They are read in the background; pages already cached or past the end are skipped.
+     */
+    public void prefetch(int firstPageId, int count){
+        if(arena==null || count<=0){
+            return;
         }
-        pageCache.clear();
+        prefetcher.execute(()->readRange(firstPageId,count));
+    }
+
+    //Turns sequential read-ahead on or off (on by default unless the file is memory-mapped)
+    public void setReadAhead(boolean enabled){
+        this.readAheadEnabled=enabled && arena!=null;
+    }
+
+    //Number of pages read ahead of time so far
+    public int getPrefetchedPages(){
+        return prefetchedPages.get();
+    }
+
+    /**
+     * Attaches the write-ahead log. Called by LogManager.recover(); from then on every
+     * dirty page is logged under 'fileId'.
+     */
+    public void setLog(LogManager log, int fileId){
+        this.logFileId=fileId;
+        this.log=log;
+    }
+
+    //The policy in use, with its hit/miss counters
+    public ReplacementPolicy getReplacementPolicy(){
+        return policy;
+    }
+
+    public HeapFile getDiskManager(){
+        return diskManager;
     }
 
     public int allocateNewPage(){
-        //Calculate the newID baised on current file size
-        int newPageId=diskManager.getNumPages();
-        //Just reading it will create it in our specific HeapFile implementation logic
-        //But explicitly we must create a blank page
-        Page p= new Page(newPageId);
-        diskManager.writePage(p);
-        return newPageId;
+        //The disk manager hands out the next id and reserves space for it.
+        //The new page reads back as a blank (all zeros) page
+        return diskManager.allocatePage();
+    }
+
+    // --- Loading and eviction ---
+
+    //Reads a page into a newly claimed frame. Returns it pinned, or null if another thread won the race
+    private Page load(int pageId){
+        if(pageId<0 || pageId>=diskManager.getNumPages()){
+            throw new IllegalArgumentException("Page "+pageId+" does not exit in the file");
+        }
+        int frame=claimFrame(pageId);
+        if(!publishLoading(frame,pageId)){
+            releaseFrame(frame);
+            return null;
+        }
+        boolean ok=false;
+        try{
+            if(arena==null){
+                frames[frame]=diskManager.readPage(pageId); //a view, nothing is copied
+            }else{
+                diskManager.readPage(pageId,frames[frame]);
+            }
+            //Before the page is published: a thread waiting for it then pins it as a hit
+            //after the load, never before, and no eviction comes first while we hold the pin
+            policy.recordLoad(frame,pageId);
+            ok=true;
+        }finally{
+            finishLoading(frame,pageId,ok);
+        }
+        return frames[frame];
+    }
+
+    //Enters a claimed frame in the page table as loading, so other threads wait on it.
+    //Returns false if the page is already there
+    private boolean publishLoading(int frame, int pageId){
+        Stripe s=stripeOf(pageId);
+        s.lock.lock();
+        try{
+            if(s.table.get(pageId)!=NONE){
+                return false;
+            }
+            loading.set(frame,1);
+            framePage.set(frame,pageId);
+            s.table.put(pageId,frame);
+            return true;
+        }finally{
+            s.lock.unlock();
+        }
+    }
+
+    //Ends a load: wakes up waiting threads, or takes the frame back out if the read failed
+    private void finishLoading(int frame, int pageId, boolean ok){
+        Stripe s=stripeOf(pageId);
+        s.lock.lock();
+        try{
+            if(!ok){
+                s.table.remove(pageId);
+                framePage.set(frame,NONE);
+            }
+            loading.set(frame,0);
+            s.loaded.signalAll();
+        }finally{
+            s.lock.unlock();
+        }
+        if(!ok){
+            releaseFrame(frame);
+        }
+    }
+
+    // --- Read-ahead ---
+
+    private void readAhead(int pageId){
+        if(!readAheadEnabled){
+            return;
+        }
+        long range=readAhead.onAccess(pageId);
+        if(range!=0){
+            int first=(int)(range>>>32);
+            int count=(int)range;
+            prefetcher.execute(()->readRange(first,count));
+        }
+    }
+
+    //Reads the missing pages of a range into free frames, one scatter read per run of
+    //missing pages. Runs on the prefetch thread; stops quietly if the pool is all pinned
+    private void readRange(int firstPageId, int count){
+        int end=Math.min(firstPageId+Math.min(count,maxPages/2),diskManager.getNumPages());
+        Page[] run=new Page[MAX_RUN];
+        int[] runFrames=new int[MAX_RUN];
+        int pageId=Math.max(firstPageId,0);
+        while(pageId<end){
+            //Claim and publish frames for the next run of pages that are not cached
+            int first=pageId;
+            int len=0;
+            try{
+                while(pageId<end && len<MAX_RUN){
+                    if(lookup(pageId)!=NONE){
+                        break;
+                    }
+                    int frame=claimFrame(pageId);
+                    if(!publishLoading(frame,pageId)){
+                        releaseFrame(frame);
+                        break;
+                    }
+                    run[len]=frames[frame];
+                    runFrames[len]=frame;
+                    len++;
+                    pageId++;
+                }
+            }catch(IllegalStateException e){
+                //Every frame is pinned: read what we have claimed and stop
+                end=pageId;
+            }
+            if(len==0){
+                pageId++;
+                continue;
+            }
+            boolean ok=false;
+            try{
+                diskManager.readPages(first,run,0,len);
+                ok=true;
+            }finally{
+                for(int i=0;i<len;i++){
+                    //As in load(): the policy hears of the page before anyone can pin it
+                    if(ok){
+                        policy.recordPrefetch(runFrames[i],first+i);
+                    }
+                    finishLoading(runFrames[i],first+i,ok);
+                    if(ok){
+                        pins.decrementAndGet(runFrames[i]);
+                    }
+                }
+            }
+            prefetchedPages.addAndGet(len);
+        }
+    }
+
+    //Returns a frame that holds no page with one pin for the caller, evicting a page if needed.
+    //A dirty victim is written with evictionLock released, so other misses are not held up
+    //by its write (and the log flush before it); the victim is checked again afterwards
+    private int claimFrame(int incomingPageId){
+        evictionLock.lock();
+        try{
+            if(numFree>0){
+                int frame=freeFrames[--numFree];
+                pins.set(frame,1);
+                return frame;
+            }
+            round++;
+            while(true){
+                int frame=policy.pickVictim(incomingPageId,evictable);
+                if(frame==NONE){
+                    throw new IllegalStateException("Buffer pool exhausted: all "+maxPages+" frames are pinned");
+                }
+                triedInRound[frame]=round;
+                int pageId=framePage.get(frame);
+                if(dirty.get(frame)!=0){
+                    //A dirty victim costs this thread a write: get the background writer going
+                    BackgroundWriter w=writer;
+                    if(w!=null){
+                        w.wakeUp();
+                    }
+                    //Our pin keeps it from being evicted by another thread while we write it
+                    if(!tryPin(frame,pageId)){
+                        continue;
+                    }
+                    evictionLock.unlock();
+                    try{
+                        //Never wait for a latch here: its holder may be waiting for a frame
+                        flushFrame(frame,false);
+                    }finally{
+                        pins.decrementAndGet(frame);
+                        evictionLock.lock();
+                    }
+                    //Others may have evicted in the meantime and started a new round,
+                    //so mark it again in the current one
+                    triedInRound[frame]=round;
+                }
+                //Fails if it was pinned or dirtied again while we wrote it: try another
+                if(tryRemove(frame,pageId)){
+                    policy.recordRemoval(frame,pageId);
+                    pins.set(frame,1);
+                    return frame;
+                }
+            }
+        }finally{
+            evictionLock.unlock();
+        }
+    }
+
+    private void releaseFrame(int frame){
+        evictionLock.lock();
+        try{
+            pins.set(frame,0);
+            freeFrames[numFree++]=frame;
+        }finally{
+            evictionLock.unlock();
+        }
+    }
+
+    //Removes an unpinned, clean frame from the page table. Caller holds evictionLock
+    private boolean tryRemove(int frame, int pageId){
+        Stripe s=stripeOf(pageId);
+        s.lock.lock();
+        try{
+            if(framePage.get(frame)!=pageId || pins.get(frame)!=0 || dirty.get(frame)!=0){
+                return false;
+            }
+            s.table.remove(pageId);
+            framePage.set(frame,NONE);
+            return true;
+        }finally{
+            s.lock.unlock();
+        }
+    }
+
+    //Pins a frame if it still holds 'pageId' and is not being loaded
+    private boolean tryPin(int frame, int pageId){
+        Stripe s=stripeOf(pageId);
+        s.lock.lock();
+        try{
+            if(framePage.get(frame)!=pageId || loading.get(frame)==1){
+                return false;
+            }
+            pins.incrementAndGet(frame);
+            return true;
+        }finally{
+            s.lock.unlock();
+        }
+    }
+
+    //Helper to write a specific frame back to disk. Returns false if it is still dirty
+    //because 'wait' was false and another thread holds its latch
+    private boolean flushFrame(int frame, boolean wait){
+        if(dirty.get(frame)==0){
+            return true;
+        }
+        Page p=frames[frame];
+        ReentrantReadWriteLock.ReadLock latch=p.getLatch().readLock();
+        if(wait){
+            latch.lock();
+        }else if(!latch.tryLock()){
+            return false;
+        }
+        try{
+            //Clear first: a change made while we write marks it dirty again
+            writing.incrementAndGet(frame);
+            try{
+                if(dirty.compareAndSet(frame,1,0)){
+                    dirtyCount.decrementAndGet();
+                    try{
+                        flushLog(p.getLsn());
+                        diskManager.writePage(p);
+                    }catch(RuntimeException e){
+                        markDirty(frame);
+                        throw e;
+                    }
+                }
+            }finally{
+                writing.decrementAndGet(frame);
+            }
+            return true;
+        }finally{
+            latch.unlock();
+        }
+    }
+
+    private void markDirty(int frame){
+        if(dirty.getAndSet(frame,1)==0){
+            dirtyCount.incrementAndGet();
+        }
+    }
+
+    //Logs the changes of a page marked dirty; marked first so a checkpoint cannot miss it
+    private void logChanges(int frame){
+        LogManager l=log;
+        if(l!=null){
+            Page p=frames[frame];
+            long lsn=l.logPage(logFileId,p);
+            if(lsn!=0){
+                p.setLsn(lsn);
+            }
+        }
+    }
+
+    //Write-ahead rule: the log records of a page reach the disk before the page does
+    private void flushLog(long lsn){
+        LogManager l=log;
+        if(l!=null && lsn>0){
+            l.flush(lsn);
+        }
+    }
+
+    private int lookup(int pageId){
+        Stripe s=stripeOf(pageId);
+        s.lock.lock();
+        try{
+            return s.table.get(pageId);
+        }finally{
+            s.lock.unlock();
+        }
+    }
+
+    private Stripe stripeOf(int pageId){
+        return stripes[pageId & stripeMask];
     }
 
 
@@ -0,0 +1,52 @@
+package com.aerodb.buffer;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntPredicate;
+
+/**
+ * CLOCK / second chance. A hit only sets the frame's reference bit, without any lock,
+ * so it is the cheapest policy for hit-heavy concurrent workloads. The default.
+ */
+public class ClockPolicy extends AbstractReplacementPolicy {
+    private final AtomicIntegerArray refBits;
+    private int hand; // guarded by the pool's eviction lock
+
+    public ClockPolicy(int numFrames) {
+        super(numFrames);
+        this.refBits = new AtomicIntegerArray(numFrames);
+    }
+
+    @Override
+    protected void onHit(int frame) {
+        refBits.lazySet(frame, 1);
+    }
+
+    @Override
+    protected void onLoad(int frame, int pageId) {
+        refBits.set(frame, 1);
+    }
+
+    @Override
+    public void recordRemoval(int frame, int pageId) {
+        refBits.set(frame, 0);
+    }
+
+    @Override
+    public int pickVictim(int incomingPageId, IntPredicate evictable) {
+        // Skip frames that cannot go, give referenced frames a second chance.
+        // Two full turns clear every bit, so a third finds a victim if there is one
+        for (int step = 0; step < numFrames * 3; step++) {
+            int frame = hand;
+            hand = (hand + 1) % numFrames;
+            if (!evictable.test(frame)) {
+                continue;
+            }
+            if (refBits.get(frame) != 0) {
+                refBits.set(frame, 0);
+                continue;
+            }
+            return frame;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,42 @@
+package com.aerodb.buffer;
+
+import com.aerodb.storage.Page;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One preallocated block of off-heap memory cut into fixed PAGE_SIZE frames.
+ * The memory lives outside the Java heap, so a pool of several GB adds nothing
+ * for the garbage collector to scan, and the footprint is fixed at startup.
+ * Direct buffers are capped at 2 GB, so the arena is made of 1 GB slabs.
+ */
+class FrameArena {
+    private static final int FRAMES_PER_SLAB = (1 << 30) / Page.PAGE_SIZE;
+
+    private final ByteBuffer[] slabs;
+    private final int numFrames;
+
+    FrameArena(int numFrames) {
+        this.numFrames = numFrames;
+        int numSlabs = (numFrames + FRAMES_PER_SLAB - 1) / FRAMES_PER_SLAB;
+        this.slabs = new ByteBuffer[numSlabs];
+        for (int i = 0; i < numSlabs; i++) {
+            int frames = Math.min(FRAMES_PER_SLAB, numFrames - i * FRAMES_PER_SLAB);
+            slabs[i] = ByteBuffer.allocateDirect(frames * Page.PAGE_SIZE);
+        }
+    }
+
+    int getNumFrames() {
+        return numFrames;
+    }
+
+    /**
+     * Returns a Page handle over frame 'index'. The handle is created once and reused
+     * for whatever disk page is loaded into that frame.
+     */
+    Page newFrame(int index) {
+        ByteBuffer slab = slabs[index / FRAMES_PER_SLAB];
+        int offset = (index % FRAMES_PER_SLAB) * Page.PAGE_SIZE;
+        return new Page(-1, slab.slice(offset, Page.PAGE_SIZE));
+    }
+}
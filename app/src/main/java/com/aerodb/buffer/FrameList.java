@@ -0,0 +1,70 @@
+package com.aerodb.buffer;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Doubly linked list of frame numbers threaded through int arrays.
+ * Head is the most recently used end, tail the least recently used one.
+ */
+class FrameList {
+    private static final int NONE = -1;
+
+    private final int[] prev;
+    private final int[] next;
+    private final boolean[] member;
+    private int head = NONE;
+    private int tail = NONE;
+    private int size;
+
+    FrameList(int numFrames) {
+        this.prev = new int[numFrames];
+        this.next = new int[numFrames];
+        this.member = new boolean[numFrames];
+        Arrays.fill(prev, NONE);
+        Arrays.fill(next, NONE);
+    }
+
+    boolean contains(int frame) {
+        return member[frame];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void pushHead(int frame) {
+        prev[frame] = NONE;
+        next[frame] = head;
+        if (head != NONE) prev[head] = frame;
+        head = frame;
+        if (tail == NONE) tail = frame;
+        member[frame] = true;
+        size++;
+    }
+
+    void remove(int frame) {
+        if (!member[frame]) return;
+        if (prev[frame] != NONE) next[prev[frame]] = next[frame];
+        else head = next[frame];
+        if (next[frame] != NONE) prev[next[frame]] = prev[frame];
+        else tail = prev[frame];
+        member[frame] = false;
+        size--;
+    }
+
+    void moveToHead(int frame) {
+        if (frame != head) {
+            remove(frame);
+            pushHead(frame);
+        }
+    }
+
+    //Walks from the tail (least recent) and returns the first frame accepted by 'filter', or -1
+    int findFromTail(IntPredicate filter) {
+        for (int f = tail; f != NONE; f = prev[f]) {
+            if (filter.test(f)) return f;
+        }
+        return NONE;
+    }
+}
@@ -0,0 +1,44 @@
+package com.aerodb.buffer;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Bounded FIFO of page ids that were recently evicted, used by policies that
+ * remember history for pages no longer in the pool.
+ */
+class GhostList {
+    private final LinkedHashSet<Integer> pages = new LinkedHashSet<>();
+    private final int capacity;
+
+    GhostList(int capacity) {
+        this.capacity = capacity;
+    }
+
+    boolean contains(int pageId) {
+        return pages.contains(pageId);
+    }
+
+    boolean remove(int pageId) {
+        return pages.remove(pageId);
+    }
+
+    void add(int pageId) {
+        pages.remove(pageId);
+        pages.add(pageId);
+        trim(capacity);
+    }
+
+    //Drops the oldest entries until at most 'max' are left
+    void trim(int max) {
+        Iterator<Integer> it = pages.iterator();
+        while (pages.size() > Math.max(max, 0) && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    int size() {
+        return pages.size();
+    }
+}
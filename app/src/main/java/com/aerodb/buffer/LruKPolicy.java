@@ -0,0 +1,125 @@
+package com.aerodb.buffer;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.IntPredicate;
+
+/**
+ * LRU-K (O'Neil et al.): evicts the page whose K-th most recent access is oldest.
+ * Pages seen fewer than K times count as infinitely old and go first (LRU among them),
+ * so a scan that touches every page once cannot push out pages referenced K times.
+ * Access history of evicted pages is kept for a while, so a page that comes straight
+ * back is not treated as new.
+ */
+public class LruKPolicy extends AbstractReplacementPolicy {
+    private final int k;
+    private final long[] history; // K most recent access times per frame, newest first
+    private long clock;
+
+    // Frames with fewer than K accesses, by last access; the rest by K-th access
+    private final TreeSet<Integer> young;
+    private final TreeSet<Integer> old;
+
+    // Access history of recently evicted pages
+    private final Map<Integer, long[]> retained;
+
+    public LruKPolicy(int numFrames) {
+        this(numFrames, 2);
+    }
+
+    public LruKPolicy(int numFrames, int k) {
+        super(numFrames);
+        if (k < 1) {
+            throw new IllegalArgumentException("K must be at least 1");
+        }
+        this.k = k;
+        this.history = new long[numFrames * k];
+        this.young = new TreeSet<>((a, b) -> compare(a, b, 0));
+        this.old = new TreeSet<>((a, b) -> compare(a, b, k - 1));
+        this.retained = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, long[]> eldest) {
+                return size() > numFrames;
+            }
+        };
+    }
+
+    private int compare(int a, int b, int depth) {
+        int c = Long.compare(history[a * k + depth], history[b * k + depth]);
+        return c != 0 ? c : Integer.compare(a, b);
+    }
+
+    @Override
+    protected synchronized void onHit(int frame) {
+        detach(frame);
+        access(frame);
+        attach(frame);
+    }
+
+    @Override
+    protected synchronized void onLoad(int frame, int pageId) {
+        detach(frame);
+        long[] past = retained.remove(pageId);
+        if (past != null) {
+            System.arraycopy(past, 0, history, frame * k, k);
+        } else {
+            Arrays.fill(history, frame * k, frame * k + k, 0L);
+        }
+        access(frame);
+        attach(frame);
+    }
+
+    // Not a reference yet: the arrival time only places it among the young frames, and
+    // any retained history is left for its first pin
+    @Override
+    protected synchronized void onPrefetch(int frame, int pageId) {
+        detach(frame);
+        Arrays.fill(history, frame * k, frame * k + k, 0L);
+        access(frame);
+        attach(frame);
+    }
+
+    @Override
+    public synchronized void recordRemoval(int frame, int pageId) {
+        detach(frame);
+        if (!isUnusedPrefetch(frame)) {
+            retained.put(pageId, Arrays.copyOfRange(history, frame * k, frame * k + k));
+        }
+        Arrays.fill(history, frame * k, frame * k + k, 0L);
+    }
+
+    @Override
+    public synchronized int pickVictim(int incomingPageId, IntPredicate evictable) {
+        for (int frame : young) {
+            if (evictable.test(frame)) return frame;
+        }
+        for (int frame : old) {
+            if (evictable.test(frame)) return frame;
+        }
+        return -1;
+    }
+
+    private void access(int frame) {
+        int base = frame * k;
+        System.arraycopy(history, base, history, base + 1, k - 1);
+        history[base] = ++clock;
+    }
+
+    private boolean hasK(int frame) {
+        return history[frame * k + k - 1] != 0;
+    }
+
+    private void attach(int frame) {
+        if (hasK(frame)) old.add(frame);
+        else young.add(frame);
+    }
+
+    private void detach(int frame) {
+        // Remove with the ordering the frame was inserted under
+        if (!young.remove(frame)) {
+            old.remove(frame);
+        }
+    }
+}
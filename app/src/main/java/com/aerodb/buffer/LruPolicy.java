@@ -0,0 +1,36 @@
+package com.aerodb.buffer;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Plain least recently used. Every hit moves the frame to the front of one shared list.
+ */
+public class LruPolicy extends AbstractReplacementPolicy {
+    private final FrameList list;
+
+    public LruPolicy(int numFrames) {
+        super(numFrames);
+        this.list = new FrameList(numFrames);
+    }
+
+    @Override
+    protected synchronized void onHit(int frame) {
+        list.moveToHead(frame);
+    }
+
+    @Override
+    protected synchronized void onLoad(int frame, int pageId) {
+        list.remove(frame);
+        list.pushHead(frame);
+    }
+
+    @Override
+    public synchronized void recordRemoval(int frame, int pageId) {
+        list.remove(frame);
+    }
+
+    @Override
+    public synchronized int pickVictim(int incomingPageId, IntPredicate evictable) {
+        return list.findFromTail(evictable);
+    }
+}
@@ -0,0 +1,100 @@
+package com.aerodb.buffer;
+
+import java.util.Arrays;
+
+/**
+ * Maps page ids to frame numbers with open addressing over plain int arrays,
+ * so lookups never box a key or allocate a map entry. Not thread-safe: the
+ * BufferManager guards each table with its stripe lock.
+ */
+class PageTable {
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int shift;
+    private int size;
+
+    PageTable(int expectedEntries) {
+        // Keep the load factor at or below 0.5
+        allocate(Integer.highestOneBit(Math.max(2, expectedEntries) * 2 - 1) << 1);
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+        this.shift = 32 - Integer.numberOfTrailingZeros(capacity);
+        Arrays.fill(keys, EMPTY);
+    }
+
+    //Returns the frame holding 'pageId', or -1
+    int get(int pageId) {
+        for (int i = slot(pageId); ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == pageId) return values[i];
+            if (k == EMPTY) return -1;
+        }
+    }
+
+    void put(int pageId, int frame) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int i = slot(pageId);
+        while (keys[i] != EMPTY && keys[i] != pageId) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == EMPTY) size++;
+        keys[i] = pageId;
+        values[i] = frame;
+    }
+
+    void remove(int pageId) {
+        int i = slot(pageId);
+        while (keys[i] != pageId) {
+            if (keys[i] == EMPTY) return;
+            i = (i + 1) & mask;
+        }
+        // Shift later entries of the same probe run back so lookups never stop early
+        int hole = i;
+        for (int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            boolean movable = hole <= j ? (home <= hole || home > j) : (home <= hole && home > j);
+            if (movable) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        keys[hole] = EMPTY;
+        size--;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private int slot(int pageId) {
+        // Fibonacci hashing spreads sequential page ids
+        return (pageId * 0x9E3779B9) >>> shift;
+    }
+}
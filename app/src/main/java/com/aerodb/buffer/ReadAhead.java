@@ -0,0 +1,80 @@
+package com.aerodb.buffer;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sequential access detector for one file, with an adaptive read-ahead window.
+ * After a few accesses to consecutive pages it asks for the next 'window' pages.
+ * Each time the reader gets halfway into the pages already requested, the next
+ * range is asked for and the window doubles, up to MAX_WINDOW. A jump to an
+ * unrelated page halves the window again.
+ *
+ * It watches a single stream per file: several threads scanning at once look
+ * random to it and simply get less read-ahead.
+ */
+class ReadAhead {
+    static final int MIN_WINDOW = 4;
+    static final int MAX_WINDOW = 128;
+    // Consecutive accesses needed before the first read-ahead
+    private static final int TRIGGER = 2;
+    // lastPageId before the first access
+    private static final int NONE = -1;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int maxWindow;
+    private int lastPageId = NONE;
+    private int streak;
+    private int window = MIN_WINDOW * 2;
+    // First page id not yet requested
+    private int requestedUpTo;
+
+    ReadAhead(int poolSize) {
+        // Never ask for more than a quarter of the pool at a time
+        this.maxWindow = Math.max(MIN_WINDOW, Math.min(MAX_WINDOW, poolSize / 4));
+        this.window = Math.min(window, maxWindow);
+    }
+
+    /**
+     * Records an access and returns the range to read ahead, packed as
+     * (firstPageId << 32 | count), or 0 when nothing should be read.
+     */
+    long onAccess(int pageId) {
+        // Detection is only a heuristic: rather skip an access than make a reader wait
+        if (!lock.tryLock()) {
+            return 0;
+        }
+        try {
+            if (pageId == lastPageId) {
+                return 0;
+            }
+            if (lastPageId == NONE) {
+                // Where a stream starts is no jump: keep the window
+                lastPageId = pageId;
+                requestedUpTo = pageId + 1;
+                return 0;
+            }
+            if (pageId != lastPageId + 1) {
+                // Random access: shrink the window and start over
+                window = Math.max(MIN_WINDOW, window / 2);
+                streak = 0;
+                lastPageId = pageId;
+                requestedUpTo = pageId + 1;
+                return 0;
+            }
+            lastPageId = pageId;
+            if (++streak < TRIGGER || requestedUpTo - pageId > window / 2) {
+                return 0;
+            }
+            // The pattern held through half the last window: read further ahead
+            if (requestedUpTo > pageId + 1) {
+                window = Math.min(maxWindow, window * 2);
+            }
+            int first = Math.max(requestedUpTo, pageId + 1);
+            int end = pageId + 1 + window;
+            requestedUpTo = end;
+            return ((long) first << 32) | (end - first);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
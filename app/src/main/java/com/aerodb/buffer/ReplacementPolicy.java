@@ -0,0 +1,34 @@
+package com.aerodb.buffer;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Decides which frame the BufferManager evicts on a miss.
+ * The pool tells the policy about every hit, load and removal, and asks it for a
+ * victim when it needs a frame. pickVictim() is always called with the pool's eviction
+ * lock held; the record* methods may be called from any thread.
+ */
+public interface ReplacementPolicy {
+
+    /** A page that was already in 'frame' has been pinned again. */
+    void recordHit(int frame);
+
+    /** 'pageId' has just been read into 'frame' after a miss. */
+    void recordLoad(int frame, int pageId);
+
+    /** 'pageId' has been read into 'frame' ahead of time, before anyone asked for it. */
+    void recordPrefetch(int frame, int pageId);
+
+    /** 'pageId' has left 'frame' (evicted or dropped by flushAll). */
+    void recordRemoval(int frame, int pageId);
+
+    /**
+     * Picks a frame to evict to make room for 'incomingPageId'.
+     * Only frames accepted by 'evictable' may be returned; -1 if there is none.
+     */
+    int pickVictim(int incomingPageId, IntPredicate evictable);
+
+    long getHits();
+
+    long getMisses();
+}
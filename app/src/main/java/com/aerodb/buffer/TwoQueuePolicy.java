@@ -0,0 +1,72 @@
+package com.aerodb.buffer;
+
+import java.util.function.IntPredicate;
+
+/**
+ * 2Q (Johnson and Shasha). New pages enter a small FIFO (A1in); only pages that come
+ * back after leaving it, while still remembered in the ghost queue A1out, are promoted
+ * to the main LRU queue (Am). A one-time scan therefore only cycles through A1in.
+ */
+public class TwoQueuePolicy extends AbstractReplacementPolicy {
+    private final FrameList a1in;
+    private final FrameList am;
+    private final GhostList a1out;
+    private final int kin;
+
+    public TwoQueuePolicy(int numFrames) {
+        super(numFrames);
+        this.a1in = new FrameList(numFrames);
+        this.am = new FrameList(numFrames);
+        // Sizes recommended in the paper: A1in 25% of the pool, A1out 50%
+        this.kin = Math.max(1, numFrames / 4);
+        this.a1out = new GhostList(Math.max(1, numFrames / 2));
+    }
+
+    @Override
+    protected synchronized void onHit(int frame) {
+        // Hits in A1in are ignored on purpose: they are likely correlated references
+        if (am.contains(frame)) {
+            am.moveToHead(frame);
+        }
+    }
+
+    @Override
+    protected synchronized void onLoad(int frame, int pageId) {
+        a1in.remove(frame);
+        am.remove(frame);
+        if (a1out.remove(pageId)) {
+            am.pushHead(frame);
+        } else {
+            a1in.pushHead(frame);
+        }
+    }
+
+    // Into A1in without consulting A1out: that happens on its first pin
+    @Override
+    protected synchronized void onPrefetch(int frame, int pageId) {
+        a1in.remove(frame);
+        am.remove(frame);
+        a1in.pushHead(frame);
+    }
+
+    @Override
+    public synchronized void recordRemoval(int frame, int pageId) {
+        if (a1in.contains(frame)) {
+            a1in.remove(frame);
+            if (!isUnusedPrefetch(frame)) {
+                a1out.add(pageId);
+            }
+        } else {
+            am.remove(frame);
+        }
+    }
+
+    @Override
+    public synchronized int pickVictim(int incomingPageId, IntPredicate evictable) {
+        boolean fromA1in = a1in.size() > kin || am.size() == 0;
+        FrameList first = fromA1in ? a1in : am;
+        FrameList second = fromA1in ? am : a1in;
+        int frame = first.findFromTail(evictable);
+        return frame != -1 ? frame : second.findFromTail(evictable);
+    }
+}
@@ -0,0 +1,54 @@
+package com.aerodb.exec;
+
+/**
+ * Output of a BatchAggregate: for each group i its key and the COUNT, SUM, MIN and MAX
+ * of the aggregated column. Without grouping there is one group with key 0, or none if
+ * the input was empty. Results of disjoint inputs combine with merge().
+ */
+public class AggregateResult {
+    private final int[] keys;
+    private final long[] counts;
+    private final long[] sums;
+    private final int[] mins;
+    private final int[] maxs;
+
+    AggregateResult(int[] keys, long[] counts, long[] sums, int[] mins, int[] maxs) {
+        this.keys = keys;
+        this.counts = counts;
+        this.sums = sums;
+        this.mins = mins;
+        this.maxs = maxs;
+    }
+
+    public int numGroups() {
+        return keys.length;
+    }
+
+    public int getKey(int group) {
+        return keys[group];
+    }
+
+    public long getCount(int group) {
+        return counts[group];
+    }
+
+    public long getSum(int group) {
+        return sums[group];
+    }
+
+    public int getMin(int group) {
+        return mins[group];
+    }
+
+    public int getMax(int group) {
+        return maxs[group];
+    }
+
+    /**
+     * The aggregates over both inputs, as if they had been aggregated together:
+     * groups with the same key are combined.
+     */
+    public AggregateResult merge(AggregateResult other) {
+        return BatchAggregate.merge(this, other);
+    }
+}
@@ -0,0 +1,193 @@
+package com.aerodb.exec;
+
+import java.util.Arrays;
+
+/**
+ * COUNT, SUM, MIN and MAX of one column over the selected rows of a batch input,
+ * optionally grouped by another column. Groups live in an open-addressing table of
+ * int keys with primitive accumulator arrays, so no row creates an object.
+ */
+public class BatchAggregate {
+    public static final int NO_GROUPING = -1;
+
+    private final BatchOperator child;
+    private final int groupColumn;
+    private final int valueColumn;
+
+    // Hash table: key and group number per slot (-1 if empty)
+    private int[] slotKeys;
+    private int[] slotGroups;
+    private int numGroups;
+    private int[] keys;
+    private long[] counts;
+    private long[] sums;
+    private int[] mins;
+    private int[] maxs;
+
+    /**
+     * Aggregates 'valueColumn' of the batches from 'child', per value of 'groupColumn'
+     * (a batch column index) or over everything with NO_GROUPING.
+     */
+    public BatchAggregate(BatchOperator child, int groupColumn, int valueColumn) {
+        this.child = child;
+        this.groupColumn = groupColumn;
+        this.valueColumn = valueColumn;
+    }
+
+    /**
+     * Runs the input to the end and returns one row of aggregates per group.
+     */
+    public AggregateResult run() {
+        reset();
+        child.open();
+        try {
+            VectorBatch batch;
+            while ((batch = child.nextBatch()) != null) {
+                if (groupColumn == NO_GROUPING) {
+                    aggregate(batch, 0);
+                } else {
+                    aggregateGrouped(batch);
+                }
+            }
+        } finally {
+            child.close();
+        }
+        if (groupColumn == NO_GROUPING && counts[0] == 0) {
+            // An empty input has one group, with no min or max
+            return new AggregateResult(new int[0], new long[0], new long[0], new int[0], new int[0]);
+        }
+        return result();
+    }
+
+    // Partial results (e.g. of page ranges) combine group by group through the same hash table.
+    // An ungrouped result has its one group under key 0, so it merges the same way
+    static AggregateResult merge(AggregateResult a, AggregateResult b) {
+        BatchAggregate merged = new BatchAggregate(null, 0, 0);
+        merged.reset();
+        for (AggregateResult part : new AggregateResult[]{a, b}) {
+            for (int i = 0; i < part.numGroups(); i++) {
+                int g = merged.groupOf(part.getKey(i));
+                merged.counts[g] += part.getCount(i);
+                merged.sums[g] += part.getSum(i);
+                merged.mins[g] = Math.min(merged.mins[g], part.getMin(i));
+                merged.maxs[g] = Math.max(merged.maxs[g], part.getMax(i));
+            }
+        }
+        return merged.result();
+    }
+
+    private AggregateResult result() {
+        return new AggregateResult(Arrays.copyOf(keys, numGroups), Arrays.copyOf(counts, numGroups),
+                Arrays.copyOf(sums, numGroups), Arrays.copyOf(mins, numGroups), Arrays.copyOf(maxs, numGroups));
+    }
+
+    // Ungrouped: plain loops over the selection, which the JIT can unroll and vectorize
+    private void aggregate(VectorBatch batch, int group) {
+        int[] values = batch.getColumn(valueColumn);
+        int[] selection = batch.getSelection();
+        int count = batch.getSelectedCount();
+        long sum = 0;
+        int min = mins[group];
+        int max = maxs[group];
+        for (int i = 0; i < count; i++) {
+            int v = values[selection[i]];
+            sum += v;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+        counts[group] += count;
+        sums[group] += sum;
+        mins[group] = min;
+        maxs[group] = max;
+    }
+
+    private void aggregateGrouped(VectorBatch batch) {
+        int[] groupValues = batch.getColumn(groupColumn);
+        int[] values = batch.getColumn(valueColumn);
+        int[] selection = batch.getSelection();
+        int count = batch.getSelectedCount();
+        for (int i = 0; i < count; i++) {
+            int pos = selection[i];
+            int g = groupOf(groupValues[pos]);
+            int v = values[pos];
+            counts[g]++;
+            sums[g] += v;
+            if (v < mins[g]) mins[g] = v;
+            if (v > maxs[g]) maxs[g] = v;
+        }
+    }
+
+    // Group number of 'key', adding a group the first time it is seen
+    private int groupOf(int key) {
+        int mask = slotKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (true) {
+            int g = slotGroups[slot];
+            if (g < 0) {
+                return addGroup(key, slot);
+            }
+            if (slotKeys[slot] == key) {
+                return g;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int addGroup(int key, int slot) {
+        int g = numGroups++;
+        if (g == keys.length) {
+            int n = g * 2;
+            keys = Arrays.copyOf(keys, n);
+            counts = Arrays.copyOf(counts, n);
+            sums = Arrays.copyOf(sums, n);
+            mins = Arrays.copyOf(mins, n);
+            maxs = Arrays.copyOf(maxs, n);
+        }
+        keys[g] = key;
+        mins[g] = Integer.MAX_VALUE;
+        maxs[g] = Integer.MIN_VALUE;
+        slotKeys[slot] = key;
+        slotGroups[slot] = g;
+        // Keep the table at most half full
+        if (numGroups * 2 > slotKeys.length) {
+            rehash(slotKeys.length * 2);
+        }
+        return g;
+    }
+
+    private void rehash(int size) {
+        slotKeys = new int[size];
+        slotGroups = new int[size];
+        Arrays.fill(slotGroups, -1);
+        int mask = size - 1;
+        for (int g = 0; g < numGroups; g++) {
+            int slot = hash(keys[g]) & mask;
+            while (slotGroups[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            slotKeys[slot] = keys[g];
+            slotGroups[slot] = g;
+        }
+    }
+
+    // Also used by HashJoin, for its table and its partitions
+    static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void reset() {
+        numGroups = 0;
+        keys = new int[16];
+        counts = new long[16];
+        sums = new long[16];
+        mins = new int[16];
+        maxs = new int[16];
+        rehash(64);
+        if (groupColumn == NO_GROUPING) {
+            numGroups = 1;
+            mins[0] = Integer.MAX_VALUE;
+            maxs[0] = Integer.MIN_VALUE;
+        }
+    }
+}
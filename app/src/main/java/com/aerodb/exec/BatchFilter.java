@@ -0,0 +1,52 @@
+package com.aerodb.exec;
+
+/**
+ * Narrows the selection of each batch to the rows with lo <= column value <= hi.
+ * One branch-free pass over the selection vector per batch.
+ */
+public class BatchFilter implements BatchOperator {
+    private final BatchOperator child;
+    private final int column;
+    private final int lo;
+    private final int hi;
+
+    public BatchFilter(BatchOperator child, int column, int lo, int hi) {
+        this.child = child;
+        this.column = column;
+        this.lo = lo;
+        this.hi = hi;
+    }
+
+    @Override
+    public void open() {
+        child.open();
+    }
+
+    @Override
+    public VectorBatch nextBatch() {
+        VectorBatch batch;
+        while ((batch = child.nextBatch()) != null) {
+            int[] values = batch.getColumn(column);
+            int[] selection = batch.getSelection();
+            int count = batch.getSelectedCount();
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int pos = selection[i];
+                int v = values[pos];
+                selection[kept] = pos;
+                kept += (v >= lo & v <= hi) ? 1 : 0;
+            }
+            batch.setSelectedCount(kept);
+            // Batches that lost every row are not passed on
+            if (kept > 0) {
+                return batch;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        child.close();
+    }
+}
@@ -0,0 +1,16 @@
+package com.aerodb.exec;
+
+/**
+ * The batch counterpart of Operator: nextBatch() hands over up to VectorBatch.CAPACITY
+ * rows at a time, as int columns with a selection vector, and null at the end.
+ */
+public interface BatchOperator extends AutoCloseable {
+
+    void open();
+
+    // The next batch (usually the same object each time), or null when there are no more
+    VectorBatch nextBatch();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,114 @@
+package com.aerodb.exec;
+
+import com.aerodb.buffer.BufferManager;
+import com.aerodb.storage.ColumnarHeapPage;
+import com.aerodb.storage.HeapPage;
+import com.aerodb.storage.Page;
+import com.aerodb.storage.TableHeap;
+import com.aerodb.storage.TupleDesc;
+import com.aerodb.storage.Type;
+
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Scans a table into VectorBatches holding only the chosen INT columns: column i of the
+ * batch is field columns[i] of the table. Values are decoded straight from the page into
+ * the batch arrays, one column at a time and with no Tuple or boxing; from a columnar
+ * page each column is one run of its minipage. Like SeqScan it pins one page at a time and latches it (shared) only
+ * while decoding from it. A scan can be limited to a range of pages (see ParallelScan).
+ */
+public class BatchScan implements BatchOperator {
+    private final TableHeap table;
+    private final TupleDesc tupleDesc;
+    private final int[] columns;
+    private final VectorBatch batch;
+
+    // Next page to read and the next row in it
+    private int pageId;
+    private int row;
+    private int numPages;
+    // Page range to scan: [fromPage, toPage), or the whole table if toPage is -1
+    private int fromPage;
+    private int toPage = -1;
+
+    public BatchScan(TableHeap table, TupleDesc tupleDesc, int... columns) {
+        for (int c : columns) {
+            if (tupleDesc.getType(c) != Type.INT) {
+                throw new IllegalArgumentException("Field " + c + " is " + tupleDesc.getType(c) + ", not INT");
+            }
+        }
+        this.table = table;
+        this.tupleDesc = tupleDesc;
+        this.columns = columns.clone();
+        this.batch = new VectorBatch(columns.length);
+    }
+
+    /**
+     * Limits the scan to pages fromPage..toPage-1 of the table. Returns this scan.
+     */
+    public BatchScan pages(int fromPage, int toPage) {
+        if (fromPage < 0 || toPage < fromPage) {
+            throw new IllegalArgumentException("Bad page range " + fromPage + ".." + toPage);
+        }
+        this.fromPage = fromPage;
+        this.toPage = toPage;
+        return this;
+    }
+
+    @Override
+    public void open() {
+        numPages = toPage < 0 ? table.getNumPages() : Math.min(toPage, table.getNumPages());
+        pageId = fromPage;
+        row = 0;
+    }
+
+    @Override
+    public VectorBatch nextBatch() {
+        BufferManager bufferManager = table.getBufferManager();
+        int filled = 0;
+        // A batch may take rows from several pages
+        while (filled < VectorBatch.CAPACITY && pageId < numPages) {
+            Page page = bufferManager.pinPage(pageId);
+            Lock latch = page.getLatch().readLock();
+            latch.lock();
+            int taken;
+            int rows;
+            try {
+                if (ColumnarHeapPage.isColumnar(page)) {
+                    ColumnarHeapPage columnarPage = ColumnarHeapPage.readOnly(page, tupleDesc);
+                    rows = columnarPage.getNumTuples();
+                    taken = Math.min(rows - row, VectorBatch.CAPACITY - filled);
+                    for (int c = 0; c < columns.length; c++) {
+                        columnarPage.getInts(columns[c], row, batch.getColumn(c), filled, taken);
+                    }
+                } else {
+                    HeapPage heapPage = HeapPage.readOnly(page);
+                    rows = heapPage.getNumTuples();
+                    taken = Math.min(rows - row, VectorBatch.CAPACITY - filled);
+                    for (int c = 0; c < columns.length; c++) {
+                        heapPage.getInts(tupleDesc, columns[c], row, batch.getColumn(c), filled, taken);
+                    }
+                }
+            } finally {
+                latch.unlock();
+                bufferManager.unpinPage(pageId, false);
+            }
+            filled += taken;
+            row += taken;
+            if (row >= rows) {
+                pageId++;
+                row = 0;
+            }
+        }
+        if (filled == 0) {
+            return null;
+        }
+        batch.setSize(filled);
+        return batch;
+    }
+
+    @Override
+    public void close() {
+        numPages = 0;
+    }
+}
@@ -0,0 +1,352 @@
+package com.aerodb.exec;
+
+import com.aerodb.buffer.BufferManager;
+import com.aerodb.storage.HeapPage;
+import com.aerodb.storage.Page;
+import com.aerodb.storage.Tuple;
+import com.aerodb.storage.TupleDesc;
+import com.aerodb.storage.TupleView;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * The rows of its child in ascending order of the sort fields (ORDER BY f1, f2, ...),
+ * using at most 'memoryPages' frames of memory however many rows there are.
+ * Rows with equal sort fields keep their input order.
+ *
+ * open() reads the child into memoryPages - 1 scratch pages, sorts references to the rows,
+ * and writes them out in order as a run; the last frame holds the run page being written.
+ * If the whole input fits in the scratch pages it is returned from there and nothing is
+ * written. Runs are then merged memoryPages - 1 at a time with a LoserTree, in passes that
+ * each write longer runs, until few enough are left for next() to merge as it goes.
+ *
+ * Rows stay serialized throughout: they are compared field by field in their pages through
+ * TupleViews (TupleView.compareField) and copied between pages as bytes. Only the rows
+ * next() hands out are decoded into Tuples. Every run is written once, front to back,
+ * and read back front to back, all in one SpillFile whose pool is the memoryPages frames.
+ */
+public class ExternalSort implements Operator {
+    private final Operator child;
+    private final int[] sortFields;
+    private final int memoryPages;
+    private final TupleDesc tupleDesc;
+    // Row size of a fixed-width schema, for the scratch pages
+    private final int fixedSize;
+
+    private SpillFile file;
+    private BufferManager bufferManager;
+
+    // Scratch pages (pinned during run generation) and references to the rows in them:
+    // scratch page << 16 | slot, in sorted order once sortRefs() ran
+    private HeapPage[] scratch;
+    private int[] refs;
+    private int numRefs;
+    private final TupleView viewA;
+    private final TupleView viewB;
+
+    // Runs written so far, as page ranges of the file: start << 32 | end
+    private final ArrayDeque<Long> runs = new ArrayDeque<>();
+    private int runStart;
+
+    // Output: either the next scratch row, or the final merge
+    private boolean inMemory;
+    private int nextRef;
+    private Merge merge;
+
+    public ExternalSort(Operator child, int memoryPages, int... sortFields) {
+        if (memoryPages < 3 || memoryPages > 1 << 16) {
+            throw new IllegalArgumentException("A sort needs 3 to 65536 pages of memory");
+        }
+        if (sortFields.length == 0) {
+            throw new IllegalArgumentException("No sort fields given");
+        }
+        this.child = child;
+        this.sortFields = sortFields.clone();
+        this.memoryPages = memoryPages;
+        this.tupleDesc = child.getTupleDesc();
+        this.fixedSize = tupleDesc.isFixedWidth() ? tupleDesc.getFixedSize() : 0;
+        this.viewA = new TupleView(tupleDesc);
+        this.viewB = new TupleView(tupleDesc);
+    }
+
+    @Override
+    public void open() {
+        close();
+        file = new SpillFile(tupleDesc, memoryPages);
+        bufferManager = file.getBufferManager();
+        // Every frame may be pinned at once here, so none is left to read into ahead of time
+        bufferManager.setReadAhead(false);
+        makeRuns();
+        if (inMemory) {
+            return;
+        }
+        while (runs.size() > memoryPages - 1) {
+            // One pass: neighbouring runs are merged, and the longer runs keep their order,
+            // so a later merge still knows which rows came first
+            ArrayDeque<Long> merged = new ArrayDeque<>();
+            while (runs.size() > 1) {
+                Merge m = new Merge(Math.min(memoryPages - 1, runs.size()));
+                while (!m.isExhausted()) {
+                    file.append(m.current());
+                    m.advance();
+                }
+                m.close();
+                merged.addLast(endRun());
+            }
+            merged.addAll(runs);
+            runs.clear();
+            runs.addAll(merged);
+        }
+        merge = new Merge(runs.size());
+    }
+
+    // Run generation. The scratch pages are the first pages of the file, and are never
+    // marked dirty: their contents are thrown away once sorted, so they are not written
+    private void makeRuns() {
+        int numScratch = memoryPages - 1;
+        scratch = new HeapPage[numScratch];
+        for (int i = 0; i < numScratch; i++) {
+            bufferManager.allocateNewPage();
+        }
+        runStart = numScratch;
+        refs = new int[1024];
+        child.open();
+        try {
+            int s = clearScratch(0);
+            Tuple t;
+            while ((t = child.next()) != null) {
+                int size = t.getSerializedSize();
+                if (size > HeapPage.maxTupleSize()) {
+                    throw new IllegalArgumentException("Tuple of " + size + " bytes does not fit in a page");
+                }
+                if (!scratch[s].fits(size)) {
+                    if (s + 1 == numScratch) {
+                        writeRun();
+                        s = clearScratch(0);
+                    } else {
+                        s = clearScratch(s + 1);
+                    }
+                }
+                if (numRefs == refs.length) {
+                    refs = Arrays.copyOf(refs, numRefs * 2);
+                }
+                refs[numRefs++] = s << 16 | scratch[s].insertTuple(t);
+            }
+        } finally {
+            child.close();
+        }
+        if (runs.isEmpty()) {
+            // Everything fit: next() reads the scratch pages, which stay pinned until close()
+            sortRefs();
+            inMemory = true;
+            nextRef = 0;
+            return;
+        }
+        writeRun();
+        unpinScratch();
+    }
+
+    // Pins scratch page s as an empty page (unpinning what was there), and returns s
+    private int clearScratch(int s) {
+        if (scratch[s] != null) {
+            bufferManager.unpinPage(s, false);
+        }
+        Page page = bufferManager.pinPage(s);
+        page.fill(0, Page.USABLE_SIZE, (byte) 0);
+        scratch[s] = new HeapPage(page, fixedSize);
+        return s;
+    }
+
+    private void unpinScratch() {
+        if (scratch == null) {
+            return;
+        }
+        for (int s = 0; s < scratch.length; s++) {
+            if (scratch[s] != null) {
+                bufferManager.unpinPage(s, false);
+                scratch[s] = null;
+            }
+        }
+        scratch = null;
+    }
+
+    // Sorts the rows in the scratch pages and appends them to the file as a run
+    private void writeRun() {
+        sortRefs();
+        for (int i = 0; i < numRefs; i++) {
+            file.append(view(viewA, refs[i]));
+        }
+        numRefs = 0;
+        runs.addLast(endRun());
+    }
+
+    // Ends the run being appended, which spans the pages since the previous run
+    private long endRun() {
+        file.finish();
+        int end = file.getNumPages();
+        long run = (long) runStart << 32 | end;
+        runStart = end;
+        return run;
+    }
+
+    private TupleView view(TupleView view, int ref) {
+        return scratch[ref >>> 16].getTupleView(ref & 0xFFFF, view);
+    }
+
+    private int compareRefs(int a, int b) {
+        return compareRows(view(viewA, a), view(viewB, b));
+    }
+
+    private int compareRows(TupleView a, TupleView b) {
+        for (int f : sortFields) {
+            int c = a.compareField(f, b);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    // Stable merge sort of refs[0..numRefs): bottom up, alternating between two arrays
+    private void sortRefs() {
+        int[] src = refs;
+        int[] dst = new int[numRefs];
+        for (int width = 1; width < numRefs; width *= 2) {
+            for (int lo = 0; lo < numRefs; lo += 2 * width) {
+                int mid = Math.min(lo + width, numRefs);
+                int hi = Math.min(lo + 2 * width, numRefs);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) {
+                    dst[k++] = compareRefs(src[j], src[i]) < 0 ? src[j++] : src[i++];
+                }
+                System.arraycopy(src, i, dst, k, mid - i);
+                System.arraycopy(src, j, dst, k + mid - i, hi - j);
+            }
+            int[] tmp = src;
+            src = dst;
+            dst = tmp;
+        }
+        if (src != refs) {
+            System.arraycopy(src, 0, refs, 0, numRefs);
+        }
+    }
+
+    @Override
+    public Tuple next() {
+        if (inMemory) {
+            return nextRef < numRefs ? view(viewA, refs[nextRef++]).toTuple() : null;
+        }
+        if (merge == null || merge.isExhausted()) {
+            return null;
+        }
+        Tuple t = merge.current().toTuple();
+        merge.advance();
+        return t;
+    }
+
+    @Override
+    public void close() {
+        if (merge != null) {
+            merge.close();
+            merge = null;
+        }
+        unpinScratch();
+        if (file != null) {
+            file.close();
+            file = null;
+        }
+        runs.clear();
+        inMemory = false;
+        numRefs = 0;
+        refs = null;
+        child.close();
+    }
+
+    @Override
+    public TupleDesc getTupleDesc() {
+        return tupleDesc;
+    }
+
+    // Merges the first k runs, reading each a page at a time (one pinned frame per run)
+    private final class Merge implements LoserTree.Inputs {
+        private final int[] pageIds;
+        private final int[] ends;
+        private final int[] slots;
+        private final HeapPage[] pages;
+        private final TupleView[] views;
+        private final LoserTree tree;
+
+        Merge(int k) {
+            pageIds = new int[k];
+            ends = new int[k];
+            slots = new int[k];
+            pages = new HeapPage[k];
+            views = new TupleView[k];
+            for (int i = 0; i < k; i++) {
+                long run = runs.removeFirst();
+                pageIds[i] = (int) (run >>> 32) - 1;
+                ends[i] = (int) run;
+                views[i] = new TupleView(tupleDesc);
+                nextPage(i);
+            }
+            tree = new LoserTree(k, this);
+        }
+
+        boolean isExhausted() {
+            return isExhausted(tree.winner());
+        }
+
+        // The smallest row not handed out yet; valid until advance()
+        TupleView current() {
+            return views[tree.winner()];
+        }
+
+        void advance() {
+            int i = tree.winner();
+            if (++slots[i] < pages[i].getNumTuples()) {
+                pages[i].getTupleView(slots[i], views[i]);
+            } else {
+                nextPage(i);
+            }
+            tree.replay();
+        }
+
+        // Moves run i to its next page with rows, or leaves it exhausted (no page pinned)
+        private void nextPage(int i) {
+            if (pages[i] != null) {
+                bufferManager.unpinPage(pageIds[i], false);
+                pages[i] = null;
+            }
+            while (++pageIds[i] < ends[i]) {
+                HeapPage page = new HeapPage(bufferManager.pinPage(pageIds[i]));
+                if (page.getNumTuples() > 0) {
+                    pages[i] = page;
+                    slots[i] = 0;
+                    page.getTupleView(0, views[i]);
+                    return;
+                }
+                bufferManager.unpinPage(pageIds[i], false);
+            }
+        }
+
+        @Override
+        public boolean isExhausted(int input) {
+            return pages[input] == null;
+        }
+
+        @Override
+        public int compare(int a, int b) {
+            return compareRows(views[a], views[b]);
+        }
+
+        void close() {
+            for (int i = 0; i < pages.length; i++) {
+                if (pages[i] != null) {
+                    bufferManager.unpinPage(pageIds[i], false);
+                    pages[i] = null;
+                }
+            }
+        }
+    }
+}
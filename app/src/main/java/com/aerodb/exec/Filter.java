@@ -0,0 +1,45 @@
+package com.aerodb.exec;
+
+import com.aerodb.storage.Tuple;
+import com.aerodb.storage.TupleDesc;
+
+import java.util.function.Predicate;
+
+/**
+ * The rows of its child that satisfy a predicate.
+ */
+public class Filter implements Operator {
+    private final Operator child;
+    private final Predicate<Tuple> predicate;
+
+    public Filter(Operator child, Predicate<Tuple> predicate) {
+        this.child = child;
+        this.predicate = predicate;
+    }
+
+    @Override
+    public void open() {
+        child.open();
+    }
+
+    @Override
+    public Tuple next() {
+        Tuple t;
+        while ((t = child.next()) != null) {
+            if (predicate.test(t)) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        child.close();
+    }
+
+    @Override
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+}
@@ -0,0 +1,234 @@
+package com.aerodb.exec;
+
+import com.aerodb.storage.Tuple;
+import com.aerodb.storage.TupleDesc;
+import com.aerodb.storage.Type;
+
+/**
+ * Equi-join on an INT field: each row of the probe input joined with every row of the
+ * build input that has the same key. Output rows are the probe fields followed by the
+ * build fields, in probe order within each partition (see below).
+ *
+ * open() reads the build input into an IntRowTable. If it all fits in the memory budget,
+ * probe rows then stream through one at a time. Otherwise it is a grace hash join: both
+ * inputs are split on their key hash into FANOUT SpillFiles each, and each pair of
+ * partitions is joined in turn by a HashJoin of its own, which splits again on other
+ * hash bits if its build partition is still too large. Memory use is estimated from
+ * the serialized size of the rows, so the budget is approximate.
+ */
+public class HashJoin implements Operator {
+    public static final long DEFAULT_MEMORY = 64L << 20;
+    private static final int FANOUT_BITS = 4;
+    private static final int FANOUT = 1 << FANOUT_BITS;
+    // After this many splits (FANOUT^4 times the budget) a partition is built whatever its size
+    private static final int MAX_LEVEL = 4;
+    // Rough heap cost of a Tuple beyond its data: the object, its field list, boxed fields
+    private static final int ROW_OVERHEAD = 64;
+    private static final int FIELD_OVERHEAD = 24;
+
+    private final Operator probe;
+    private final int probeKey;
+    private final Operator build;
+    private final int buildKey;
+    private final long memoryBytes;
+    // Number of times the inputs were already split; picks the hash bits to split on
+    private final int level;
+    private final TupleDesc tupleDesc;
+
+    private final IntRowTable table = new IntRowTable();
+    // Probe row being joined and its next matching entry in the table (-1 once done)
+    private Tuple probeRow;
+    private int match = -1;
+
+    // Grace mode: the partitions, and the join of the pair being read
+    private SpillFile[] probeParts;
+    private SpillFile[] buildParts;
+    private long spilledBuildRows;
+    private int partition;
+    private HashJoin partitionJoin;
+
+    public HashJoin(Operator probe, int probeKey, Operator build, int buildKey) {
+        this(probe, probeKey, build, buildKey, DEFAULT_MEMORY);
+    }
+
+    // Joins with at most about 'memoryBytes' of build rows in memory at a time
+    public HashJoin(Operator probe, int probeKey, Operator build, int buildKey, long memoryBytes) {
+        this(probe, probeKey, build, buildKey, memoryBytes, 0);
+    }
+
+    private HashJoin(Operator probe, int probeKey, Operator build, int buildKey, long memoryBytes, int level) {
+        checkInt(probe.getTupleDesc(), probeKey);
+        checkInt(build.getTupleDesc(), buildKey);
+        if (memoryBytes <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive");
+        }
+        this.probe = probe;
+        this.probeKey = probeKey;
+        this.build = build;
+        this.buildKey = buildKey;
+        this.memoryBytes = memoryBytes;
+        this.level = level;
+        this.tupleDesc = new TupleDesc();
+        for (TupleDesc in : new TupleDesc[]{probe.getTupleDesc(), build.getTupleDesc()}) {
+            for (int i = 0; i < in.numFields(); i++) {
+                tupleDesc.copyField(in, i);
+            }
+        }
+    }
+
+    private static void checkInt(TupleDesc td, int field) {
+        if (td.getType(field) != Type.INT) {
+            throw new IllegalArgumentException("Join field " + field + " is " + td.getType(field) + ", not INT");
+        }
+    }
+
+    @Override
+    public void open() {
+        close();
+        build.open();
+        long used = 0;
+        Tuple t;
+        while ((t = build.next()) != null) {
+            table.add((Integer) t.getField(buildKey), t);
+            used += ROW_OVERHEAD + FIELD_OVERHEAD * t.getTupleDesc().numFields() + t.getSerializedSize();
+            if (used > memoryBytes && level < MAX_LEVEL) {
+                spill();
+                return;
+            }
+        }
+        build.close();
+        probe.open();
+    }
+
+    // The build input does not fit: partition both inputs to disk
+    private void spill() {
+        buildParts = new SpillFile[FANOUT];
+        probeParts = new SpillFile[FANOUT];
+        for (int p = 0; p < FANOUT; p++) {
+            buildParts[p] = new SpillFile(build.getTupleDesc());
+            probeParts[p] = new SpillFile(probe.getTupleDesc());
+        }
+        for (int e = 0; e < table.size(); e++) {
+            Tuple row = table.getRow(e);
+            buildParts[partitionOf((Integer) row.getField(buildKey))].append(row);
+        }
+        table.clear();
+        Tuple t;
+        while ((t = build.next()) != null) {
+            buildParts[partitionOf((Integer) t.getField(buildKey))].append(t);
+        }
+        build.close();
+        spilledBuildRows = 0;
+        for (SpillFile part : buildParts) {
+            spilledBuildRows += part.getNumRows();
+        }
+        probe.open();
+        while ((t = probe.next()) != null) {
+            probeParts[partitionOf((Integer) t.getField(probeKey))].append(t);
+        }
+        probe.close();
+        partition = -1;
+    }
+
+    // Each level splits on the next FANOUT_BITS of the hash, from the top; IntRowTable uses the low bits
+    private int partitionOf(int key) {
+        return (BatchAggregate.hash(key) >>> (32 - FANOUT_BITS * (level + 1))) & (FANOUT - 1);
+    }
+
+    @Override
+    public Tuple next() {
+        if (buildParts != null) {
+            return nextFromPartitions();
+        }
+        while (true) {
+            if (match >= 0) {
+                Tuple out = join(probeRow, table.getRow(match));
+                match = table.findNext(match);
+                return out;
+            }
+            probeRow = probe.next();
+            if (probeRow == null) {
+                return null;
+            }
+            match = table.find((Integer) probeRow.getField(probeKey));
+        }
+    }
+
+    private Tuple nextFromPartitions() {
+        while (true) {
+            if (partitionJoin != null) {
+                Tuple t = partitionJoin.next();
+                if (t != null) {
+                    return t;
+                }
+                closePartition();
+            }
+            if (++partition >= FANOUT) {
+                partition = FANOUT;
+                return null;
+            }
+            SpillFile probePart = probeParts[partition];
+            SpillFile buildPart = buildParts[partition];
+            if (probePart.getNumRows() == 0 || buildPart.getNumRows() == 0) {
+                closePartition();
+                continue;
+            }
+            // Splitting again cannot help if every row hashed here (one hot key, say)
+            int nextLevel = buildPart.getNumRows() == spilledBuildRows ? MAX_LEVEL : level + 1;
+            partitionJoin = new HashJoin(probePart.scan(), probeKey, buildPart.scan(), buildKey, memoryBytes, nextLevel);
+            partitionJoin.open();
+        }
+    }
+
+    // Ends the current partition pair and deletes its files
+    private void closePartition() {
+        if (partitionJoin != null) {
+            partitionJoin.close();
+            partitionJoin = null;
+        }
+        probeParts[partition].close();
+        buildParts[partition].close();
+        probeParts[partition] = null;
+        buildParts[partition] = null;
+    }
+
+    private Tuple join(Tuple probeRow, Tuple buildRow) {
+        Tuple out = new Tuple(tupleDesc);
+        int n = probeRow.getTupleDesc().numFields();
+        for (int i = 0; i < n; i++) {
+            out.setField(i, probeRow.getField(i));
+        }
+        for (int i = 0; i < buildRow.getTupleDesc().numFields(); i++) {
+            out.setField(n + i, buildRow.getField(i));
+        }
+        return out;
+    }
+
+    @Override
+    public void close() {
+        if (partitionJoin != null) {
+            partitionJoin.close();
+            partitionJoin = null;
+        }
+        if (buildParts != null) {
+            for (int p = 0; p < FANOUT; p++) {
+                if (buildParts[p] != null) {
+                    buildParts[p].close();
+                    probeParts[p].close();
+                }
+            }
+            buildParts = null;
+            probeParts = null;
+        }
+        table.clear();
+        probeRow = null;
+        match = -1;
+        build.close();
+        probe.close();
+    }
+
+    @Override
+    public TupleDesc getTupleDesc() {
+        return tupleDesc;
+    }
+}
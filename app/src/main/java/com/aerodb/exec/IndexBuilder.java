@@ -0,0 +1,94 @@
+package com.aerodb.exec;
+
+import com.aerodb.index.BTreeBulkLoader;
+import com.aerodb.index.BTreeFile;
+import com.aerodb.storage.RecordId;
+import com.aerodb.storage.TableHeap;
+import com.aerodb.storage.Tuple;
+import com.aerodb.storage.TupleDesc;
+import com.aerodb.storage.Type;
+
+/**
+ * Builds a B+ tree index over a table that is already filled. The (key, RecordId) pair of
+ * every row is sorted by an ExternalSort and handed to a BTreeBulkLoader, so the table can
+ * be far larger than memory, no key is searched for, and the index is written front to back.
+ */
+public final class IndexBuilder {
+
+    private IndexBuilder() {
+    }
+
+    /**
+     * Indexes INT field 'keyField' of every row of 'table' into the empty 'index', sorting
+     * with 'memoryPages' frames. Returns the number of entries.
+     */
+    public static long build(TableHeap table, TupleDesc tupleDesc, int keyField, BTreeFile index,
+                             int memoryPages, double fillFactor) {
+        if (tupleDesc.getType(keyField) != Type.INT) {
+            throw new IllegalArgumentException("Key field " + keyField + " is " + tupleDesc.getType(keyField) + ", not INT");
+        }
+        BTreeBulkLoader loader = index.bulkLoader(fillFactor);
+        // Sorted on all three fields, so equal keys end up in storage order
+        Operator sort = new ExternalSort(new Entries(new SeqScan(table, tupleDesc), keyField), memoryPages, 0, 1, 2);
+        long count = 0;
+        sort.open();
+        try {
+            Tuple t;
+            while ((t = sort.next()) != null) {
+                loader.add((Integer) t.getField(0), new RecordId((Integer) t.getField(1), (Integer) t.getField(2)));
+                count++;
+            }
+        } finally {
+            sort.close();
+        }
+        loader.finish();
+        return count;
+    }
+
+    // (key, pageId, slot) of each row of a scan: 12-byte fixed-width rows, cheap to sort
+    private static final class Entries implements Operator {
+        private static final TupleDesc ENTRY = new TupleDesc();
+
+        static {
+            ENTRY.addField(Type.INT, "key");
+            ENTRY.addField(Type.INT, "pageId");
+            ENTRY.addField(Type.INT, "slot");
+        }
+
+        private final Operator scan;
+        private final int keyField;
+
+        Entries(Operator scan, int keyField) {
+            this.scan = scan;
+            this.keyField = keyField;
+        }
+
+        @Override
+        public void open() {
+            scan.open();
+        }
+
+        @Override
+        public Tuple next() {
+            Tuple row = scan.next();
+            if (row == null) {
+                return null;
+            }
+            Tuple entry = new Tuple(ENTRY);
+            entry.setField(0, row.getField(keyField));
+            entry.setField(1, row.getRecordId().pageId);
+            entry.setField(2, row.getRecordId().slotNumber);
+            return entry;
+        }
+
+        @Override
+        public void close() {
+            scan.close();
+        }
+
+        @Override
+        public TupleDesc getTupleDesc() {
+            return ENTRY;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.aerodb.exec;
+
+import com.aerodb.index.BTreeFile;
+import com.aerodb.index.BTreeScan;
+import com.aerodb.storage.RecordId;
+import com.aerodb.storage.TableHeap;
+import com.aerodb.storage.Tuple;
+import com.aerodb.storage.TupleDesc;
+
+/**
+ * Rows of a table whose index key is in [lo, hi], in key order (descending if asked),
+ * found through a BTreeFile and fetched from the table one at a time.
+ */
+public class IndexScan implements Operator {
+    private final BTreeFile index;
+    private final TableHeap table;
+    private final TupleDesc tupleDesc;
+    private final int lo;
+    private final int hi;
+    private final boolean descending;
+
+    private BTreeScan scan;
+
+    public IndexScan(BTreeFile index, TableHeap table, TupleDesc tupleDesc, int lo, int hi) {
+        this(index, table, tupleDesc, lo, hi, false);
+    }
+
+    public IndexScan(BTreeFile index, TableHeap table, TupleDesc tupleDesc, int lo, int hi, boolean descending) {
+        this.index = index;
+        this.table = table;
+        this.tupleDesc = tupleDesc;
+        this.lo = lo;
+        this.hi = hi;
+        this.descending = descending;
+    }
+
+    @Override
+    public void open() {
+        close();
+        scan = index.scan(lo, hi, descending);
+    }
+
+    @Override
+    public Tuple next() {
+        if (scan == null || !scan.hasNext()) {
+            return null;
+        }
+        RecordId rid = scan.next();
+        Tuple t = table.getTuple(rid, tupleDesc);
+        t.setRecordId(rid);
+        return t;
+    }
+
+    @Override
+    public void close() {
+        if (scan != null) {
+            scan.close();
+            scan = null;
+        }
+    }
+
+    @Override
+    public TupleDesc getTupleDesc() {
+        return tupleDesc;
+    }
+}
@@ -0,0 +1,91 @@
+package com.aerodb.exec;
+
+import com.aerodb.storage.Tuple;
+
+import java.util.Arrays;
+
+/**
+ * Multimap from int keys to rows, for hash joins. Entries live in parallel arrays, and
+ * each bucket is a chain of entry numbers threaded through next[], so adding a row
+ * allocates nothing but the occasional array growth: no boxed key, no node object.
+ */
+final class IntRowTable {
+    private static final int NONE = -1;
+
+    // First entry of each bucket
+    private int[] heads;
+    // Per entry: key, next entry in the same bucket, row
+    private int[] keys;
+    private int[] next;
+    private Tuple[] rows;
+    private int size;
+
+    IntRowTable() {
+        clear();
+    }
+
+    void add(int key, Tuple row) {
+        if (size == keys.length) {
+            int n = size * 2;
+            keys = Arrays.copyOf(keys, n);
+            next = Arrays.copyOf(next, n);
+            rows = Arrays.copyOf(rows, n);
+        }
+        keys[size] = key;
+        rows[size] = row;
+        // Keep at most one entry per bucket on average
+        if (size >= heads.length) {
+            rehash(heads.length * 2);
+        }
+        int bucket = BatchAggregate.hash(key) & (heads.length - 1);
+        next[size] = heads[bucket];
+        heads[bucket] = size;
+        size++;
+    }
+
+    // First entry with 'key', or -1
+    int find(int key) {
+        return skipTo(heads[BatchAggregate.hash(key) & (heads.length - 1)], key);
+    }
+
+    // Entry with the same key after 'entry', or -1
+    int findNext(int entry) {
+        return skipTo(next[entry], keys[entry]);
+    }
+
+    Tuple getRow(int entry) {
+        return rows[entry];
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Drops every row, and the arrays a large build grew
+    void clear() {
+        heads = new int[64];
+        Arrays.fill(heads, NONE);
+        keys = new int[64];
+        next = new int[64];
+        rows = new Tuple[64];
+        size = 0;
+    }
+
+    private int skipTo(int entry, int key) {
+        while (entry != NONE && keys[entry] != key) {
+            entry = next[entry];
+        }
+        return entry;
+    }
+
+    private void rehash(int numBuckets) {
+        heads = new int[numBuckets];
+        Arrays.fill(heads, NONE);
+        int mask = numBuckets - 1;
+        for (int e = 0; e < size; e++) {
+            int bucket = BatchAggregate.hash(keys[e]) & mask;
+            next[e] = heads[bucket];
+            heads[bucket] = e;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.aerodb.exec;
+
+/**
+ * Tournament tree for a k-way merge. Each inner node remembers the loser of the match
+ * played there, and the overall winner sits in node 0. When the winning input advances,
+ * only the matches on its path to the root are replayed: log2(k) comparisons per row,
+ * against the log2(k) * 2 of a binary heap.
+ *
+ * Inputs are numbered 0..k-1 and compared by the caller through 'Inputs'; an input that
+ * is exhausted loses to every other, and ties go to the lower number, so the merge is stable.
+ */
+final class LoserTree {
+
+    interface Inputs {
+        boolean isExhausted(int input);
+
+        // Negative, zero or positive as the current row of input a sorts before, with or after that of b
+        int compare(int a, int b);
+    }
+
+    private final Inputs inputs;
+    private final int k;
+    // tree[0] is the winner; tree[n] for 1 <= n < k the loser at node n. Input i is leaf k + i
+    private final int[] tree;
+
+    LoserTree(int k, Inputs inputs) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("A merge needs at least one input");
+        }
+        this.inputs = inputs;
+        this.k = k;
+        this.tree = new int[k];
+        // Play every match bottom up, keeping the winners aside
+        int[] winners = new int[2 * k];
+        for (int i = 0; i < k; i++) {
+            winners[k + i] = i;
+        }
+        for (int n = k - 1; n >= 1; n--) {
+            int a = winners[2 * n];
+            int b = winners[2 * n + 1];
+            if (beats(a, b)) {
+                winners[n] = a;
+                tree[n] = b;
+            } else {
+                winners[n] = b;
+                tree[n] = a;
+            }
+        }
+        tree[0] = k == 1 ? 0 : winners[1];
+    }
+
+    // The input whose current row comes first; exhausted only once they all are
+    int winner() {
+        return tree[0];
+    }
+
+    // Called after the winner moved to its next row
+    void replay() {
+        int winner = tree[0];
+        for (int n = (k + winner) >>> 1; n >= 1; n >>>= 1) {
+            if (beats(tree[n], winner)) {
+                int loser = winner;
+                winner = tree[n];
+                tree[n] = loser;
+            }
+        }
+        tree[0] = winner;
+    }
+
+    private boolean beats(int a, int b) {
+        if (inputs.isExhausted(a)) {
+            return false;
+        }
+        if (inputs.isExhausted(b)) {
+            return true;
+        }
+        int c = inputs.compare(a, b);
+        return c < 0 || (c == 0 && a < b);
+    }
+}
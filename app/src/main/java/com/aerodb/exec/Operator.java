@@ -0,0 +1,25 @@
+package com.aerodb.exec;
+
+import com.aerodb.storage.Tuple;
+import com.aerodb.storage.TupleDesc;
+
+/**
+ * A query operator in the pull (Volcano) model: open() it, call next() until it returns
+ * null, then close() it. Each call hands over one row, so a plan runs in constant memory
+ * no matter how many rows flow through it. Operators that read pages hold at most one
+ * pinned page each between calls.
+ */
+public interface Operator extends AutoCloseable {
+
+    void open();
+
+    // The next row, or null when there are no more
+    Tuple next();
+
+    // Releases whatever the operator holds; safe to call more than once
+    @Override
+    void close();
+
+    // Schema of the rows next() returns
+    TupleDesc getTupleDesc();
+}
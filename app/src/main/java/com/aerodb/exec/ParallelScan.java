@@ -0,0 +1,230 @@
+package com.aerodb.exec;
+
+import com.aerodb.buffer.BufferManager;
+import com.aerodb.storage.ColumnarHeapPage;
+import com.aerodb.storage.HeapPage;
+import com.aerodb.storage.Page;
+import com.aerodb.storage.RecordId;
+import com.aerodb.storage.TableHeap;
+import com.aerodb.storage.Tuple;
+import com.aerodb.storage.TupleDesc;
+import com.aerodb.storage.TupleView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Scans a table on several threads. The pages 0..getNumPages()-1 are cut into morsels of
+ * consecutive pages, and a ForkJoinPool runs them: the range is halved until it is one
+ * morsel, so idle workers steal the larger halves that are left. Each morsel asks the
+ * buffer pool to read its pages ahead, and reads them like the single-threaded scans do,
+ * pinning one page at a time and latching it (shared) only while decoding from it.
+ *
+ * Results are either computed per morsel and merged (mapReduce(), aggregate()), or the
+ * rows are handed out as a parallel Stream whose Spliterator splits on the same page ranges.
+ * Pages added after the scan starts are not scanned.
+ */
+public class ParallelScan {
+    public static final int DEFAULT_MORSEL_PAGES = 64;
+
+    private final TableHeap table;
+    private final TupleDesc tupleDesc;
+    private final ForkJoinPool pool;
+    private final int morselPages;
+
+    // Work on one range of pages, [fromPage, toPage)
+    @FunctionalInterface
+    public interface PageRangeFunction<R> {
+        R apply(int fromPage, int toPage);
+    }
+
+    // On the common pool, with morsels of DEFAULT_MORSEL_PAGES pages
+    public ParallelScan(TableHeap table, TupleDesc tupleDesc) {
+        this(table, tupleDesc, ForkJoinPool.commonPool(), DEFAULT_MORSEL_PAGES);
+    }
+
+    public ParallelScan(TableHeap table, TupleDesc tupleDesc, ForkJoinPool pool, int morselPages) {
+        if (morselPages <= 0) {
+            throw new IllegalArgumentException("Morsels must have at least one page");
+        }
+        this.table = table;
+        this.tupleDesc = tupleDesc;
+        this.pool = pool;
+        this.morselPages = morselPages;
+    }
+
+    /**
+     * Runs 'map' on every morsel of the table in parallel and folds the results with
+     * 'combine', which must be associative. Morsels are combined in page order.
+     * Returns null for a table with no pages.
+     */
+    public <R> R mapReduce(PageRangeFunction<R> map, BinaryOperator<R> combine) {
+        int numPages = table.getNumPages();
+        if (numPages == 0) {
+            return null;
+        }
+        return pool.invoke(new MorselTask<>(0, numPages, map, combine));
+    }
+
+    /**
+     * COUNT, SUM, MIN and MAX like BatchAggregate, computed per morsel and merged.
+     * Each morsel runs plan(BatchScan over 'columns' of its pages); the plan may add
+     * BatchFilters (use s -> s for none). The group and value columns index the batch.
+     */
+    public AggregateResult aggregate(UnaryOperator<BatchOperator> plan, int groupColumn, int valueColumn, int... columns) {
+        AggregateResult result = mapReduce((from, to) -> {
+            BatchScan scan = new BatchScan(table, tupleDesc, columns).pages(from, to);
+            return new BatchAggregate(plan.apply(scan), groupColumn, valueColumn).run();
+        }, AggregateResult::merge);
+        if (result == null) {
+            return new BatchAggregate(plan.apply(new BatchScan(table, tupleDesc, columns)), groupColumn, valueColumn).run();
+        }
+        return result;
+    }
+
+    /**
+     * Every row of the table as a parallel stream, each carrying its RecordId.
+     * Streams run on the pool of the thread that starts the terminal operation
+     * (the common pool unless it is called from inside another ForkJoinPool).
+     */
+    public Stream<Tuple> stream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    public Spliterator<Tuple> spliterator() {
+        return new PageSpliterator(0, table.getNumPages());
+    }
+
+    @SuppressWarnings("serial")
+    private final class MorselTask<R> extends RecursiveTask<R> {
+        private final int fromPage;
+        private final int toPage;
+        private final PageRangeFunction<R> map;
+        private final BinaryOperator<R> combine;
+
+        MorselTask(int fromPage, int toPage, PageRangeFunction<R> map, BinaryOperator<R> combine) {
+            this.fromPage = fromPage;
+            this.toPage = toPage;
+            this.map = map;
+            this.combine = combine;
+        }
+
+        @Override
+        protected R compute() {
+            if (toPage - fromPage <= morselPages) {
+                table.getBufferManager().prefetch(fromPage, toPage - fromPage);
+                return map.apply(fromPage, toPage);
+            }
+            int mid = (fromPage + toPage) >>> 1;
+            MorselTask<R> right = new MorselTask<>(mid, toPage, map, combine);
+            right.fork();
+            R left = new MorselTask<>(fromPage, mid, map, combine).compute();
+            return combine.apply(left, right.join());
+        }
+    }
+
+    // Rows of pages [pageId, toPage), read one page at a time into 'rows'
+    private final class PageSpliterator implements Spliterator<Tuple> {
+        private int pageId;
+        private final int toPage;
+        private final TupleView view = new TupleView(tupleDesc);
+        private final List<Tuple> rows = new ArrayList<>();
+        private int next;
+        // Pages before this one have been handed to prefetch()
+        private int prefetchedTo;
+
+        PageSpliterator(int fromPage, int toPage) {
+            this.pageId = fromPage;
+            this.toPage = toPage;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Tuple> action) {
+            while (next == rows.size()) {
+                if (pageId >= toPage) {
+                    return false;
+                }
+                readPage();
+            }
+            action.accept(rows.get(next++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Tuple> action) {
+            while (tryAdvance(action)) {
+                for (int n = rows.size(); next < n; next++) {
+                    action.accept(rows.get(next));
+                }
+            }
+        }
+
+        // Splits off the first half of the pages, down to one morsel. Not once a page has
+        // been read, since its rows come before any page a split could hand out
+        @Override
+        public Spliterator<Tuple> trySplit() {
+            int remaining = toPage - pageId;
+            if (remaining <= morselPages || next < rows.size()) {
+                return null;
+            }
+            int mid = pageId + remaining / 2;
+            PageSpliterator prefix = new PageSpliterator(pageId, mid);
+            pageId = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+
+        private void readPage() {
+            BufferManager bufferManager = table.getBufferManager();
+            if (pageId >= prefetchedTo) {
+                prefetchedTo = Math.min(toPage, pageId + morselPages);
+                bufferManager.prefetch(pageId, prefetchedTo - pageId);
+            }
+            rows.clear();
+            next = 0;
+            Page page = bufferManager.pinPage(pageId);
+            Lock latch = page.getLatch().readLock();
+            latch.lock();
+            try {
+                if (ColumnarHeapPage.isColumnar(page)) {
+                    ColumnarHeapPage columnarPage = ColumnarHeapPage.readOnly(page, tupleDesc);
+                    for (int i = 0; i < columnarPage.getNumTuples(); i++) {
+                        addRow(columnarPage.getTuple(i), i);
+                    }
+                } else {
+                    HeapPage heapPage = HeapPage.readOnly(page);
+                    for (int i = 0; i < heapPage.getNumTuples(); i++) {
+                        addRow(heapPage.getTupleView(i, view).toTuple(), i);
+                    }
+                }
+            } finally {
+                latch.unlock();
+                bufferManager.unpinPage(pageId, false);
+            }
+            pageId++;
+        }
+
+        private void addRow(Tuple t, int slot) {
+            t.setRecordId(new RecordId(pageId, slot));
+            rows.add(t);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.aerodb.exec;
+
+import com.aerodb.storage.Tuple;
+import com.aerodb.storage.TupleDesc;
+
+/**
+ * The chosen fields of each row of its child, in the order given.
+ */
+public class Project implements Operator {
+    private final Operator child;
+    private final int[] fields;
+    private final TupleDesc tupleDesc;
+
+    public Project(Operator child, int... fields) {
+        this.child = child;
+        this.fields = fields.clone();
+        TupleDesc in = child.getTupleDesc();
+        this.tupleDesc = new TupleDesc();
+        for (int f : fields) {
+            tupleDesc.copyField(in, f);
+        }
+    }
+
+    @Override
+    public void open() {
+        child.open();
+    }
+
+    @Override
+    public Tuple next() {
+        Tuple in = child.next();
+        if (in == null) {
+            return null;
+        }
+        Tuple out = new Tuple(tupleDesc);
+        for (int i = 0; i < fields.length; i++) {
+            out.setField(i, in.getField(fields[i]));
+        }
+        out.setRecordId(in.getRecordId());
+        return out;
+    }
+
+    @Override
+    public void close() {
+        child.close();
+    }
+
+    @Override
+    public TupleDesc getTupleDesc() {
+        return tupleDesc;
+    }
+}
@@ -0,0 +1,99 @@
+package com.aerodb.exec;
+
+import com.aerodb.buffer.BufferManager;
+import com.aerodb.storage.ColumnarHeapPage;
+import com.aerodb.storage.HeapPage;
+import com.aerodb.storage.Page;
+import com.aerodb.storage.RecordId;
+import com.aerodb.storage.TableHeap;
+import com.aerodb.storage.Tuple;
+import com.aerodb.storage.TupleDesc;
+import com.aerodb.storage.TupleView;
+
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Every row of a table, page by page in page id order.
+ * Only the current page is pinned, and its latch is held (shared) only while a row is
+ * decoded, so the scan can be consumed at any pace. Row and columnar pages are both read.
+ * Each row carries its RecordId.
+ */
+public class SeqScan implements Operator {
+    private final TableHeap table;
+    private final TupleDesc tupleDesc;
+    private final TupleView view;
+
+    // Current page (pinned) and the next row to read from it
+    private Page page;
+    private int pageId;
+    private int row;
+    private int numPages;
+
+    public SeqScan(TableHeap table, TupleDesc tupleDesc) {
+        this.table = table;
+        this.tupleDesc = tupleDesc;
+        this.view = new TupleView(tupleDesc);
+    }
+
+    @Override
+    public void open() {
+        close();
+        // Pages added after open are not scanned
+        numPages = table.getNumPages();
+        pageId = -1;
+    }
+
+    @Override
+    public Tuple next() {
+        BufferManager bufferManager = table.getBufferManager();
+        while (true) {
+            if (page == null) {
+                if (pageId + 1 >= numPages) {
+                    return null;
+                }
+                pageId++;
+                page = bufferManager.pinPage(pageId);
+                row = 0;
+            }
+            Lock latch = page.getLatch().readLock();
+            latch.lock();
+            try {
+                // Read-only wrappers: under a shared latch the page must not be formatted
+                if (ColumnarHeapPage.isColumnar(page)) {
+                    ColumnarHeapPage columnarPage = ColumnarHeapPage.readOnly(page, tupleDesc);
+                    if (row < columnarPage.getNumTuples()) {
+                        return withRecordId(columnarPage.getTuple(row));
+                    }
+                } else {
+                    HeapPage heapPage = HeapPage.readOnly(page);
+                    if (row < heapPage.getNumTuples()) {
+                        return withRecordId(heapPage.getTupleView(row, view).toTuple());
+                    }
+                }
+            } finally {
+                latch.unlock();
+            }
+            bufferManager.unpinPage(pageId, false);
+            page = null;
+        }
+    }
+
+    private Tuple withRecordId(Tuple t) {
+        t.setRecordId(new RecordId(pageId, row++));
+        return t;
+    }
+
+    @Override
+    public void close() {
+        if (page != null) {
+            table.getBufferManager().unpinPage(pageId, false);
+            page = null;
+        }
+        numPages = 0;
+    }
+
+    @Override
+    public TupleDesc getTupleDesc() {
+        return tupleDesc;
+    }
+}
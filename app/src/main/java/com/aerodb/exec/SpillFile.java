@@ -0,0 +1,166 @@
+package com.aerodb.exec;
+
+import com.aerodb.buffer.BufferManager;
+import com.aerodb.storage.HeapFile;
+import com.aerodb.storage.HeapPage;
+import com.aerodb.storage.Page;
+import com.aerodb.storage.Tuple;
+import com.aerodb.storage.TupleDesc;
+import com.aerodb.storage.TupleView;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A temporary file of rows for operators that run out of memory: written once front to
+ * back, then read back in the same order. Rows go into HeapPages through a BufferManager
+ * of a few frames, so a spill uses little memory however much is written, and the disk
+ * sees sequential writes and (with read-ahead) sequential reads. The file is a
+ * HeapFile.temporary(): no space is reserved ahead of the rows. It is deleted on close().
+ *
+ * Several sequences of rows can share one file: after finish() the next row starts a new
+ * page, so each sequence is a range of pages (ExternalSort keeps its runs that way).
+ */
+final class SpillFile implements AutoCloseable {
+    private static final int FRAMES = 8;
+
+    private final TupleDesc tupleDesc;
+    private final File file;
+    private final HeapFile heapFile;
+    private final BufferManager bufferManager;
+    // Row size for fixed-slot pages, 0 for slotted pages
+    private final int fixedSize;
+
+    // Page being filled (pinned), if any
+    private Page page;
+    private long numRows;
+
+    SpillFile(TupleDesc tupleDesc) {
+        this(tupleDesc, FRAMES);
+    }
+
+    // A spill file whose pool has 'frames' frames
+    SpillFile(TupleDesc tupleDesc, int frames) {
+        this.tupleDesc = tupleDesc;
+        try {
+            this.file = File.createTempFile("aerodb-spill", ".tmp");
+        } catch (IOException e) {
+            throw new RuntimeException("Could not create a spill file", e);
+        }
+        this.heapFile = HeapFile.temporary(file);
+        this.bufferManager = new BufferManager(heapFile, frames);
+        this.fixedSize = tupleDesc.isFixedWidth() ? tupleDesc.getFixedSize() : 0;
+    }
+
+    void append(Tuple t) {
+        pageFor(t.getSerializedSize()).insertTuple(t);
+    }
+
+    // Appends a row that is already serialized, copying its bytes
+    void append(TupleView view) {
+        pageFor(view.getLength()).insertTuple(view);
+    }
+
+    // The page to append a row of 'size' bytes to, starting a new one if needed
+    private HeapPage pageFor(int size) {
+        if (size > HeapPage.maxTupleSize()) {
+            throw new IllegalArgumentException("Tuple of " + size + " bytes does not fit in a page");
+        }
+        if (page == null || !new HeapPage(page, fixedSize).fits(size)) {
+            finish();
+            page = bufferManager.pinPage(bufferManager.allocateNewPage());
+        }
+        numRows++;
+        return new HeapPage(page, fixedSize);
+    }
+
+    // Ends the writing: the last page is released. Appending again starts a new page
+    void finish() {
+        if (page != null) {
+            bufferManager.unpinPage(page.getPageId(), true);
+            page = null;
+        }
+    }
+
+    long getNumRows() {
+        return numRows;
+    }
+
+    int getNumPages() {
+        return heapFile.getNumPages();
+    }
+
+    BufferManager getBufferManager() {
+        return bufferManager;
+    }
+
+    TupleDesc getTupleDesc() {
+        return tupleDesc;
+    }
+
+    // The rows in the order they were appended, as an operator
+    Operator scan() {
+        finish();
+        return new Scan();
+    }
+
+    @Override
+    public void close() {
+        page = null;
+        bufferManager.close();
+        try {
+            heapFile.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not close spill file " + file.getPath(), e);
+        } finally {
+            file.delete();
+        }
+    }
+
+    // Like SeqScan, with one page pinned at a time; nothing else touches the file, so no latch
+    private final class Scan implements Operator {
+        private final TupleView view = new TupleView(tupleDesc);
+        private Page current;
+        private int pageId;
+        private int row;
+
+        @Override
+        public void open() {
+            close();
+            pageId = -1;
+        }
+
+        @Override
+        public Tuple next() {
+            while (true) {
+                if (current == null) {
+                    if (pageId + 1 >= heapFile.getNumPages()) {
+                        return null;
+                    }
+                    current = bufferManager.pinPage(++pageId);
+                    row = 0;
+                }
+                HeapPage heapPage = new HeapPage(current);
+                if (row < heapPage.getNumTuples()) {
+                    return heapPage.getTupleView(row++, view).toTuple();
+                }
+                bufferManager.unpinPage(pageId, false);
+                current = null;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (current != null) {
+                bufferManager.unpinPage(pageId, false);
+                current = null;
+            }
+            pageId = Integer.MAX_VALUE - 1;
+        }
+
+        @Override
+        public TupleDesc getTupleDesc() {
+            return tupleDesc;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.aerodb.exec;
+
+/**
+ * Up to CAPACITY rows in column form: one int[] per column, plus a selection vector with
+ * the positions of the rows still in play. Batch operators work on these arrays in tight
+ * loops instead of on one Tuple at a time. A scan reuses the same batch for every call,
+ * so its contents are only good until the next one.
+ */
+public class VectorBatch {
+    public static final int CAPACITY = 1024;
+
+    private final int[][] columns;
+    // Rows held, and the positions (ascending) of the 'selectedCount' rows selected
+    private int size;
+    private final int[] selection = new int[CAPACITY];
+    private int selectedCount;
+
+    public VectorBatch(int numColumns) {
+        this.columns = new int[numColumns][CAPACITY];
+    }
+
+    public int numColumns() {
+        return columns.length;
+    }
+
+    // Values of column i at positions 0..size-1
+    public int[] getColumn(int i) {
+        return columns[i];
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int[] getSelection() {
+        return selection;
+    }
+
+    public int getSelectedCount() {
+        return selectedCount;
+    }
+
+    public void setSelectedCount(int count) {
+        this.selectedCount = count;
+    }
+
+    // Sets the number of rows and selects all of them
+    public void setSize(int size) {
+        this.size = size;
+        for (int i = 0; i < size; i++) {
+            selection[i] = i;
+        }
+        this.selectedCount = size;
+    }
+}
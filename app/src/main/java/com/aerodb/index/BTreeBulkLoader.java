@@ -0,0 +1,136 @@
+package com.aerodb.index;
+
+import com.aerodb.buffer.BufferManager;
+import com.aerodb.storage.Page;
+import com.aerodb.storage.RecordId;
+
+import java.util.Arrays;
+
+/**
+ * Builds a BTreeFile bottom-up from entries given in ascending key order.
+ * Leaves are filled one after another to the fill factor and linked as they go,
+ * so they end up in sequential pages. finish() then builds each internal level
+ * from the first keys of the level below, again in sequential pages, up to the root.
+ * No key is ever searched for, and no page is split.
+ *
+ * Input that is not sorted must be sorted first (externally if it does not fit in memory).
+ *
+ * Usage:
+ * BTreeBulkLoader loader = index.bulkLoader(0.9);
+ * for (...) loader.add(key, rid);
+ * loader.finish();
+ */
+public class BTreeBulkLoader {
+    private final BTreeFile tree;
+    private final BufferManager bufferManager;
+    private final double fillFactor;
+    private final int leafFill;
+    private final int internalFill;
+
+    // Leaf being filled (pinned)
+    private BTreeLeafPage leaf;
+    private int leafId;
+
+    // First key and page id of every node of the level being built
+    private int[] levelKeys = new int[1024];
+    private int[] levelPages = new int[1024];
+    private int levelSize;
+
+    private long keyCount;
+    private int lastKey;
+    private boolean finished;
+
+    // 'firstLeafId' is the empty root leaf of the new index, reused as the first leaf
+    BTreeBulkLoader(BTreeFile tree, BufferManager bufferManager, int firstLeafId, double fillFactor) {
+        if (fillFactor <= 0 || fillFactor > 1) {
+            throw new IllegalArgumentException("fillFactor must be in (0, 1]");
+        }
+        this.tree = tree;
+        this.bufferManager = bufferManager;
+        this.fillFactor = fillFactor;
+        this.leafFill = fill(BTreeLeafPage.MAX_ENTRIES);
+        // An internal node with k keys has k + 1 children
+        this.internalFill = fill(BTreeInternalPage.MAX_KEYS);
+
+        this.leaf = new BTreeLeafPage(bufferManager.pinPage(firstLeafId));
+        this.leafId = firstLeafId;
+        addToLevel(Integer.MIN_VALUE, firstLeafId);
+    }
+
+    private int fill(int capacity) {
+        return Math.max(1, Math.min(capacity, (int) Math.ceil(capacity * fillFactor)));
+    }
+
+    /**
+     * Adds the next entry. Keys must not decrease.
+     */
+    public void add(int key, RecordId rid) {
+        if (finished) {
+            throw new IllegalStateException("Bulk load already finished");
+        }
+        if (keyCount > 0 && key < lastKey) {
+            throw new IllegalArgumentException("Keys must be added in ascending order: " + key + " after " + lastKey);
+        }
+        if (leaf.getKeyCount() >= leafFill) {
+            startNextLeaf(key);
+        }
+        leaf.append(key, rid);
+        lastKey = key;
+        keyCount++;
+    }
+
+    // Closes the current leaf and links a new one after it
+    private void startNextLeaf(int firstKey) {
+        int nextId = bufferManager.allocateNewPage();
+        BTreeLeafPage next = new BTreeLeafPage(bufferManager.pinPage(nextId));
+        leaf.setNextLeaf(nextId);
+        next.setPrevLeaf(leafId);
+        bufferManager.unpinPage(leafId, true);
+        leaf = next;
+        leafId = nextId;
+        addToLevel(firstKey, nextId);
+    }
+
+    private void addToLevel(int firstKey, int pageId) {
+        if (levelSize == levelPages.length) {
+            levelKeys = Arrays.copyOf(levelKeys, levelSize * 2);
+            levelPages = Arrays.copyOf(levelPages, levelSize * 2);
+        }
+        levelKeys[levelSize] = firstKey;
+        levelPages[levelSize] = pageId;
+        levelSize++;
+    }
+
+    /**
+     * Writes the last leaf, builds the internal levels and installs the new root.
+     */
+    public void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        bufferManager.unpinPage(leafId, true);
+
+        int height = 1;
+        // Each pass turns the level in levelKeys/levelPages into the level above it
+        while (levelSize > 1) {
+            int[] childKeys = Arrays.copyOf(levelKeys, levelSize);
+            int[] childPages = Arrays.copyOf(levelPages, levelSize);
+            int children = levelSize;
+            levelSize = 0;
+            for (int i = 0; i < children; ) {
+                int nodeId = bufferManager.allocateNewPage();
+                BTreeInternalPage node = new BTreeInternalPage(bufferManager.pinPage(nodeId));
+                node.setPointer(0, childPages[i]);
+                addToLevel(childKeys[i], nodeId);
+                i++;
+                for (int k = 0; k < internalFill && i < children; k++, i++) {
+                    node.append(childKeys[i], childPages[i]);
+                }
+                bufferManager.unpinPage(nodeId, true);
+            }
+            height++;
+        }
+        tree.setTree(levelPages[0], height, keyCount);
+    }
+}
@@ -4,148 +4,511 @@ import com.aerodb.buffer.*;
 import com.aerodb.storage.Page;
 import com.aerodb.storage.RecordId;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * B+tree index from int keys to RecordIds, stored in its own file.
+ * Page 0 is a meta page with the root page id, the height and the number of keys,
+ * so opening an index costs one page read. Nodes split at every level, and the
+ * tree grows at the root, so lookups cost one page per level at any size.
+ * The key count is kept in memory and written to the meta page only with a new root
+ * and at every checkpoint of the pool (so also on flushAll()); after a crash it is
+ * the count of the last of those.
+ *
+ * find, insert, scans and the batch calls are safe to use from many threads, through
+ * optimistic lock coupling on the page versions (see Page.readVersion()). Readers take
+ * no locks: they validate each node after reading it and restart if a writer got in.
+ * Inserts descend the same way and lock only the leaf they change; a full node met on
+ * the way down is split right away, locking just it and its parent, so a separator
+ * always finds room one level up. The meta page stands in as the parent of the root.
+ * The bulk loader needs the index to itself.
+ *
+ * Layout:
+ * [Page 0 (Meta): Magic(4B), RootPageId(4B), Height(4B), KeyCount(8B)]
+ * [Page 1..n: BTreeLeafPage / BTreeInternalPage nodes]
+ */
 public class BTreeFile {
+    private static final int MAGIC=0x42545231; // "BTR1"
+    private static final int META_PAGE=0;
+    private static final int OFF_MAGIC=0;
+    private static final int OFF_ROOT=4;
+    private static final int OFF_HEIGHT=8;
+    private static final int OFF_KEY_COUNT=12;
+
     private final BufferManager bufferManager;
-    private int rootPageId;
+    private volatile int rootPageId;
+    private volatile int height;
+    private final AtomicLong keyCount=new AtomicLong();
+    //Key count last written to the meta page
+    private volatile long savedKeyCount;
 
-    public BTreeFile(BufferManager bufferManager, int rootPageId){
+    public BTreeFile(BufferManager bufferManager){
 
         this.bufferManager=bufferManager;
-        this.rootPageId=rootPageId;
-        initRootIfNeeded();
+        openMeta();
+        bufferManager.addCheckpointHook(()->{
+            if(keyCount.get()!=savedKeyCount){
+                saveMeta();
+            }
+        });
     }
 
-    private void initRootIfNeeded(){
-        //Initialize empty root if needed
-        try {
-            Page p=bufferManager.getPage(rootPageId);
-            if(p.getInt(0)==0 && p.getInt(4)==0){
-                BTreeLeafPage leaf = new BTreeLeafPage(p);
-                leaf.setPageType(BTreePage.TYPE_LEAF);
-                bufferManager.setPageDirty(rootPageId, true);
+    //Reads the meta page, or formats a new index with an empty root leaf
+    private void openMeta(){
+        if(bufferManager.getDiskManager().getNumPages()==0){
+            bufferManager.allocateNewPage();
+        }
+        Page meta=bufferManager.pinPage(META_PAGE);
+        try{
+            if(meta.getInt(OFF_MAGIC)==MAGIC){
+                rootPageId=meta.getInt(OFF_ROOT);
+                height=meta.getInt(OFF_HEIGHT);
+                keyCount.set(meta.getBuffer().getLong(OFF_KEY_COUNT));
+                savedKeyCount=keyCount.get();
+                return;
+            }
+            if(meta.getInt(OFF_ROOT)!=0 || meta.getInt(OFF_HEIGHT)!=0){
+                throw new IllegalStateException("Page "+META_PAGE+" is not a B+tree meta page");
             }
-        } catch (Exception e) {}
+            //New index: a single leaf is the root
+            rootPageId=bufferManager.allocateNewPage();
+            Page root=bufferManager.pinPage(rootPageId);
+            new BTreeLeafPage(root);
+            bufferManager.unpinPage(rootPageId,true);
+            height=1;
+            meta.setInt(OFF_MAGIC,MAGIC);
+            writeMeta(meta);
+        }finally{
+            bufferManager.unpinPage(META_PAGE,false);
+        }
     }
 
-    public RecordId find(int key){
-        int currentPageId =rootPageId;
+    private void writeMeta(Page meta){
+        long count=keyCount.get();
+        meta.setInt(OFF_ROOT,rootPageId);
+        meta.setInt(OFF_HEIGHT,height);
+        meta.setInt(OFF_KEY_COUNT,(int)(count>>>32));
+        meta.setInt(OFF_KEY_COUNT+4,(int)count);
+        bufferManager.setPageDirty(META_PAGE,true);
+        savedKeyCount=count;
+    }
+
+    //Only the exclusive latch, not lockForWrite(): optimistic readers of the meta page
+    //only look at the root, so a new key count must not make them restart
+    private void saveMeta(){
+        Page meta=bufferManager.pinPage(META_PAGE);
+        Lock latch=meta.getLatch().writeLock();
+        latch.lock();
+        try{
+            writeMeta(meta);
+        }finally{
+            latch.unlock();
+            bufferManager.unpinPage(META_PAGE,false);
+        }
+    }
+
+    public int getRootPageId(){
+        return rootPageId;
+    }
+
+    //Number of levels: 1 while the root is a leaf
+    public int getHeight(){
+        return height;
+    }
 
-        while (true) {
-            Page rawPage =bufferManager.getPage(currentPageId);
-            int pageType=rawPage.getInt(0);
+    public long getKeyCount(){
+        return keyCount.get();
+    }
 
-            if (pageType==BTreePage.TYPE_LEAF) {
-                return new BTreeLeafPage(rawPage).lookup(key);
+    public RecordId find(int key){
+        LeafRange range=new LeafRange();
+        while(true){
+            if(!descend(key,range)){
+                continue;
+            }
+            Page rawPage=range.leaf;
+            try{
+                RecordId rid=new BTreeLeafPage(rawPage).lookup(key);
+                if(rawPage.validate(range.version)){
+                    return rid;
+                }
+            }finally{
+                bufferManager.unpinPage(rawPage.getPageId(),false);
             }
-            else
-                currentPageId =new BTreeInternalPage(rawPage).lookup(key);
         }
     }
 
-    public void insert (int key, RecordId rid){
-        //recursiveInsert returns a PushUpEntry if the root splits
-        PushUpEntry result=insertRecursive(rootPageId, key, rid);
+    /**
+     * Entries with lo <= key <= hi in ascending key order.
+     * The scan copies one leaf at a time and holds no pin between calls, so it need not be
+     * closed; entries inserted while it runs may or may not be seen.
+     */
+    public BTreeScan scan(int lo, int hi){
+        return scan(lo, hi, false);
+    }
 
-        if(result!=null){
-            //Root Split
-            createNewRoot(result);
+    /**
+     * Entries with lo <= key <= hi, in descending key order if 'descending'.
+     */
+    public BTreeScan scan(int lo, int hi, boolean descending){
+        BTreeScan scan=new BTreeScan(bufferManager, lo, hi, descending);
+        if(lo>hi){
+            return scan;
+        }
+        //Ascending starts just below lo, so equal keys left of a separator are not skipped
+        int start=descending ? hi : (lo==Integer.MIN_VALUE ? lo : lo-1);
+        LeafRange range=new LeafRange();
+        while(true){
+            if(!descend(start,range)){
+                continue;
+            }
+            boolean loaded;
+            try{
+                loaded=scan.start(range.leaf,range.version);
+            }finally{
+                bufferManager.unpinPage(range.leaf.getPageId(),false);
+            }
+            if(loaded){
+                return scan;
+            }
         }
     }
 
-    //Recursive Helper. Returns PushUpEntry if the child slits, null otherwise
-    private PushUpEntry insertRecursive(int currentPageId, int key, RecordId rid){
-        Page rawPage=bufferManager.getPage(currentPageId);
-        int pageType=rawPage.getInt(0);
+    /**
+     * Looks up many keys at once; results come back in the order of 'keys' (null if absent).
+     * The keys are sorted first, and each leaf serves every key up to its fence.
+     */
+    public RecordId[] findBatch(int[] keys){
+        RecordId[] results=new RecordId[keys.length];
+        long[] order=sortedOrder(keys);
+        LeafRange range=new LeafRange();
+        int i=0;
+        while(i<order.length){
+            if(!descend(keyOf(order[i]),range)){
+                continue;
+            }
+            Page rawPage=range.leaf;
+            int first=i;
+            try{
+                BTreeLeafPage leaf=new BTreeLeafPage(rawPage);
+                //Every key below the fence lives in this leaf, if anywhere
+                do{
+                    results[indexOf(order[i])]=leaf.lookup(keyOf(order[i]));
+                    i++;
+                }while(i<order.length && keyOf(order[i])<range.highFence);
+                if(!rawPage.validate(range.version)){
+                    i=first;
+                }
+            }finally{
+                bufferManager.unpinPage(rawPage.getPageId(),false);
+            }
+        }
+        return results;
+    }
 
-        if(pageType==BTreePage.TYPE_LEAF){
-            return handleLeafInsert(rawPage, key, rid);
+    /**
+     * Inserts many entries at once. The batch is sorted, and each descent fills its leaf
+     * with all following keys below the leaf's fence; the tree is only descended again
+     * when a key crosses the fence or the leaf must split.
+     */
+    public void insertBatch(int[] keys, RecordId[] rids){
+        if(keys.length!=rids.length){
+            throw new IllegalArgumentException("keys and rids differ in length");
         }
-        else{
-            return handleInternalInsert(rawPage, key, rid);
+        long[] order=sortedOrder(keys);
+        LeafRange range=new LeafRange();
+        int i=0;
+        while(i<order.length){
+            if(!descend(keyOf(order[i]),range)){
+                continue;
+            }
+            Page rawPage=range.leaf;
+            int leafId=rawPage.getPageId();
+            //Unchanged since the descent, so the fence still bounds the leaf's keys
+            if(!rawPage.tryLockForWrite(range.version)){
+                bufferManager.unpinPage(leafId,false);
+                continue;
+            }
+            int inserted=0;
+            try{
+                BTreeLeafPage leaf=new BTreeLeafPage(rawPage);
+                while(i<order.length && keyOf(order[i])<range.highFence
+                        && leaf.getKeyCount()<leaf.getMaxCapacity()){
+                    leaf.insert(keyOf(order[i]),rids[indexOf(order[i])]);
+                    i++;
+                    inserted++;
+                }
+                if(inserted>0){
+                    bufferManager.setPageDirty(leafId,true);
+                }
+            }finally{
+                rawPage.unlockForWrite();
+                bufferManager.unpinPage(leafId,false);
+            }
+            keyCount.addAndGet(inserted);
+            //The leaf is full: this key goes the normal way, splitting it
+            if(inserted==0){
+                insertOne(keyOf(order[i]),rids[indexOf(order[i])]);
+                i++;
+            }
         }
     }
 
-    private PushUpEntry handleLeafInsert(Page rawPage, int key, RecordId rid){
-        BTreeLeafPage leaf=new BTreeLeafPage(rawPage);
-
-        //Case 1: Leaf has space. Just insert
-        if(leaf.getKeyCount()<leaf.getMaxCapacity()){
-            leaf.insert(key, rid);
-            bufferManager.setPageDirty(leaf.page.getPageId(), true);
-            return null;
+    //Sorts by key, keeping each key's position in the batch: (key << 32 | index)
+    private static long[] sortedOrder(int[] keys){
+        long[] order=new long[keys.length];
+        for(int i=0;i<keys.length;i++){
+            order[i]=((long)keys[i]<<32)|i;
         }
+        Arrays.sort(order);
+        return order;
+    }
 
-        //Case 2: Leaf is full. SPLIT
-        //A. Allocate new page
-        int newPageId=bufferManager.allocateNewPage();
-        Page newRawPage=bufferManager.getPage(newPageId);
-        BTreeLeafPage newLeaf =new BTreeLeafPage(newRawPage);
+    private static int keyOf(long entry){
+        return (int)(entry>>32);
+    }
 
-        //B. Insert the new key into the correct page (Old or New) temp?
-        //Simplified: We split first, then insert the new key into the correct half.
-        //Note: For Simplicity in this tutorial, we assume the new key fits after split
+    private static int indexOf(long entry){
+        return (int)entry;
+    }
 
-        int splitKey=leaf.split(newLeaf);
+    //Leaf found by the last descent: pinned, with the version its contents must be
+    //validated against, and its upper fence (all its keys are below it)
+    private static final class LeafRange{
+        Page leaf;
+        long version;
+        long highFence;
+    }
 
-        //Decide where to put the new value
-        if(key>=splitKey)
-            newLeaf.insert(key,rid);
-        else
-            leaf.insert(key, rid);
-        bufferManager.setPageDirty(leaf.page.getPageId(), true);
-        bufferManager.setPageDirty(newLeaf.page.getPageId(), true);
+    /**
+     * Descends to the leaf whose key range holds 'key' with optimistic lock coupling:
+     * each node is pinned and its version read before its parent is validated, so the
+     * step down is known to be right. Returns false, with nothing pinned, if a writer
+     * got in on the way; the caller starts over.
+     */
+    private boolean descend(int key, LeafRange range){
+        long highFence=Long.MAX_VALUE;
+        Page parent=bufferManager.pinPage(META_PAGE);
+        long parentVersion=parent.readVersion();
+        int childId=rootPageId;
+        while(true){
+            Page node=bufferManager.pinPage(childId);
+            long version=node.readVersion();
+            boolean valid=parent.validate(parentVersion);
+            bufferManager.unpinPage(parent.getPageId(),false);
+            if(!valid){
+                bufferManager.unpinPage(childId,false);
+                return false;
+            }
+            if(node.getInt(0)==BTreePage.TYPE_LEAF){
+                range.leaf=node;
+                range.version=version;
+                range.highFence=highFence;
+                return true;
+            }
+            BTreeInternalPage internal=new BTreeInternalPage(node);
+            int next=internal.upperBound(key);
+            long fence=next<=internal.getKeyCount() ? internal.getKeyAt(next) : highFence;
+            childId=internal.getValueAt(next-1);
+            //The child id must not come from a torn read before we pin it
+            if(!node.validate(version)){
+                bufferManager.unpinPage(node.getPageId(),false);
+                return false;
+            }
+            highFence=fence;
+            parent=node;
+            parentVersion=version;
+        }
+    }
 
-        //C. Return the notification to the parent
-        return new  PushUpEntry(splitKey, newPageId);
+    /**
+     * Starts a bulk build of this (empty) index. Leaves are packed to 'fillFactor'
+     * (0..1] of their capacity; see BTreeBulkLoader.
+     */
+    public BTreeBulkLoader bulkLoader(double fillFactor){
+        if(keyCount.get()!=0){
+            throw new IllegalStateException("Bulk loading needs an empty index");
+        }
+        return new BTreeBulkLoader(this, bufferManager, rootPageId, fillFactor);
     }
 
-    private PushUpEntry handleInternalInsert(Page rawPage, int key, RecordId rid){
-        BTreeInternalPage internal = new BTreeInternalPage(rawPage);
-        int childPageId=internal.lookup(key);
+    //Called by the bulk loader once the new tree is complete
+    void setTree(int rootPageId, int height, long keyCount){
+        this.rootPageId=rootPageId;
+        this.height=height;
+        this.keyCount.set(keyCount);
+        saveMeta();
+    }
 
-        //Recursively go down
-        PushUpEntry result = insertRecursive(childPageId, key, rid);
+    public void insert (int key, RecordId rid){
+        insertOne(key, rid);
+    }
+
+    private void insertOne(int key, RecordId rid){
+        while(!tryInsert(key, rid)){
+            Thread.onSpinWait();
+        }
+        keyCount.incrementAndGet();
+    }
+
+    //One optimistic pass down the tree. Returns false if it has to start over:
+    //a writer got in, or a full node was split on the way
+    private boolean tryInsert(int key, RecordId rid){
+        Page parent=bufferManager.pinPage(META_PAGE);
+        long parentVersion=parent.readVersion();
+        int nodeId=rootPageId;
+        while(true){
+            Page node=bufferManager.pinPage(nodeId);
+            long version=node.readVersion();
+            try{
+                if(!parent.validate(parentVersion)){
+                    return false;
+                }
+                BTreePage wrapped=node.getInt(0)==BTreePage.TYPE_LEAF
+                        ? new BTreeLeafPage(node) : new BTreeInternalPage(node);
+                if(wrapped.getKeyCount()>=wrapped.getMaxCapacity()){
+                    //Split now, while the parent is known to have room for the separator
+                    splitNode(parent, parentVersion, wrapped, version, key);
+                    return false;
+                }
+                if(wrapped.isLeaf()){
+                    if(!node.tryLockForWrite(version)){
+                        return false;
+                    }
+                    try{
+                        ((BTreeLeafPage)wrapped).insert(key, rid);
+                        bufferManager.setPageDirty(nodeId, true);
+                    }finally{
+                        node.unlockForWrite();
+                    }
+                    return true;
+                }
+                int childId=((BTreeInternalPage)wrapped).lookup(key);
+                if(!node.validate(version)){
+                    return false;
+                }
+                //Step down: the node becomes the parent, and keeps its pin for that
+                bufferManager.unpinPage(parent.getPageId(), false);
+                parent=node;
+                parentVersion=version;
+                nodeId=childId;
+                node=null;
+            }finally{
+                if(node!=null){
+                    bufferManager.unpinPage(nodeId, false);
+                    bufferManager.unpinPage(parent.getPageId(), false);
+                }
+            }
+        }
+    }
+
+    //Splits a full node and files the separator in its parent, if neither changed
+    //since they were read. Locks only these two pages (and the new and sibling pages)
+    private void splitNode(Page parent, long parentVersion, BTreePage node, long version, int key){
+        if(!parent.tryLockForWrite(parentVersion)){
+            return;
+        }
+        try{
+            if(!node.page.tryLockForWrite(version)){
+                return;
+            }
+            try{
+                PushUpEntry result=node.isLeaf()
+                        ? splitLeaf((BTreeLeafPage)node, key)
+                        : splitInternal((BTreeInternalPage)node);
+                bufferManager.setPageDirty(node.page.getPageId(), true);
+                if(parent.getPageId()==META_PAGE){
+                    createNewRoot(result);
+                }else{
+                    new BTreeInternalPage(parent).insert(result.key, result.childPageId);
+                    bufferManager.setPageDirty(parent.getPageId(), true);
+                }
+            }finally{
+                node.page.unlockForWrite();
+            }
+        }finally{
+            parent.unlockForWrite();
+        }
+    }
 
-        //If  child didn't split, we are done
-        if(result==null) return null;
+    //Moves the upper half of a full leaf to a new leaf; the caller holds the leaf locked
+    private PushUpEntry splitLeaf(BTreeLeafPage leaf, int key){
+        int newPageId=bufferManager.allocateNewPage();
+        Page newRawPage=bufferManager.pinPage(newPageId);
+        newRawPage.lockForWrite();
+        try{
+            BTreeLeafPage newLeaf=new BTreeLeafPage(newRawPage);
+            //Appending past the end of the last leaf (ascending ingest) moves nothing,
+            //so the old leaf stays full instead of half empty
+            int splitKey;
+            if(leaf.getNextLeaf()==BTreeLeafPage.NO_LEAF && key>leaf.getKeyAt(leaf.getKeyCount()-1))
+                splitKey=key;
+            else
+                splitKey=leaf.split(newLeaf);
+            linkAfter(leaf, newLeaf);
+            bufferManager.unpinPage(newPageId, true);
+            return new PushUpEntry(splitKey, newPageId);
+        }finally{
+            newRawPage.unlockForWrite();
+        }
+    }
 
-        //If child DID SPLIT we must insert the pushedUp key into this internal node
-        if(internal.getKeyCount()<internal.getMaxCapacity()){
-            internal.insert(result.key, result.childPageId);
-            bufferManager.setPageDirty(internal.page.getPageId(), true);
-            return null;
+    //Puts 'newLeaf' between 'leaf' and its right sibling in the leaf chain
+    private void linkAfter(BTreeLeafPage leaf, BTreeLeafPage newLeaf){
+        int nextId=leaf.getNextLeaf();
+        int newId=newLeaf.page.getPageId();
+        newLeaf.setPrevLeaf(leaf.page.getPageId());
+        newLeaf.setNextLeaf(nextId);
+        if(nextId!=BTreeLeafPage.NO_LEAF){
+            //Leaf locks are only ever taken left to right, so this cannot deadlock
+            Page next=bufferManager.pinPage(nextId);
+            next.lockForWrite();
+            try{
+                new BTreeLeafPage(next).setPrevLeaf(newId);
+                bufferManager.unpinPage(nextId,true);
+            }finally{
+                next.unlockForWrite();
+            }
         }
+        leaf.setNextLeaf(newId);
+    }
 
-        else{
-            // THis node is also full. So SPLIT it also
-            //For now, lets throw exception to keep this step digestable.
-            //(Inplementing Internal Split is 80% similar to Leaf Split)
-            throw new RuntimeException("Internal node full-> Depth >2 not implemented yet");
+    //Moves the upper half of a full internal node to a new one; the middle key moves up a level
+    private PushUpEntry splitInternal(BTreeInternalPage internal){
+        int newPageId=bufferManager.allocateNewPage();
+        Page newRawPage=bufferManager.pinPage(newPageId);
+        newRawPage.lockForWrite();
+        try{
+            int pushUpKey=internal.split(new BTreeInternalPage(newRawPage));
+            bufferManager.unpinPage(newPageId, true);
+            return new PushUpEntry(pushUpKey, newPageId);
+        }finally{
+            newRawPage.unlockForWrite();
         }
     }
 
+    //The caller holds the meta page locked, so readers of the old root restart
     private void createNewRoot(PushUpEntry result){
         //1. Allocate a new page for the new root
         int newRootId =bufferManager.allocateNewPage();
-        Page newRootRaw= bufferManager.getPage(newRootId);
-        BTreeInternalPage newRoot=new BTreeInternalPage(newRootRaw);
-
-        //2. Point the new root to the Old Root (Left) and new child (Right)
-        newRoot.setPointer(0, rootPageId); //Old Root becomes left child
-        newRoot.insert(result.key, result.childPageId); //PushUp key points to right child
+        Page newRootRaw= bufferManager.pinPage(newRootId);
+        newRootRaw.lockForWrite();
+        try{
+            BTreeInternalPage newRoot=new BTreeInternalPage(newRootRaw);
+
+            //2. Point the new root to the Old Root (Left) and new child (Right)
+            newRoot.setPointer(0, rootPageId); //Old Root becomes left child
+            newRoot.insert(result.key, result.childPageId); //PushUp key points to right child
+            bufferManager.unpinPage(newRootId, true);
+        }finally{
+            newRootRaw.unlockForWrite();
+        }
 
-        //3. Update the global root pointer
+        //3. Update the root pointer and save it in the meta page
         this.rootPageId=newRootId;
-        bufferManager.setPageDirty(newRootId, true);
-
-        //NOTE: In a Real DB, you must update the "Header Page" on disk to save the new Root ID
-        System.out.println("The Tree Grew in Height");
-
+        this.height++;
+        saveMeta();
     }
-
-    
-
-
-
-   
 }
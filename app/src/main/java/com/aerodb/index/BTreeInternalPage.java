@@ -3,26 +3,35 @@ package com.aerodb.index;
 
 import com.aerodb.storage.Page;
 
+/**
+ * Internal node: child pointer 0, then sorted (key, child) entries 1..keyCount.
+ * Child i (i >= 1) holds the keys >= key i; child 0 holds the keys below key 1.
+ * Lookups are binary searches, and inserts shift entries in one bulk copy.
+ */
 public class BTreeInternalPage extends BTreePage{
 
  private static final int ENTRY_SIZE=8;
+ //Calculating max capacity based on page size (one entry holds only child 0)
+ static final int MAX_KEYS=(Page.USABLE_SIZE-HEADER_SIZE)/ENTRY_SIZE-1;
  
  public BTreeInternalPage(Page page){
-    //Calculating max capacity based on page size
-    super(page,TYPE_INTERNAL,(4096-HEADER_SIZE)/ENTRY_SIZE);
+    super(page,TYPE_INTERNAL,MAX_KEYS);
  }
- //Function for lookup
+ //Function for lookup: the child whose key range holds 'key'
     public int lookup(int key){
-        int count=getKeyCount();
-        for(int i=count-1;i>0;i--){
-            if(key>=getKeyAt(i)){
-                return getValueAt(i);
-            }
-        }
-
-        return getValueAt(0);//return first child pointer
-    
-}
+        return getValueAt(upperBound(key)-1);
+    }
+
+ //Index of the first entry (1..count) with a key > 'key', count+1 if none (binary search)
+ int upperBound(int key){
+    int lo=1, hi=getKeyCount()+1;
+    while(lo<hi){
+        int mid=(lo+hi)>>>1;
+        if(getKeyAt(mid)<=key) lo=mid+1;
+        else hi=mid;
+    }
+    return lo;
+ }
 
 //Function for Insertion 
 public void insert(int key,int childPageId){
@@ -32,51 +41,67 @@ public void insert(int key,int childPageId){
     }
 
     //1.Find the position to insert
-    int i=count-1;
-    while(i>=0 && getKeyAt(i)>key){
-        //shift right
-        copyEntry(i,i+1);
-        i--;
-    }
+    int targetIndex=upperBound(key);
+    //2.Shift the entries after it right by one, in one move
+    int from=offsetOf(targetIndex);
+    page.copyWithin(from,from+ENTRY_SIZE,(count+1-targetIndex)*ENTRY_SIZE);
 
-    //2.Insert the new Entry
-    int targetIndex=i+1;
+    //3.Insert the new Entry
     setKeyAt(targetIndex,key);
     setValueAt(targetIndex,childPageId);
-    //3.update the count value
+    //4.update the count value
 
     setKeyCount(count+1);
 }
 
 
+//Moves the upper half of a full node to 'recipient' and returns the middle key,
+//which leaves both nodes and goes up to the parent. Its child becomes the recipient's child 0
+public int split(BTreeInternalPage recipient){
+    int count=getKeyCount();
+    int mid=count/2+1;
+    int pushUpKey=getKeyAt(mid);
+    int moved=count-mid;
+
+    recipient.setValueAt(0,getValueAt(mid));
+    recipient.page.copyFrom(page,offsetOf(mid+1),offsetOf(1),moved*ENTRY_SIZE);
+    recipient.setKeyCount(moved);
+    this.setKeyCount(mid-1);
+
+    return pushUpKey;
+}
+
+//Adds an entry after all others; the caller keeps keys in order (bulk loading)
+void append(int key,int childPageId){
+    int count=getKeyCount()+1;
+    setKeyAt(count,key);
+    setValueAt(count,childPageId);
+    setKeyCount(count);
+}
+
 public void setPointer(int index,int childPageId){
     setValueAt(index,childPageId);
 }
 
 
 //helper function for the above operations
- private int getKeyAt(int index){
-    int offset=HEADER_SIZE+index*ENTRY_SIZE;
-    return page.getInt(offset);
+ private static int offsetOf(int index){
+    return HEADER_SIZE+index*ENTRY_SIZE;
  }
 
- private void setKeyAt(int index,int key){
-    int offset=HEADER_SIZE+index*ENTRY_SIZE;
-    page.setInt(offset,key);
+ int getKeyAt(int index){
+    return page.getInt(offsetOf(index));
  }
 
- private int getValueAt(int index){
-    int offset=HEADER_SIZE+(index*ENTRY_SIZE)+4; //skip the key part
-    return page.getInt(offset);
+ private void setKeyAt(int index,int key){
+    page.setInt(offsetOf(index),key);
  }
 
- public void setValueAt(int index,int ChildPageId){
-    int offset=HEADER_SIZE+(index*ENTRY_SIZE)+4;
-    page.setInt(offset,ChildPageId);
+ int getValueAt(int index){
+    return page.getInt(offsetOf(index)+4); //skip the key part
  }
 
- private void copyEntry(int fromIndex,int toIndex){
-    setKeyAt(toIndex,getKeyAt(fromIndex));
-    setValueAt(toIndex,getValueAt(fromIndex));
+ public void setValueAt(int index,int ChildPageId){
+    page.setInt(offsetOf(index)+4,ChildPageId);
  }
-}
\ No newline at end of file
+}
@@ -1,15 +1,48 @@
 package com.aerodb.index;
 import com.aerodb.storage.Page;
 import com.aerodb.storage.RecordId;
+
+/**
+ * Leaf node: sorted (key, RecordId) entries.
+ * Lookups are binary searches, and inserts move the tail of the entry array
+ * in one bulk copy instead of entry by entry.
+ * Leaves are doubly linked in key order, so range scans walk from leaf to leaf.
+ *
+ * Layout:
+ * [Header: Type(4B), Count(4B), Max(4B), PrevLeaf(4B), NextLeaf(4B)]
+ * [Entry i: Key(4B), PageId(4B), SlotId(4B)]...
+ */
 public class BTreeLeafPage extends BTreePage {
     
     //KEY(4 BYTE)+PAGEID(4 BYTES)+SLOTID(4 BYTES)
     private static final int ENTRY_SIZE=12;
-    private static final int PAGE_SIZE=4096;
+    //Sibling links follow the common header. Page 0 is the meta page, so 0 means "no leaf"
+    private static final int OFFSET_PREV=HEADER_SIZE;
+    private static final int OFFSET_NEXT=HEADER_SIZE+4;
+    private static final int ENTRIES_START=HEADER_SIZE+8;
+    public static final int NO_LEAF=0;
+    //Calculating max capacity based on page size
+    static final int MAX_ENTRIES=(Page.USABLE_SIZE-ENTRIES_START)/ENTRY_SIZE;
+
     public BTreeLeafPage(Page page){
-        //Calculating max capacity based on page size 
-        super(page,TYPE_LEAF,(PAGE_SIZE-HEADER_SIZE)/ENTRY_SIZE);
+        super(page,TYPE_LEAF,MAX_ENTRIES);
+
+    }
 
+    public int getPrevLeaf(){
+        return page.getInt(OFFSET_PREV);
+    }
+
+    public void setPrevLeaf(int pageId){
+        page.setInt(OFFSET_PREV,pageId);
+    }
+
+    public int getNextLeaf(){
+        return page.getInt(OFFSET_NEXT);
+    }
+
+    public void setNextLeaf(int pageId){
+        page.setInt(OFFSET_NEXT,pageId);
     }
 
 
@@ -20,72 +53,100 @@ public class BTreeLeafPage extends BTreePage {
             throw new IllegalStateException("Leaf Page is full, cannot insert new key");
         }
 
-        //1.Find the position to insert
-        int i=count-1;
-        while(i>=0 && getKeyAt(i)>key){
-            //shift right
-            copyEntry(i,i+1);
-            i--;
-        }
-        //2.Insert the new Entry
-        int targetIndex=i+1;
+        //1.Find the position to insert (after any equal keys)
+        int targetIndex=upperBound(key);
+        //2.Shift the entries after it right by one, in one move
+        int from=offsetOf(targetIndex);
+        page.copyWithin(from,from+ENTRY_SIZE,(count-targetIndex)*ENTRY_SIZE);
+        //3.Insert the new Entry
         setKeyAt(targetIndex,key);
         setValueAt(targetIndex,rid);
-        //3.update the count value
+        //4.update the count value
 
         setKeyCount(count+1);
     }
 
+    //Adds an entry after all others; the caller keeps keys in order (bulk loading)
+    void append(int key,RecordId rid){
+        int count=getKeyCount();
+        setKeyAt(count,key);
+        setValueAt(count,rid);
+        setKeyCount(count+1);
+    }
+
     //hepler function
     public RecordId lookup(int key){
-        for(int i=0;i<getKeyCount();i++){
-            if( getKeyAt(i)==key){
-                return getValueAt(i);
-            }
+        int i=lowerBound(key);
+        if(i<getKeyCount() && getKeyAt(i)==key){
+            return getValueAt(i);
         }
         return null;//key not found
     }
 
-    private int getKeyAt(int index){
-        int offset=HEADER_SIZE+index*ENTRY_SIZE;
-        return page.getInt(offset);
+    //Index of the first key >= 'key' (binary search)
+    int lowerBound(int key){
+        int lo=0, hi=getKeyCount();
+        while(lo<hi){
+            int mid=(lo+hi)>>>1;
+            if(getKeyAt(mid)<key) lo=mid+1;
+            else hi=mid;
+        }
+        return lo;
+    }
+
+    //Index of the first key > 'key' (binary search)
+    int upperBound(int key){
+        int lo=0, hi=getKeyCount();
+        while(lo<hi){
+            int mid=(lo+hi)>>>1;
+            if(getKeyAt(mid)<=key) lo=mid+1;
+            else hi=mid;
+        }
+        return lo;
+    }
+
+    private static int offsetOf(int index){
+        return ENTRIES_START+index*ENTRY_SIZE;
+    }
+
+    int getKeyAt(int index){
+        return page.getInt(offsetOf(index));
     }
 
     private void setKeyAt(int index,int key){
-        int offset=HEADER_SIZE+index*ENTRY_SIZE;
-        page.setInt(offset,key);
+        page.setInt(offsetOf(index),key);
     }
 
-    private RecordId getValueAt(int index){
-        int offset=HEADER_SIZE+index*ENTRY_SIZE+4;
+    RecordId getValueAt(int index){
+        int offset=offsetOf(index)+4;
         int pageId=page.getInt(offset);
         int slotNumber=page.getInt(offset+4);
         return new RecordId(pageId,slotNumber);
     }
 
+    //The two halves of the RecordId at 'index', read without creating one
+    int getPageIdAt(int index){
+        return page.getInt(offsetOf(index)+4);
+    }
+
+    int getSlotAt(int index){
+        return page.getInt(offsetOf(index)+8);
+    }
+
     private void setValueAt(int index,RecordId rid){
-        int offset=HEADER_SIZE+index*ENTRY_SIZE+4;
+        int offset=offsetOf(index)+4;
         page.setInt(offset,rid.pageId);
         page.setInt(offset+4,rid.slotNumber);
     }
 
-    private void copyEntry(int fromIndex,int toIndex){
-        setKeyAt(toIndex,getKeyAt(fromIndex));
-        setValueAt(toIndex,getValueAt(fromIndex));
-    }
-
-    //function for slitting 
+    //function for slitting. The caller links the recipient in after this leaf
 
     public int split(BTreeLeafPage recipient){
         int count=getKeyCount();
         int splitIndex=count/2;
         int newCount=count - splitIndex;
-        //MOve the enteries
-        for(int i=0;i<newCount;i++){
-            int srcIndex=splitIndex + i;
-            recipient.setKeyAt(i, getKeyAt(srcIndex));
-            recipient.setValueAt(i, getValueAt(srcIndex));
-        }
+        //MOve the upper half in one copy
+        recipient.page.copyFrom(page,offsetOf(splitIndex),offsetOf(0),newCount*ENTRY_SIZE);
         //Update counts
         recipient.setKeyCount(newCount);
         this.setKeyCount(splitIndex);
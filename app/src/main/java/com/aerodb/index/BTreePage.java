@@ -13,11 +13,15 @@ public class BTreePage {
     public static final int TYPE_INTERNAL=0;
     public static final int TYPE_LEAF=1;
 
+    //Wraps a page. A blank page (never formatted) gets a fresh header;
+    //an existing node keeps its type and entries
     public BTreePage(Page page,int type,int maxCapacity){
         this.page=page;
-        setPageType(type);
-        setMaxCapacity(maxCapacity);
-        setKeyCount(0);
+        if(page.getInt(OFFSET_MAX)==0){
+            setPageType(type);
+            setMaxCapacity(maxCapacity);
+            setKeyCount(0);
+        }
     }
 
     public int getPageType(){
@@ -34,7 +38,7 @@ public class BTreePage {
         page.setInt(OFFSET_COUNT,count);
     }
     public int getMaxCapacity(){
-        return page.getInt(OFFSET_COUNT);
+        return page.getInt(OFFSET_MAX);
     }
     public void setMaxCapacity(int max){
         page.setInt(OFFSET_MAX,max);
@@ -45,4 +49,3 @@ public class BTreePage {
     }
 
 }
-
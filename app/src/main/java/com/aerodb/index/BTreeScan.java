@@ -0,0 +1,165 @@
+package com.aerodb.index;
+
+import com.aerodb.buffer.BufferManager;
+import com.aerodb.storage.Page;
+import com.aerodb.storage.RecordId;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Cursor over a key range of a BTreeFile, ascending or descending.
+ * It follows the leaf sibling links and never goes back up the tree. Each leaf is
+ * copied out under an optimistic read (see Page.readVersion()), so no pin or latch is
+ * held between calls and writers are never held up by a slow consumer.
+ * next() returns the RecordId, getKey() the key of the entry last returned.
+ */
+public class BTreeScan implements Iterator<RecordId>, AutoCloseable {
+    private final BufferManager bufferManager;
+    private final int lo;
+    private final int hi;
+    private final boolean descending;
+
+    // Copy of the current leaf, its links, and the position of the next entry in it
+    private final int[] keys = new int[BTreeLeafPage.MAX_ENTRIES];
+    private final int[] pageIds = new int[BTreeLeafPage.MAX_ENTRIES];
+    private final int[] slots = new int[BTreeLeafPage.MAX_ENTRIES];
+    private int count;
+    private int leafId = BTreeLeafPage.NO_LEAF;
+    private int prevId;
+    private int nextId;
+    private int position;
+    private int key;
+
+    // Empty until start() loads the first leaf
+    BTreeScan(BufferManager bufferManager, int lo, int hi, boolean descending) {
+        this.bufferManager = bufferManager;
+        this.lo = lo;
+        this.hi = hi;
+        this.descending = descending;
+    }
+
+    // Copies the first leaf (pinned by the caller) and finds the start position in it.
+    // False if a writer changed the leaf since 'version'
+    boolean start(Page leafPage, long version) {
+        if (!load(leafPage, version)) {
+            return false;
+        }
+        position = descending ? upperBound(hi) - 1 : lowerBound(lo);
+        return true;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (leafId != BTreeLeafPage.NO_LEAF) {
+            if (position >= 0 && position < count) {
+                int k = keys[position];
+                if (descending ? k >= lo : k <= hi) {
+                    if (descending ? k <= hi : k >= lo) {
+                        return true;
+                    }
+                    // Below lo (ascending) or above hi (descending): only at the start
+                    position += descending ? -1 : 1;
+                    continue;
+                }
+                close();
+                return false;
+            }
+            moveToSibling();
+        }
+        return false;
+    }
+
+    @Override
+    public RecordId next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        key = keys[position];
+        RecordId rid = new RecordId(pageIds[position], slots[position]);
+        position += descending ? -1 : 1;
+        return rid;
+    }
+
+    // Key of the entry last returned by next()
+    public int getKey() {
+        return key;
+    }
+
+    // Steps to the next leaf in scan order
+    private void moveToSibling() {
+        int fromId = leafId;
+        int siblingId = descending ? prevId : nextId;
+        while (siblingId != BTreeLeafPage.NO_LEAF) {
+            Page rawPage = bufferManager.pinPage(siblingId);
+            boolean loaded;
+            try {
+                loaded = load(rawPage, rawPage.readVersion());
+            } finally {
+                bufferManager.unpinPage(siblingId, false);
+            }
+            if (!loaded) {
+                continue;
+            }
+            // Going left, the leaf we read a link to may have split since: walk right
+            // until the leaf just before the one we came from
+            if (descending && nextId != fromId) {
+                siblingId = nextId;
+                continue;
+            }
+            position = descending ? count - 1 : 0;
+            return;
+        }
+        close();
+    }
+
+    // Copies a leaf's entries and links; false if the copy may be torn
+    private boolean load(Page leafPage, long version) {
+        BTreeLeafPage leaf = new BTreeLeafPage(leafPage);
+        int n = Math.min(leaf.getKeyCount(), keys.length);
+        for (int i = 0; i < n; i++) {
+            keys[i] = leaf.getKeyAt(i);
+            pageIds[i] = leaf.getPageIdAt(i);
+            slots[i] = leaf.getSlotAt(i);
+        }
+        int prev = leaf.getPrevLeaf();
+        int next = leaf.getNextLeaf();
+        if (!leafPage.validate(version)) {
+            return false;
+        }
+        count = n;
+        leafId = leafPage.getPageId();
+        prevId = prev;
+        nextId = next;
+        return true;
+    }
+
+    // Index of the first copied key >= k
+    private int lowerBound(int k) {
+        int l = 0, h = count;
+        while (l < h) {
+            int mid = (l + h) >>> 1;
+            if (keys[mid] < k) l = mid + 1;
+            else h = mid;
+        }
+        return l;
+    }
+
+    // Index of the first copied key > k
+    private int upperBound(int k) {
+        int l = 0, h = count;
+        while (l < h) {
+            int mid = (l + h) >>> 1;
+            if (keys[mid] <= k) l = mid + 1;
+            else h = mid;
+        }
+        return l;
+    }
+
+    // Nothing is pinned between calls; this only ends the scan
+    @Override
+    public void close() {
+        leafId = BTreeLeafPage.NO_LEAF;
+        count = 0;
+    }
+}
@@ -0,0 +1,77 @@
+package com.aerodb.index;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Builds byte-comparable keys for VarBTreeFile: comparing two encoded keys byte by
+ * byte (unsigned) gives the same order as comparing the values they encode.
+ * Several values appended one after another form a composite key, e.g. (tenant, id):
+ *
+ * byte[] key = new KeyBuilder().appendInt(tenant).appendInt(id).build();
+ *
+ * Encodings:
+ * - INT / LONG: big-endian with the sign bit flipped, so negatives sort first
+ * - STRING: UTF-8 with 0x00 escaped as 0x00 0xFF, ended by 0x00 0x00, so a string
+ *   sorts before any longer string it is a prefix of, also inside a composite
+ */
+public class KeyBuilder {
+    private byte[] bytes = new byte[16];
+    private int length;
+
+    public KeyBuilder appendInt(int value) {
+        ensure(4);
+        int v = value ^ Integer.MIN_VALUE;
+        bytes[length++] = (byte) (v >>> 24);
+        bytes[length++] = (byte) (v >>> 16);
+        bytes[length++] = (byte) (v >>> 8);
+        bytes[length++] = (byte) v;
+        return this;
+    }
+
+    public KeyBuilder appendLong(long value) {
+        ensure(8);
+        long v = value ^ Long.MIN_VALUE;
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            bytes[length++] = (byte) (v >>> shift);
+        }
+        return this;
+    }
+
+    public KeyBuilder appendString(String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        ensure(utf8.length * 2 + 2);
+        for (byte b : utf8) {
+            bytes[length++] = b;
+            if (b == 0) {
+                bytes[length++] = (byte) 0xFF;
+            }
+        }
+        bytes[length++] = 0;
+        bytes[length++] = 0;
+        return this;
+    }
+
+    public byte[] build() {
+        return Arrays.copyOf(bytes, length);
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+        }
+    }
+
+    public static byte[] ofInt(int value) {
+        return new KeyBuilder().appendInt(value).build();
+    }
+
+    public static byte[] ofString(String value) {
+        return new KeyBuilder().appendString(value).build();
+    }
+
+    // Unsigned lexicographic order, the order of the encoded values
+    public static int compare(byte[] a, byte[] b) {
+        return Arrays.compareUnsigned(a, b);
+    }
+}
@@ -0,0 +1,256 @@
+package com.aerodb.index;
+
+import com.aerodb.buffer.BufferManager;
+import com.aerodb.storage.Page;
+import com.aerodb.storage.RecordId;
+
+import java.util.concurrent.locks.Lock;
+
+/**
+ * B+tree index from variable-length byte-comparable keys to RecordIds.
+ * Build keys with KeyBuilder: strings, longs, ints or composites such as (tenant, id).
+ * Nodes are VarBTreePages with prefix compression, and separators pushed up from
+ * leaf splits are truncated to the shortest key that still separates the two leaves,
+ * so long string keys keep a high fan-out and a shallow tree.
+ * The key count is kept in memory and written to the meta page only with a new root
+ * and at every checkpoint of the pool; after a crash it is the count of the last of those.
+ *
+ * Not thread-safe: find, insert and scans must come from one thread at a time. Only a
+ * checkpoint may run alongside them; it writes the meta page under the page's latch.
+ *
+ * Layout:
+ * [Page 0 (Meta): Magic(4B), RootPageId(4B), Height(4B), KeyCount(8B)]
+ * [Page 1..n: VarBTreePage nodes]
+ */
+public class VarBTreeFile {
+    private static final int MAGIC = 0x56425431; // "VBT1"
+    private static final int META_PAGE = 0;
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_ROOT = 4;
+    private static final int OFF_HEIGHT = 8;
+    private static final int OFF_KEY_COUNT = 12;
+
+    private final BufferManager bufferManager;
+    // Volatile for the checkpoint hook, which may run on another thread
+    private volatile int rootPageId;
+    private volatile int height;
+    private volatile long keyCount;
+    // Key count last written to the meta page
+    private volatile long savedKeyCount;
+
+    // A split child: keys >= 'key' now live in 'childPageId'
+    private static final class PushUp {
+        final byte[] key;
+        final int childPageId;
+
+        PushUp(byte[] key, int childPageId) {
+            this.key = key;
+            this.childPageId = childPageId;
+        }
+    }
+
+    public VarBTreeFile(BufferManager bufferManager) {
+        this.bufferManager = bufferManager;
+        openMeta();
+        bufferManager.addCheckpointHook(() -> {
+            if (keyCount != savedKeyCount) {
+                saveMeta();
+            }
+        });
+    }
+
+    // Reads the meta page, or formats a new index with an empty root leaf
+    private void openMeta() {
+        if (bufferManager.getDiskManager().getNumPages() == 0) {
+            bufferManager.allocateNewPage();
+        }
+        Page meta = bufferManager.pinPage(META_PAGE);
+        try {
+            if (meta.getInt(OFF_MAGIC) == MAGIC) {
+                rootPageId = meta.getInt(OFF_ROOT);
+                height = meta.getInt(OFF_HEIGHT);
+                keyCount = meta.getBuffer().getLong(OFF_KEY_COUNT);
+                savedKeyCount = keyCount;
+                return;
+            }
+            if (meta.getInt(OFF_ROOT) != 0 || meta.getInt(OFF_HEIGHT) != 0) {
+                throw new IllegalStateException("Page " + META_PAGE + " is not a B+tree meta page");
+            }
+            rootPageId = bufferManager.allocateNewPage();
+            new VarBTreePage(bufferManager.pinPage(rootPageId), VarBTreePage.TYPE_LEAF);
+            bufferManager.unpinPage(rootPageId, true);
+            height = 1;
+            keyCount = 0;
+            meta.setInt(OFF_MAGIC, MAGIC);
+            writeMeta(meta);
+        } finally {
+            bufferManager.unpinPage(META_PAGE, false);
+        }
+    }
+
+    private void writeMeta(Page meta) {
+        long count = keyCount;
+        meta.setInt(OFF_ROOT, rootPageId);
+        meta.setInt(OFF_HEIGHT, height);
+        meta.setInt(OFF_KEY_COUNT, (int) (count >>> 32));
+        meta.setInt(OFF_KEY_COUNT + 4, (int) count);
+        bufferManager.setPageDirty(META_PAGE, true);
+        savedKeyCount = count;
+    }
+
+    private void saveMeta() {
+        Page meta = bufferManager.pinPage(META_PAGE);
+        Lock latch = meta.getLatch().writeLock();
+        latch.lock();
+        try {
+            writeMeta(meta);
+        } finally {
+            latch.unlock();
+            bufferManager.unpinPage(META_PAGE, false);
+        }
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getKeyCount() {
+        return keyCount;
+    }
+
+    public RecordId find(byte[] key) {
+        int pageId = rootPageId;
+        while (true) {
+            Page rawPage = bufferManager.pinPage(pageId);
+            int next;
+            try {
+                VarBTreePage node = new VarBTreePage(rawPage, VarBTreePage.TYPE_LEAF);
+                if (node.isLeaf()) {
+                    int pos = node.search(key, false);
+                    if (pos < node.getKeyCount() && node.keyEquals(pos, key)) {
+                        long value = node.getValue(pos);
+                        return new RecordId((int) (value >>> 32), (int) value);
+                    }
+                    return null;
+                }
+                next = childFor(node, key);
+            } finally {
+                bufferManager.unpinPage(pageId, false);
+            }
+            pageId = next;
+        }
+    }
+
+    private static int childFor(VarBTreePage node, byte[] key) {
+        int pos = node.search(key, true);
+        return pos == 0 ? node.getLink() : (int) node.getValue(pos - 1);
+    }
+
+    public void insert(byte[] key, RecordId rid) {
+        if (key.length > VarBTreePage.MAX_KEY_SIZE) {
+            throw new IllegalArgumentException("Key of " + key.length + " bytes is longer than " + VarBTreePage.MAX_KEY_SIZE);
+        }
+        long value = ((long) rid.pageId << 32) | (rid.slotNumber & 0xFFFFFFFFL);
+        PushUp result = insertRecursive(rootPageId, key, value);
+        if (result != null) {
+            // Root split: the tree grows a level
+            int newRootId = bufferManager.allocateNewPage();
+            VarBTreePage root = new VarBTreePage(bufferManager.pinPage(newRootId), VarBTreePage.TYPE_INTERNAL);
+            root.setLink(rootPageId);
+            root.insert(result.key, result.childPageId);
+            bufferManager.unpinPage(newRootId, true);
+            rootPageId = newRootId;
+            height++;
+            keyCount++;
+            saveMeta();
+            return;
+        }
+        keyCount++;
+    }
+
+    // Returns a PushUp if the node split, null otherwise. The node stays pinned while we recurse
+    private PushUp insertRecursive(int pageId, byte[] key, long value) {
+        Page rawPage = bufferManager.pinPage(pageId);
+        try {
+            VarBTreePage node = new VarBTreePage(rawPage, VarBTreePage.TYPE_LEAF);
+            if (!node.isLeaf()) {
+                PushUp result = insertRecursive(childFor(node, key), key, value);
+                if (result == null) {
+                    return null;
+                }
+                key = result.key;
+                value = result.childPageId;
+            }
+            if (node.insert(key, value)) {
+                bufferManager.setPageDirty(pageId, true);
+                return null;
+            }
+            return rebuildOrSplit(node, key, value);
+        } finally {
+            bufferManager.unpinPage(pageId, false);
+        }
+    }
+
+    // The entry did not fit in place: rebuild the node with the new prefix, or split it
+    private PushUp rebuildOrSplit(VarBTreePage node, byte[] key, long value) {
+        int count = node.getKeyCount();
+        int pos = node.search(key, true);
+        byte[][] keys = new byte[count + 1][];
+        long[] values = new long[count + 1];
+        for (int i = 0, j = 0; i <= count; i++) {
+            if (i == pos) {
+                keys[i] = key;
+                values[i] = value;
+            } else {
+                keys[i] = node.getKey(j);
+                values[i] = node.getValue(j);
+                j++;
+            }
+        }
+        int pageId = node.page.getPageId();
+        if (node.fits(keys, 0, count + 1)) {
+            node.rebuild(keys, values, 0, count + 1);
+            bufferManager.setPageDirty(pageId, true);
+            return null;
+        }
+
+        int mid = splitPoint(keys, node.isLeaf());
+        int newPageId = bufferManager.allocateNewPage();
+        VarBTreePage sibling = new VarBTreePage(bufferManager.pinPage(newPageId),
+                node.isLeaf() ? VarBTreePage.TYPE_LEAF : VarBTreePage.TYPE_INTERNAL);
+        byte[] separator;
+        if (node.isLeaf()) {
+            // Leaves: the right half moves, and only a truncated separator goes up
+            sibling.rebuild(keys, values, mid, count + 1);
+            sibling.setLink(node.getLink());
+            node.rebuild(keys, values, 0, mid);
+            node.setLink(newPageId);
+            separator = VarBTreePage.shortestSeparator(keys[mid - 1], keys[mid]);
+        } else {
+            // Internal nodes: the middle separator goes up, its child becomes the sibling's link
+            sibling.rebuild(keys, values, mid + 1, count + 1);
+            sibling.setLink((int) values[mid]);
+            node.rebuild(keys, values, 0, mid);
+            separator = keys[mid];
+        }
+        bufferManager.setPageDirty(pageId, true);
+        bufferManager.unpinPage(newPageId, true);
+        return new PushUp(separator, newPageId);
+    }
+
+    // Splits the entries by bytes, not by count, so both halves have room
+    private static int splitPoint(byte[][] keys, boolean leaf) {
+        int total = 0;
+        for (byte[] k : keys) {
+            total += k.length;
+        }
+        int half = 0;
+        for (int i = 0; i < keys.length - 1; i++) {
+            half += keys[i].length;
+            if (half * 2 >= total) {
+                return Math.max(1, leaf ? i + 1 : i);
+            }
+        }
+        return keys.length - 1;
+    }
+}
@@ -0,0 +1,260 @@
+package com.aerodb.index;
+
+import com.aerodb.storage.Page;
+
+import java.util.Arrays;
+
+/**
+ * Slotted B+tree node for variable-length byte-comparable keys (see KeyBuilder).
+ * Keys are stored without the prefix all keys of the node share; the prefix is kept
+ * once per node and recomputed whenever the node is rebuilt (on a split, or when a
+ * key that does not share it arrives). Slots stay sorted by key; records grow down
+ * from the end of the usable space.
+ *
+ * Leaf entries map a key to a RecordId and the link is the next leaf. Internal entries
+ * are (separator, child): child i holds the keys >= separator i, and the link is the
+ * child for keys below the first separator.
+ *
+ * Layout:
+ * [Header: Type(4B), Count(4B), HeapStart(4B), PrefixLen(4B), Link(4B)]
+ * [Slot i: Offset(2B), SuffixLen(2B)]...
+ * [Free space]
+ * [Record i: Suffix(SuffixLen), Value(8B RecordId in leaves, 4B child in internal nodes)]...
+ * [Prefix(PrefixLen)]
+ */
+public class VarBTreePage {
+    public static final int TYPE_INTERNAL = 0;
+    public static final int TYPE_LEAF = 1;
+    // Page 0 is the meta page, so 0 means "no page"
+    public static final int NO_PAGE = 0;
+    // Keeps at least three entries per node, so a split always leaves two fitting halves
+    public static final int MAX_KEY_SIZE = 1024;
+
+    private static final int OFFSET_TYPE = 0;
+    private static final int OFFSET_COUNT = 4;
+    private static final int OFFSET_HEAP = 8;
+    private static final int OFFSET_PREFIX = 12;
+    private static final int OFFSET_LINK = 16;
+    private static final int HEADER_SIZE = 20;
+    private static final int SLOT_SIZE = 4;
+
+    final Page page;
+
+    // Wraps a page, formatting it as an empty node of 'type' if it is blank
+    public VarBTreePage(Page page, int type) {
+        this.page = page;
+        if (page.getInt(OFFSET_HEAP) == 0) {
+            page.setInt(OFFSET_TYPE, type);
+            page.setInt(OFFSET_COUNT, 0);
+            page.setInt(OFFSET_HEAP, Page.USABLE_SIZE);
+            page.setInt(OFFSET_PREFIX, 0);
+            page.setInt(OFFSET_LINK, NO_PAGE);
+        }
+    }
+
+    public boolean isLeaf() {
+        return page.getInt(OFFSET_TYPE) == TYPE_LEAF;
+    }
+
+    public int getKeyCount() {
+        return page.getInt(OFFSET_COUNT);
+    }
+
+    public int getLink() {
+        return page.getInt(OFFSET_LINK);
+    }
+
+    public void setLink(int pageId) {
+        page.setInt(OFFSET_LINK, pageId);
+    }
+
+    public int getPrefixLength() {
+        return page.getInt(OFFSET_PREFIX);
+    }
+
+    public int getFreeSpace() {
+        return page.getInt(OFFSET_HEAP) - HEADER_SIZE - getKeyCount() * SLOT_SIZE;
+    }
+
+    private int valueSize() {
+        return isLeaf() ? 8 : 4;
+    }
+
+    // --- Search ---
+
+    /**
+     * Number of entries with a key below 'key' ('upper' false), or not above it ('upper' true).
+     * Compares against the prefix once, then binary searches the suffixes.
+     */
+    public int search(byte[] key, boolean upper) {
+        int count = getKeyCount();
+        int c = comparePrefix(key);
+        if (c != 0) {
+            return c < 0 ? 0 : count;
+        }
+        int from = getPrefixLength();
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareSuffix(key, from, mid);
+            if (cmp > 0 || (upper && cmp == 0)) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    public boolean keyEquals(int index, byte[] key) {
+        return comparePrefix(key) == 0 && compareSuffix(key, getPrefixLength(), index) == 0;
+    }
+
+    // Compares the start of 'key' with the prefix: 0 if the key starts with it
+    private int comparePrefix(byte[] key) {
+        int prefixLen = getPrefixLength();
+        int start = Page.USABLE_SIZE - prefixLen;
+        int n = Math.min(prefixLen, key.length);
+        for (int i = 0; i < n; i++) {
+            int c = Byte.compareUnsigned(key[i], page.getByte(start + i));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return key.length < prefixLen ? -1 : 0;
+    }
+
+    // Compares key[from..] with the suffix of entry 'index'
+    private int compareSuffix(byte[] key, int from, int index) {
+        int slot = slot(index);
+        int offset = slot >>> 16;
+        int length = slot & 0xFFFF;
+        int n = Math.min(length, key.length - from);
+        for (int i = 0; i < n; i++) {
+            int c = Byte.compareUnsigned(key[from + i], page.getByte(offset + i));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return (key.length - from) - length;
+    }
+
+    // --- Entries ---
+
+    private int slot(int index) {
+        return page.getInt(HEADER_SIZE + index * SLOT_SIZE);
+    }
+
+    // Full key of an entry (prefix + suffix)
+    public byte[] getKey(int index) {
+        int prefixLen = getPrefixLength();
+        int slot = slot(index);
+        int length = slot & 0xFFFF;
+        byte[] key = new byte[prefixLen + length];
+        page.getBytes(Page.USABLE_SIZE - prefixLen, key, 0, prefixLen);
+        page.getBytes(slot >>> 16, key, prefixLen, length);
+        return key;
+    }
+
+    // RecordId packed as (pageId << 32 | slot) in leaves, the child page id in internal nodes
+    public long getValue(int index) {
+        int slot = slot(index);
+        int offset = (slot >>> 16) + (slot & 0xFFFF);
+        if (isLeaf()) {
+            return ((long) page.getInt(offset) << 32) | (page.getInt(offset + 4) & 0xFFFFFFFFL);
+        }
+        return page.getInt(offset);
+    }
+
+    private void writeValue(int offset, long value) {
+        if (isLeaf()) {
+            page.setInt(offset, (int) (value >>> 32));
+            page.setInt(offset + 4, (int) value);
+        } else {
+            page.setInt(offset, (int) value);
+        }
+    }
+
+    /**
+     * Inserts an entry in place, after any equal keys. Returns false if the key does not
+     * share the node prefix or there is no room; the caller then rebuilds or splits.
+     */
+    public boolean insert(byte[] key, long value) {
+        if (comparePrefix(key) != 0) {
+            return false;
+        }
+        int prefixLen = getPrefixLength();
+        int suffixLen = key.length - prefixLen;
+        int recordSize = suffixLen + valueSize();
+        if (getFreeSpace() < SLOT_SIZE + recordSize) {
+            return false;
+        }
+        int count = getKeyCount();
+        int pos = search(key, true);
+
+        int heap = page.getInt(OFFSET_HEAP) - recordSize;
+        page.setBytes(heap, key, prefixLen, suffixLen);
+        writeValue(heap + suffixLen, value);
+        page.setInt(OFFSET_HEAP, heap);
+
+        int slotPos = HEADER_SIZE + pos * SLOT_SIZE;
+        page.copyWithin(slotPos, slotPos + SLOT_SIZE, (count - pos) * SLOT_SIZE);
+        page.setInt(slotPos, (heap << 16) | suffixLen);
+        page.setInt(OFFSET_COUNT, count + 1);
+        return true;
+    }
+
+    // --- Rebuilding ---
+
+    /**
+     * Rewrites the node with the sorted entries keys[from..to), compacting it and
+     * recomputing the prefix. The link is kept.
+     */
+    public void rebuild(byte[][] keys, long[] values, int from, int to) {
+        int prefixLen = to > from ? commonPrefix(keys[from], keys[to - 1]) : 0;
+        int heap = Page.USABLE_SIZE - prefixLen;
+        if (prefixLen > 0) {
+            page.setBytes(heap, keys[from], 0, prefixLen);
+        }
+        int valueSize = valueSize();
+        for (int i = from; i < to; i++) {
+            int suffixLen = keys[i].length - prefixLen;
+            heap -= suffixLen + valueSize;
+            page.setBytes(heap, keys[i], prefixLen, suffixLen);
+            writeValue(heap + suffixLen, values[i]);
+            page.setInt(HEADER_SIZE + (i - from) * SLOT_SIZE, (heap << 16) | suffixLen);
+        }
+        page.setInt(OFFSET_COUNT, to - from);
+        page.setInt(OFFSET_HEAP, heap);
+        page.setInt(OFFSET_PREFIX, prefixLen);
+    }
+
+    // True if the sorted entries keys[from..to) fit in one node of this type
+    public boolean fits(byte[][] keys, int from, int to) {
+        return bytesNeeded(keys, from, to, valueSize()) <= Page.USABLE_SIZE - HEADER_SIZE;
+    }
+
+    static int bytesNeeded(byte[][] keys, int from, int to, int valueSize) {
+        int prefixLen = to > from ? commonPrefix(keys[from], keys[to - 1]) : 0;
+        int total = prefixLen;
+        for (int i = from; i < to; i++) {
+            total += SLOT_SIZE + keys[i].length - prefixLen + valueSize;
+        }
+        return total;
+    }
+
+    // For sorted keys the prefix shared by the first and last is shared by all
+    static int commonPrefix(byte[] a, byte[] b) {
+        int mismatch = Arrays.mismatch(a, b);
+        return mismatch < 0 ? a.length : mismatch;
+    }
+
+    /**
+     * Suffix truncation: the shortest key s with left < s <= right, so internal
+     * nodes hold short separators instead of whole keys.
+     */
+    static byte[] shortestSeparator(byte[] left, byte[] right) {
+        int mismatch = Arrays.mismatch(left, right);
+        if (mismatch < 0) {
+            return right; // equal keys: only the key itself separates them
+        }
+        return Arrays.copyOf(right, Math.min(right.length, mismatch + 1));
+    }
+}
@@ -0,0 +1,370 @@
+package com.aerodb.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Manages a Page as a set of rows stored column by column (PAX).
+ * Inside the page the values of each column sit together in their own minipage, so a
+ * scan that needs one column reads one contiguous run of it and nothing else. STRING
+ * columns keep an (offset, length) entry in their minipage; the bytes grow backwards
+ * from the end of the usable space like the tuple data of a HeapPage.
+ * The header keeps the min and max of every numeric column (INT, LONG, DOUBLE, BOOLEAN,
+ * TIMESTAMP), so a scan with a range predicate can skip the page from the header alone.
+ *
+ * Minipages are sized for 'Capacity' rows. When the rows and the string data do not
+ * match that guess the minipages are moved to a new capacity, so all free bytes can
+ * be used by either.
+ *
+ * Layout:
+ * [Header: Magic(4B), Count(4B), Capacity(4B), HeapStart(4B)]
+ * [Column stats: {Min(8B), Max(8B)} per column]
+ * [Minipage 0: Capacity values of column 0][Minipage 1]...
+ * [Free Space]
+ * [String data] (grows backwards from the end of the usable space)
+ * [Page LSN (8B)]
+ */
+public class ColumnarHeapPage {
+    private static final int MAGIC = 0x50415831; // "PAX1"
+
+    // Header layout
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_COUNT = 4;
+    private static final int OFF_CAPACITY = 8;
+    private static final int OFF_HEAP_START = 12;
+    private static final int OFF_STATS = 16;
+    private static final int STATS_SIZE = 16;
+
+    // A STRING value in its minipage: [Offset (2), Length (2)]
+    private static final int STRING_ENTRY = 4;
+
+    private final Page page;
+    private final TupleDesc tupleDesc;
+    // Bytes per value in each minipage, the sum over the columns before each, the sum
+    // over all of them, and where the first minipage starts
+    private final int[] widths;
+    private final int[] widthsBefore;
+    private final int rowBytes;
+    private final int dataStart;
+
+    /**
+     * Wraps a page holding rows of 'tupleDesc', formatting it if it is blank.
+     */
+    public ColumnarHeapPage(Page page, TupleDesc tupleDesc) {
+        this(page, tupleDesc, true);
+    }
+
+    /**
+     * Wraps a page for reading only, as under a shared latch: nothing is written to it,
+     * and a blank page (not formatted yet) reads as an empty one. Do not insert through it.
+     */
+    public static ColumnarHeapPage readOnly(Page page, TupleDesc tupleDesc) {
+        return new ColumnarHeapPage(page, tupleDesc, false);
+    }
+
+    private ColumnarHeapPage(Page page, TupleDesc tupleDesc, boolean format) {
+        this.page = page;
+        this.tupleDesc = tupleDesc;
+        int n = tupleDesc.numFields();
+        this.widths = new int[n];
+        this.widthsBefore = new int[n];
+        int sum = 0;
+        for (int i = 0; i < n; i++) {
+            widths[i] = tupleDesc.getType(i) == Type.STRING ? STRING_ENTRY : tupleDesc.getFieldLength(i);
+            widthsBefore[i] = sum;
+            sum += widths[i];
+        }
+        this.rowBytes = sum;
+        this.dataStart = OFF_STATS + n * STATS_SIZE;
+
+        if (format && page.getInt(OFF_MAGIC) != MAGIC) {
+            if (page.getInt(OFF_MAGIC) != 0 || page.getInt(OFF_COUNT) != 0 || page.getInt(OFF_HEAP_START) != 0) {
+                throw new IllegalStateException("Page " + page.getPageId() + " is not a columnar page");
+            }
+            page.setInt(OFF_MAGIC, MAGIC);
+            page.setInt(OFF_CAPACITY, 0);
+            setHeapStart(Page.USABLE_SIZE);
+        }
+    }
+
+    // True if the page was formatted as a columnar page
+    public static boolean isColumnar(Page page) {
+        return page.getInt(OFF_MAGIC) == MAGIC;
+    }
+
+    public int getNumTuples() {
+        return page.getInt(OFF_COUNT);
+    }
+
+    /**
+     * Bytes left for rows and string data. A row takes exactly its serialized size
+     * (Tuple.getSerializedSize()), so a tuple fits if that is no more than this.
+     */
+    public int getFreeSpace() {
+        return getHeapStart() - dataStart - getNumTuples() * rowBytes;
+    }
+
+    /**
+     * Largest tuple that fits into an empty page of this schema.
+     */
+    public static int maxTupleSize(TupleDesc tupleDesc) {
+        return Page.USABLE_SIZE - OFF_STATS - tupleDesc.numFields() * STATS_SIZE;
+    }
+
+    /**
+     * Inserts a Tuple, one value into each minipage.
+     * Returns the row number where it was stored.
+     */
+    public int insertTuple(Tuple t) {
+        int size = t.getSerializedSize();
+        if (size > getFreeSpace()) {
+            throw new RuntimeException("Page is Full! Use TableHeap to spill into a new Page");
+        }
+        int row = getNumTuples();
+        int heapStart = getHeapStart();
+        int stringBytes = size - rowBytes;
+        // Make the minipages hold one more row and leave room for the new string bytes
+        int maxCapacity = rowBytes == 0 ? Integer.MAX_VALUE : (heapStart - stringBytes - dataStart) / rowBytes;
+        int capacity = getCapacity();
+        if (capacity <= row || capacity > maxCapacity) {
+            relayout(Math.min(maxCapacity, estimateCapacity(row, heapStart, stringBytes)));
+        }
+
+        for (int col = 0; col < widths.length; col++) {
+            int pos = valueOffset(row, col);
+            Object val = t.getField(col);
+            switch (tupleDesc.getType(col)) {
+                case INT:
+                    page.setInt(pos, (Integer) val);
+                    break;
+                case LONG:
+                    page.setLong(pos, (Long) val);
+                    break;
+                case DOUBLE:
+                    page.setLong(pos, Double.doubleToLongBits((Double) val));
+                    break;
+                case BOOLEAN:
+                    page.setByte(pos, (byte) ((Boolean) val ? 1 : 0));
+                    break;
+                case TIMESTAMP:
+                    page.setLong(pos, Tuple.microsOf((Instant) val));
+                    break;
+                case CHAR: {
+                    int len = page.setUtf8(pos, (String) val);
+                    page.fill(pos + len, widths[col] - len, (byte) ' ');
+                    break;
+                }
+                case STRING: {
+                    String s = (String) val;
+                    heapStart -= Page.utf8Length(s);
+                    int len = page.setUtf8(heapStart, s);
+                    page.setInt(pos, (heapStart << 16) | len);
+                    break;
+                }
+            }
+            updateStats(col, row);
+        }
+        setHeapStart(heapStart);
+        page.setInt(OFF_COUNT, row + 1);
+        return row;
+    }
+
+    // Rows the free space could hold if new rows carry as much string data as the ones so far
+    private int estimateCapacity(int rows, int heapStart, int stringBytes) {
+        int stringsSoFar = Page.USABLE_SIZE - heapStart + stringBytes;
+        int perRow = rowBytes + stringsSoFar / (rows + 1);
+        if (perRow == 0) {
+            return rows + 1;
+        }
+        return rows + 1 + (heapStart - stringBytes - dataStart - (rows + 1) * rowBytes) / perRow;
+    }
+
+    // Moves the minipages so each has room for 'capacity' rows
+    private void relayout(int capacity) {
+        int oldCapacity = getCapacity();
+        int count = getNumTuples();
+        int n = widths.length;
+        // Growing moves minipages right, so start from the last; shrinking from the first
+        for (int k = 0; k < n; k++) {
+            int col = capacity > oldCapacity ? n - 1 - k : k;
+            int bytes = count * widths[col];
+            if (bytes > 0) {
+                page.copyWithin(minipageStart(col, oldCapacity), minipageStart(col, capacity), bytes);
+            }
+        }
+        page.setInt(OFF_CAPACITY, capacity);
+    }
+
+    /**
+     * Reads a whole row back into a Tuple.
+     */
+    public Tuple getTuple(int row) {
+        checkRow(row);
+        Tuple t = new Tuple(tupleDesc);
+        for (int col = 0; col < widths.length; col++) {
+            t.setField(col, getField(row, col));
+        }
+        return t;
+    }
+
+    // --- Column access: only the minipage of the column asked for is read ---
+
+    public int getInt(int row, int col) {
+        return page.getInt(valueOffset(row, col));
+    }
+
+    /**
+     * Copies the INT values of rows [fromRow, fromRow + count) of a column into 'dst',
+     * reading one contiguous run of its minipage.
+     */
+    public void getInts(int col, int fromRow, int[] dst, int dstPos, int count) {
+        int pos = valueOffset(fromRow, col);
+        for (int i = 0; i < count; i++) {
+            dst[dstPos + i] = page.getInt(pos);
+            pos += 4;
+        }
+    }
+
+    // LONG values, and TIMESTAMPs as microseconds since the epoch
+    public long getLong(int row, int col) {
+        return page.getLong(valueOffset(row, col));
+    }
+
+    public double getDouble(int row, int col) {
+        return Double.longBitsToDouble(page.getLong(valueOffset(row, col)));
+    }
+
+    public boolean getBoolean(int row, int col) {
+        return page.getByte(valueOffset(row, col)) != 0;
+    }
+
+    // A STRING, or a CHAR without its padding
+    public String getString(int row, int col) {
+        int pos = valueOffset(row, col);
+        if (tupleDesc.getType(col) == Type.CHAR) {
+            byte[] bytes = new byte[widths[col]];
+            page.getBytes(pos, bytes, 0, bytes.length);
+            return Tuple.charValue(bytes);
+        }
+        int entry = page.getInt(pos);
+        byte[] bytes = new byte[entry & 0xFFFF];
+        page.getBytes(entry >>> 16, bytes, 0, bytes.length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Value of a column as an object, like Tuple.getField
+    public Object getField(int row, int col) {
+        switch (tupleDesc.getType(col)) {
+            case INT:
+                return getInt(row, col);
+            case LONG:
+                return getLong(row, col);
+            case DOUBLE:
+                return getDouble(row, col);
+            case BOOLEAN:
+                return getBoolean(row, col);
+            case TIMESTAMP:
+                return Tuple.instantOf(getLong(row, col));
+            default:
+                return getString(row, col);
+        }
+    }
+
+    // --- Column stats ---
+
+    // True for the columns whose min and max the header keeps
+    public boolean hasStats(int col) {
+        Type type = tupleDesc.getType(col);
+        return type != Type.STRING && type != Type.CHAR;
+    }
+
+    /**
+     * Smallest value of a numeric column in this page: the value itself for INT and LONG,
+     * microseconds for TIMESTAMP, 0/1 for BOOLEAN. Use getMinDouble for DOUBLE columns.
+     */
+    public long getMin(int col) {
+        return page.getLong(OFF_STATS + col * STATS_SIZE);
+    }
+
+    public long getMax(int col) {
+        return page.getLong(OFF_STATS + col * STATS_SIZE + 8);
+    }
+
+    public double getMinDouble(int col) {
+        return Double.longBitsToDouble(getMin(col));
+    }
+
+    public double getMaxDouble(int col) {
+        return Double.longBitsToDouble(getMax(col));
+    }
+
+    /**
+     * False if no row of this page can have lo <= column value <= hi, judged from the
+     * header alone. DOUBLE columns compare as doubles. Always true for columns without stats.
+     */
+    public boolean mayContain(int col, long lo, long hi) {
+        if (!hasStats(col)) {
+            return true;
+        }
+        if (getNumTuples() == 0) {
+            return false;
+        }
+        if (tupleDesc.getType(col) == Type.DOUBLE) {
+            return getMinDouble(col) <= hi && getMaxDouble(col) >= lo;
+        }
+        return getMin(col) <= hi && getMax(col) >= lo;
+    }
+
+    private void updateStats(int col, int row) {
+        if (!hasStats(col)) {
+            return;
+        }
+        int off = OFF_STATS + col * STATS_SIZE;
+        long v = tupleDesc.getType(col) == Type.INT ? getInt(row, col)
+                : tupleDesc.getType(col) == Type.BOOLEAN ? (getBoolean(row, col) ? 1 : 0)
+                : getLong(row, col);
+        if (row == 0) {
+            page.setLong(off, v);
+            page.setLong(off + 8, v);
+        } else if (tupleDesc.getType(col) == Type.DOUBLE) {
+            double d = Double.longBitsToDouble(v);
+            if (d < getMinDouble(col)) page.setLong(off, v);
+            if (d > getMaxDouble(col)) page.setLong(off + 8, v);
+        } else {
+            if (v < getMin(col)) page.setLong(off, v);
+            if (v > getMax(col)) page.setLong(off + 8, v);
+        }
+    }
+
+    // --- Layout helpers ---
+
+    private int minipageStart(int col, int capacity) {
+        return dataStart + capacity * widthsBefore[col];
+    }
+
+    private int valueOffset(int row, int col) {
+        return minipageStart(col, getCapacity()) + row * widths[col];
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= getNumTuples()) {
+            throw new IllegalArgumentException("Invalid row: " + row);
+        }
+    }
+
+    private int getCapacity() {
+        return page.getInt(OFF_CAPACITY);
+    }
+
+    private int getHeapStart() {
+        return page.getInt(OFF_HEAP_START);
+    }
+
+    private void setHeapStart(int offset) {
+        page.setInt(OFF_HEAP_START, offset);
+    }
+
+    public Page getPage() {
+        return page;
+    }
+}
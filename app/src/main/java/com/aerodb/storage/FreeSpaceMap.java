@@ -0,0 +1,214 @@
+package com.aerodb.storage;
+
+import com.aerodb.buffer.BufferManager;
+
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Persistent free-space map for a heap table, kept in its own file.
+ * Every heap page is filed under a bucket of free bytes, and each bucket is a
+ * doubly linked list threaded through the map entries, so finding a page with
+ * room and moving a page between buckets are both O(1) regardless of table size.
+ * All public methods are synchronized, since one change can touch several entries.
+ *
+ * Layout:
+ * [Page 0 (Header): Magic(4B), TrackedPages(4B), BucketHead[NUM_BUCKETS](4B each)]
+ * [Page 1..n (Entries): {FreeBytes(4B), Prev(4B), Next(4B)} per heap page]
+ */
+public class FreeSpaceMap {
+    private static final int MAGIC = 0x46534D31; // "FSM1"
+    private static final int NIL = -1;
+
+    // Header layout
+    private static final int HEADER_PAGE = 0;
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_TRACKED = 4;
+    private static final int OFF_HEADS = 8;
+
+    // Each bucket covers BUCKET_WIDTH bytes of free space
+    private static final int BUCKET_WIDTH = 64;
+    private static final int NUM_BUCKETS = Page.PAGE_SIZE / BUCKET_WIDTH + 1;
+
+    // Each entry is 12 bytes: [FreeBytes (4), Prev (4), Next (4)]
+    private static final int ENTRY_SIZE = 12;
+    private static final int ENTRIES_PER_PAGE = Page.USABLE_SIZE / ENTRY_SIZE;
+    private static final int FIELD_FREE = 0;
+    private static final int FIELD_PREV = 4;
+    private static final int FIELD_NEXT = 8;
+
+    private final BufferManager bufferManager;
+
+    public FreeSpaceMap(BufferManager bufferManager) {
+        this.bufferManager = bufferManager;
+        initHeaderIfNeeded();
+    }
+
+    private void initHeaderIfNeeded() {
+        if (bufferManager.getDiskManager().getNumPages() == 0) {
+            bufferManager.allocateNewPage();
+        }
+        Page header = bufferManager.pinPage(HEADER_PAGE);
+        boolean init = header.getInt(OFF_MAGIC) != MAGIC;
+        if (init) {
+            header.setInt(OFF_MAGIC, MAGIC);
+            header.setInt(OFF_TRACKED, 0);
+            for (int b = 0; b < NUM_BUCKETS; b++) {
+                header.setInt(OFF_HEADS + b * 4, NIL);
+            }
+        }
+        bufferManager.unpinPage(HEADER_PAGE, init);
+    }
+
+    /**
+     * Number of heap pages this map knows about.
+     */
+    public synchronized int getNumTracked() {
+        return getHeader(OFF_TRACKED);
+    }
+
+    /**
+     * Starts tracking the next heap page. Pages must be added in page id order.
+     */
+    public synchronized void addPage(int heapPageId, int freeBytes) {
+        int tracked = getNumTracked();
+        if (heapPageId != tracked) {
+            throw new IllegalArgumentException("Expected heap page " + tracked + " but got " + heapPageId);
+        }
+        // Make sure the entry page exists
+        int entryPage = entryPageOf(heapPageId);
+        while (bufferManager.getDiskManager().getNumPages() <= entryPage) {
+            bufferManager.allocateNewPage();
+        }
+        setHeader(OFF_TRACKED, tracked + 1);
+        setEntry(heapPageId, FIELD_FREE, freeBytes);
+        link(heapPageId, bucketOf(freeBytes));
+    }
+
+    /**
+     * Returns a heap page that has at least 'needed' free bytes, or -1 if none is known.
+     * Only walks the bucket heads, so cost does not depend on the number of pages.
+     */
+    public synchronized int findPage(int needed) {
+        // Every page in bucket b has at least b * BUCKET_WIDTH free bytes
+        int first = (needed + BUCKET_WIDTH - 1) / BUCKET_WIDTH;
+        Page header = bufferManager.pinPage(HEADER_PAGE);
+        try {
+            for (int b = Math.max(first, 1); b < NUM_BUCKETS; b++) {
+                int head = header.getInt(OFF_HEADS + b * 4);
+                if (head != NIL) {
+                    return head;
+                }
+            }
+            return NIL;
+        } finally {
+            bufferManager.unpinPage(HEADER_PAGE, false);
+        }
+    }
+
+    public synchronized int getFreeSpace(int heapPageId) {
+        checkTracked(heapPageId);
+        return getEntry(heapPageId, FIELD_FREE);
+    }
+
+    /**
+     * Records the new amount of free space of a heap page, moving it to another bucket if needed.
+     */
+    public synchronized void update(int heapPageId, int freeBytes) {
+        checkTracked(heapPageId);
+        int oldBucket = bucketOf(getEntry(heapPageId, FIELD_FREE));
+        int newBucket = bucketOf(freeBytes);
+        setEntry(heapPageId, FIELD_FREE, freeBytes);
+        if (oldBucket != newBucket) {
+            unlink(heapPageId, oldBucket);
+            link(heapPageId, newBucket);
+        }
+    }
+
+    public synchronized void flush() {
+        bufferManager.flushAll();
+    }
+
+    // --- Bucket list helpers ---
+
+    private void link(int heapPageId, int bucket) {
+        int head = getHeader(OFF_HEADS + bucket * 4);
+        setEntry(heapPageId, FIELD_PREV, NIL);
+        setEntry(heapPageId, FIELD_NEXT, head);
+        if (head != NIL) {
+            setEntry(head, FIELD_PREV, heapPageId);
+        }
+        setHeader(OFF_HEADS + bucket * 4, heapPageId);
+    }
+
+    private void unlink(int heapPageId, int bucket) {
+        int prev = getEntry(heapPageId, FIELD_PREV);
+        int next = getEntry(heapPageId, FIELD_NEXT);
+        if (prev != NIL) {
+            setEntry(prev, FIELD_NEXT, next);
+        } else {
+            setHeader(OFF_HEADS + bucket * 4, next);
+        }
+        if (next != NIL) {
+            setEntry(next, FIELD_PREV, prev);
+        }
+    }
+
+    private static int bucketOf(int freeBytes) {
+        return Math.min(Math.max(freeBytes, 0) / BUCKET_WIDTH, NUM_BUCKETS - 1);
+    }
+
+    private void checkTracked(int heapPageId) {
+        if (heapPageId < 0 || heapPageId >= getNumTracked()) {
+            throw new IllegalArgumentException("Heap page " + heapPageId + " is not tracked");
+        }
+    }
+
+    // --- Entry helpers ---
+    // Each access pins its page only for the one read or write
+
+    private static int entryPageOf(int heapPageId) {
+        return 1 + heapPageId / ENTRIES_PER_PAGE;
+    }
+
+    private static int entryOffsetOf(int heapPageId) {
+        return (heapPageId % ENTRIES_PER_PAGE) * ENTRY_SIZE;
+    }
+
+    private int getEntry(int heapPageId, int field) {
+        return readInt(entryPageOf(heapPageId), entryOffsetOf(heapPageId) + field);
+    }
+
+    private void setEntry(int heapPageId, int field, int value) {
+        writeInt(entryPageOf(heapPageId), entryOffsetOf(heapPageId) + field, value);
+    }
+
+    private int getHeader(int offset) {
+        return readInt(HEADER_PAGE, offset);
+    }
+
+    private void setHeader(int offset, int value) {
+        writeInt(HEADER_PAGE, offset, value);
+    }
+
+    private int readInt(int pageId, int offset) {
+        Page p = bufferManager.pinPage(pageId);
+        try {
+            return p.getInt(offset);
+        } finally {
+            bufferManager.unpinPage(pageId, false);
+        }
+    }
+
+    private void writeInt(int pageId, int offset, int value) {
+        Page p = bufferManager.pinPage(pageId);
+        // The latch keeps a background write from seeing the page halfway through a change
+        Lock latch = p.getLatch().writeLock();
+        latch.lock();
+        try {
+            p.setInt(offset, value);
+        } finally {
+            bufferManager.unpinPage(pageId, true);
+            latch.unlock();
+        }
+    }
+}
@@ -1,67 +1,380 @@
 package com.aerodb.storage;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.io.File;
-import java.io.FileNotFoundException;
-import javax.management.RuntimeMBeanException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Disk manager for one database file.
+ * All I/O is positional (FileChannel.read/write at an offset), so there is no shared
+ * file pointer and any number of threads can read different pages at the same time.
+ * The page count is cached in memory, and the file grows in large zero-filled extents
+ * instead of one page at a time. The count is kept in a header page in front of the
+ * pages, written by force() and close(), so spare extent space is never mistaken for
+ * pages: it is trimmed when the file is opened again, even after a crash. Pages allocated
+ * after the last force() are then gone; the log recreates those it has changes for.
+ * A temporary file (see temporary()) has no extents: it only grows as pages are written.
+ *
+ * In memory-mapped mode the file is mapped in chunks that are added as the file grows.
+ * readPage() then returns a Page that is a view into the mapping: no syscall and no copy.
+ * Changes to such a page land in the mapping directly and become durable on force(),
+ * or earlier whenever the OS writes them back, so a LogManager does not accept the file.
+ * Spare chunk space is trimmed on open like extents are.
+ * Pages read in this mode must not be used after close().
+ *
+ * Files from before the header (and the page LSN trailer, see Page) have no magic number
+ * and are refused on open: their pages use the bytes that now hold the LSN, so they must
+ * be recreated.
+ *
+ * Layout:
+ * [Header: Magic(4B), Version(4B), NumPages(4B), zeros up to PAGE_SIZE]
+ * [Page 0][Page 1]...
+ */
 public class HeapFile {
+    // Extents start at 1 MB and grow with the file up to 64 MB
+    private static final long MIN_EXTENT = 1L << 20;
+    private static final long MAX_EXTENT = 64L << 20;
+    private static final ByteBuffer ZEROS = ByteBuffer.allocateDirect(64 * 1024);
+    private static final int MAGIC = 0x4145524F; // "AERO"
+    // Raised whenever the page format changes
+    private static final int VERSION = 1;
+    // A whole page, so pages stay aligned to PAGE_SIZE in the file
+    private static final int HEADER_SIZE = Page.PAGE_SIZE;
+
     private File file;
-    private RandomAccessFile raf;
+    private FileChannel channel;
+
+    // Logical number of pages handed out, and bytes actually reserved on disk
+    private final AtomicInteger numPages;
+    private long allocatedBytes;
+    private final Object extendLock = new Object();
+    // False for temporary files, which are written once and deleted, so reserving
+    // space ahead of them only costs writes of zeros
+    private final boolean preallocate;
+    // Gather writes and scatter reads go through the channel position, so they take turns
+    private final Object gatherLock = new Object();
+
+    // Memory-mapped mode: the file is mapped in CHUNK_SIZE pieces, grown on demand
+    private static final int CHUNK_SIZE = 16 << 20;
+    private static final int PAGES_PER_CHUNK = CHUNK_SIZE / Page.PAGE_SIZE;
+    private final boolean memoryMapped;
+    private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
 
 
     //constructor
     public HeapFile(File f){
+        this(f,false);
+    }
+
+    //constructor choosing between positional I/O and a memory-mapped file
+    public HeapFile(File f, boolean memoryMapped){
+        this(f,memoryMapped,true);
+    }
+
+    /**
+     * Opens a file for temporary data, such as operator spills, that is deleted after use.
+     * New pages are not backed by zero-filled extents; the file grows as they are written.
+     */
+    public static HeapFile temporary(File f){
+        return new HeapFile(f,false,false);
+    }
+
+    private HeapFile(File f, boolean memoryMapped, boolean preallocate){
         this.file=f;
+        this.memoryMapped=memoryMapped;
+        this.preallocate=preallocate;
         try{
-
-            this.raf=new RandomAccessFile(f,"rw");
-        }catch(FileNotFoundException e){
+            this.channel=FileChannel.open(f.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            int pages=0;
+            if(channel.size()==0){
+                writeHeader(0);
+            }else{
+                ByteBuffer header=ByteBuffer.allocate(12);
+                channel.read(header,0);
+                if(header.getInt(0)!=MAGIC){
+                    throw new IllegalStateException(f.getPath()+" is not a database file, or was"
+                            +" written by an older version without page LSNs: delete it and reload the data");
+                }
+                if(header.getInt(4)!=VERSION){
+                    throw new IllegalStateException(f.getPath()+" has page format version "
+                            +header.getInt(4)+", this version reads only "+VERSION);
+                }
+                pages=header.getInt(8);
+            }
+            this.numPages=new AtomicInteger(pages);
+            //Whatever lies past the last page is spare extent space, or pages allocated
+            //after the last force(): both must read back as zeros when handed out again
+            this.allocatedBytes=offsetOf(pages);
+            if(channel.size()>allocatedBytes){
+                channel.truncate(allocatedBytes);
+            }
+        }catch(IOException e){
             throw new RuntimeException("Could not open DB file"+f.getPath(),e);
         }
 
     }
-    //Reads page function to read specific p[age from the disk
+    private static long offsetOf(int pageId){
+        return HEADER_SIZE+(long)pageId*Page.PAGE_SIZE;
+    }
+
+    private void writeHeader(int pages) throws IOException{
+        ByteBuffer header=ByteBuffer.allocate(12).putInt(MAGIC).putInt(VERSION).putInt(pages).flip();
+        while(header.hasRemaining()){
+            channel.write(header,header.position());
+        }
+    }
+
+    //Reads page function to read specific page from the disk
     public Page readPage(int pageId){
+        if(memoryMapped){
+            checkPageId(pageId);
+            Page p=new Page(pageId,mappedView(pageId));
+            p.mappedFrom=this;
+            return p;
+        }
         Page p=new Page(pageId);
-        int offset=pageId*Page.PAGE_SIZE;
+        readPage(pageId,p);
+        return p;
+    }
+
+    /**
+     * Reads a page into an existing frame instead of a new Page.
+     * In memory-mapped mode this is a copy out of the mapping, no syscall.
+     */
+    public void readPage(int pageId, Page frame){
+        checkPageId(pageId);
+        frame.setPageId(pageId);
+        frame.mappedFrom=null;
+        if(memoryMapped){
+            frame.getBuffer().put(0,mappedView(pageId),0,Page.PAGE_SIZE);
+            return;
+        }
+        long offset=offsetOf(pageId);
         try{
-            if(offset+Page.PAGE_SIZE>raf.length()){
-                throw new IllegalArgumentException("Page "+pageId+" does not exit in the file");
+            ByteBuffer buf=frame.getBuffer().duplicate();
+            while(buf.hasRemaining()){
+                int n=channel.read(buf,offset+buf.position());
+                if(n<0){
+                    //Reserved but never written: the rest of the page is zeros
+                    while(buf.hasRemaining()){
+                        buf.put((byte)0);
+                    }
+                }
             }
-            raf.seek(offset);
-            raf.readFully(p.getData());
-            return p;
         }catch(IOException e){
             throw new RuntimeException("Error reading a page "+pageId,e);
         }
     }
+
+    /**
+     * Reads 'count' pages with consecutive ids, starting at 'firstId', into frames[from..]
+     * with one scatter read. In memory-mapped mode each page is copied out of the mapping.
+     */
+    public void readPages(int firstId, Page[] frames, int from, int count){
+        checkPageId(firstId);
+        checkPageId(firstId+count-1);
+        if(memoryMapped || count==1){
+            for(int i=0;i<count;i++){
+                readPage(firstId+i,frames[from+i]);
+            }
+            return;
+        }
+        ByteBuffer[] bufs=new ByteBuffer[count];
+        for(int i=0;i<count;i++){
+            Page frame=frames[from+i];
+            frame.setPageId(firstId+i);
+            frame.mappedFrom=null;
+            bufs[i]=frame.getBuffer().duplicate();
+        }
+        try{
+            //Like gather writes, scatter reads go through the channel position
+            synchronized(gatherLock){
+                channel.position(offsetOf(firstId));
+                long remaining=(long)count*Page.PAGE_SIZE;
+                while(remaining>0){
+                    long n=channel.read(bufs);
+                    if(n<0){
+                        break;
+                    }
+                    remaining-=n;
+                }
+            }
+            //Reserved but never written: the rest reads as zeros
+            for(ByteBuffer buf: bufs){
+                while(buf.hasRemaining()){
+                    buf.put((byte)0);
+                }
+            }
+        }catch(IOException e){
+            throw new RuntimeException("Error reading pages "+firstId+".."+(firstId+count-1),e);
+        }
+    }
+
+    private void checkPageId(int pageId){
+        if(pageId<0 || pageId>=numPages.get()){
+            throw new IllegalArgumentException("Page "+pageId+" does not exit in the file");
+        }
+    }
+
     //Writing a Page function
     public void writePage(Page p){
-        int offset=p.getPageId()*Page.PAGE_SIZE;
+        if(memoryMapped){
+            //A page read from this mapping is already in place; anything else is copied in
+            if(p.mappedFrom!=this){
+                mappedView(p.getPageId()).put(0,p.getBuffer(),0,Page.PAGE_SIZE);
+            }
+            numPages.accumulateAndGet(p.getPageId()+1,Math::max);
+            return;
+        }
+        long offset=offsetOf(p.getPageId());
         try{
-            raf.seek(offset);
-            raf.write(p.getData());
+            ByteBuffer buf=p.getBuffer().duplicate();
+            while(buf.hasRemaining()){
+                channel.write(buf,offset+buf.position());
+            }
+            numPages.accumulateAndGet(p.getPageId()+1,Math::max);
         }catch(IOException e){
             throw new RuntimeException("Error writing page"+p.getPageId(),e);
         }
     }
 
-    //return the number of pages currently in the file
-    public int getNumPages(){
+    /**
+     * Writes 'count' pages with consecutive ids, starting at pages[from], in one gather write.
+     */
+    public void writePages(Page[] pages, int from, int count){
+        int firstId=pages[from].getPageId();
+        for(int i=1;i<count;i++){
+            if(pages[from+i].getPageId()!=firstId+i){
+                throw new IllegalArgumentException("Pages of a gather write must have consecutive ids");
+            }
+        }
+        if(memoryMapped || count==1){
+            for(int i=0;i<count;i++){
+                writePage(pages[from+i]);
+            }
+            return;
+        }
+        ByteBuffer[] bufs=new ByteBuffer[count];
+        for(int i=0;i<count;i++){
+            bufs[i]=pages[from+i].getBuffer().duplicate();
+        }
         try{
-            return (int)(raf.length()/Page.PAGE_SIZE);
+            //There is no positional gather write, so position the channel under a lock.
+            //Positional reads and writes ignore the channel position and are unaffected
+            synchronized(gatherLock){
+                channel.position(offsetOf(firstId));
+                long remaining=(long)count*Page.PAGE_SIZE;
+                while(remaining>0){
+                    remaining-=channel.write(bufs);
+                }
+            }
+            numPages.accumulateAndGet(firstId+count,Math::max);
+        }catch(IOException e){
+            throw new RuntimeException("Error writing pages "+firstId+".."+(firstId+count-1),e);
+        }
+    }
+
+    /**
+     * Hands out the next page id. The page reads back as all zeros until it is written.
+     * Safe to call from several threads.
+     */
+    public int allocatePage(){
+        int pageId=numPages.getAndIncrement();
+        if(preallocate){
+            ensureAllocated(offsetOf(pageId+1));
+        }
+        return pageId;
+    }
+
+    //Reserves disk space up to 'bytes', one extent at a time
+    private void ensureAllocated(long bytes){
+        synchronized(extendLock){
+            if(bytes<=allocatedBytes){
+                return;
+            }
+            long extent=Math.min(Math.max(allocatedBytes/8,MIN_EXTENT),MAX_EXTENT);
+            long target=Math.max(bytes,allocatedBytes+extent);
+            target=(target+Page.PAGE_SIZE-1)/Page.PAGE_SIZE*Page.PAGE_SIZE;
+            try{
+                long pos=Math.max(allocatedBytes,channel.size());
+                while(pos<target){
+                    ByteBuffer zeros=ZEROS.duplicate();
+                    zeros.limit((int)Math.min(zeros.capacity(),target-pos));
+                    pos+=channel.write(zeros,pos);
+                }
+                allocatedBytes=target;
+            }catch(IOException e){
+                throw new RuntimeException("Error extending file "+file.getPath(),e);
+            }
         }
-        catch(IOException e){
-            throw new RuntimeException("Errr getting file size",e);
+    }
+
+    //Returns a PAGE_SIZE view of the page inside the mapping, mapping a new chunk if needed
+    private ByteBuffer mappedView(int pageId){
+        int chunk=pageId/PAGES_PER_CHUNK;
+        MappedByteBuffer[] mapped=chunks;
+        if(chunk>=mapped.length){
+            mapped=mapChunks(chunk+1);
+        }
+        int offsetInChunk=(pageId%PAGES_PER_CHUNK)*Page.PAGE_SIZE;
+        return mapped[chunk].slice(offsetInChunk,Page.PAGE_SIZE);
+    }
+
+    private MappedByteBuffer[] mapChunks(int count){
+        synchronized(extendLock){
+            MappedByteBuffer[] mapped=chunks;
+            if(count<=mapped.length){
+                return mapped;
+            }
+            MappedByteBuffer[] grown=Arrays.copyOf(mapped,count);
+            try{
+                for(int i=mapped.length;i<count;i++){
+                    //Mapping past the end of the file extends it with zeros
+                    grown[i]=channel.map(FileChannel.MapMode.READ_WRITE,HEADER_SIZE+(long)i*CHUNK_SIZE,CHUNK_SIZE);
+                }
+                allocatedBytes=Math.max(allocatedBytes,HEADER_SIZE+(long)count*CHUNK_SIZE);
+            }catch(IOException e){
+                throw new RuntimeException("Error mapping file "+file.getPath(),e);
+            }
+            chunks=grown;
+            return grown;
         }
     }
 
-    //for closing the raf stream
+    public boolean isMemoryMapped(){
+        return memoryMapped;
+    }
+
+    //return the number of pages currently in the file (cached, no syscall)
+    public int getNumPages(){
+        return numPages.get();
+    }
+
+    //Forces all written pages, and the page count, to the storage device
+    public void force(){
+        try{
+            writeHeader(numPages.get());
+            for(MappedByteBuffer chunk: chunks){
+                chunk.force();
+            }
+            channel.force(false);
+        }catch(IOException e){
+            throw new RuntimeException("Error syncing file "+file.getPath(),e);
+        }
+    }
+
+    //for closing the channel. Unused preallocated space is given back
     public void close() throws IOException{
-        raf.close();
+        writeHeader(numPages.get());
+        channel.truncate(offsetOf(numPages.get()));
+        channel.close();
     }
 
-    
+
 }
@@ -13,10 +13,20 @@ import java.util.List;
  * [Free Space]
  * ...
  * [Tuple Data 1]
- * [Tuple Data 0] (Data grows backwards from the end)
+ * [Tuple Data 0] (Data grows backwards from the end of the usable space)
+ * [Page LSN (8B)]
+ *
+ * Tables whose rows all have the same size (TupleDesc.isFixedWidth()) use a fixed-slot
+ * layout instead: no slot array, row i simply starts at HEADER_SIZE + i * TupleSize.
+ * The header stores the negated row size where the free space pointer would be.
+ * [Header: Count(4B), -TupleSize(4B)]
+ * [Row 0][Row 1]...
+ * [Page LSN (8B)]
  */
 public class HeapPage {
     private Page page;
+    // Row size of a fixed-slot page, 0 for the slotted layout
+    private final int fixedSize;
     
     // Header layout
     private static final int OFF_COUNT = 0;
@@ -27,11 +37,42 @@ public class HeapPage {
     private static final int SLOT_SIZE = 8; 
 
     public HeapPage(Page page) {
+        this(page, 0);
+    }
+
+    /**
+     * Wraps a page. A blank page is formatted for rows of exactly 'fixedTupleSize' bytes,
+     * or for the slotted layout if that is 0; a page in use keeps the layout it has.
+     */
+    public HeapPage(Page page, int fixedTupleSize) {
+        this(page, fixedTupleSize, true);
+    }
+
+    private HeapPage(Page page, int fixedTupleSize, boolean format) {
         this.page = page;
-        // Initialize new page: Free Pointer starts at the very end
-        if (getNumTuples() == 0 && getFreeSpacePtr() == 0) {
-            setFreeSpacePtr(Page.PAGE_SIZE);
+        if (format && getNumTuples() == 0 && getFreeSpacePtr() == 0) {
+            if (fixedTupleSize > 0) {
+                setFreeSpacePtr(-fixedTupleSize);
+            } else {
+                // Initialize new page: Free Pointer starts at the very end
+                setFreeSpacePtr(Page.USABLE_SIZE);
+            }
         }
+        int ptr = getFreeSpacePtr();
+        this.fixedSize = ptr < 0 ? -ptr : 0;
+    }
+
+    /**
+     * Wraps a page for reading only, as under a shared latch: nothing is written to it,
+     * and a blank page (not formatted yet) reads as an empty one. Do not insert through it.
+     */
+    public static HeapPage readOnly(Page page) {
+        return new HeapPage(page, 0, false);
+    }
+
+    // True for the fixed-slot layout
+    public boolean isFixedSize() {
+        return fixedSize > 0;
     }
 
     public int getNumTuples() {
@@ -50,26 +91,94 @@ public class HeapPage {
         page.setInt(OFF_FREE_PTR, offset);
     }
 
+    /**
+     * Bytes left between the slot array and the tuple data.
+     */
+    public int getFreeSpace() {
+        if (fixedSize > 0) {
+            return Page.USABLE_SIZE - HEADER_SIZE - getNumTuples() * fixedSize;
+        }
+        int slotsEnd = HEADER_SIZE + (getNumTuples() * SLOT_SIZE);
+        return getFreeSpacePtr() - slotsEnd;
+    }
+
+    /**
+     * Space a tuple of 'dataLen' bytes takes in a slotted page, including its slot entry.
+     * In a fixed-slot page a row takes just its own bytes.
+     */
+    public static int spaceNeeded(int dataLen) {
+        return dataLen + SLOT_SIZE;
+    }
+
+    /**
+     * True if a tuple of 'dataLen' bytes can be inserted into this page now.
+     */
+    public boolean fits(int dataLen) {
+        if (fixedSize > 0) {
+            return dataLen == fixedSize && getFreeSpace() >= fixedSize;
+        }
+        return getFreeSpace() >= spaceNeeded(dataLen);
+    }
+
+    /**
+     * Largest tuple that fits into an empty page.
+     */
+    public static int maxTupleSize() {
+        return Page.USABLE_SIZE - HEADER_SIZE - SLOT_SIZE;
+    }
+
     /**
      * Inserts a Tuple into this page.
      * Returns the slot number where it was stored.
      */
     public int insertTuple(Tuple t) {
-        byte[] data = t.serialize();
-        int dataLen = data.length;
-        
+        // Encoded straight into the reserved space: no byte[] and no second copy
+        int slotIdx = allocateSlot(t.getSerializedSize());
+        t.serializeInto(page, getSlotOffset(slotIdx));
+        return slotIdx;
+    }
+
+    /**
+     * Inserts an already serialized Tuple into this page.
+     * Returns the slot number where it was stored.
+     */
+    public int insertTuple(byte[] data) {
+        int slotIdx = allocateSlot(data.length);
+        page.setBytes(getSlotOffset(slotIdx), data, 0, data.length);
+        return slotIdx;
+    }
+
+    /**
+     * Inserts the tuple a view points at (in this or another page) by copying its bytes.
+     * Returns the slot number where it was stored.
+     */
+    public int insertTuple(TupleView view) {
+        int slotIdx = allocateSlot(view.getLength());
+        view.copyTo(page, getSlotOffset(slotIdx));
+        return slotIdx;
+    }
+
+    // Reserves space and a slot for 'dataLen' bytes; the caller fills in the data
+    private int allocateSlot(int dataLen) {
+        if (fixedSize > 0) {
+            if (dataLen != fixedSize) {
+                throw new IllegalArgumentException("Tuple of " + dataLen + " bytes in a page of " + fixedSize + " byte rows");
+            }
+            if (!fits(dataLen)) {
+                throw new RuntimeException("Page is Full! Use TableHeap to spill into a new Page");
+            }
+            int slotIdx = getNumTuples();
+            setNumTuples(slotIdx + 1);
+            return slotIdx;
+        }
         // 1. Check if we have enough space
         // Space needed = Data Length + Slot Entry Size
-        int slotsEnd = HEADER_SIZE + (getNumTuples() * SLOT_SIZE);
-        int freeSpace = getFreeSpacePtr() - slotsEnd;
-
-        if (freeSpace < dataLen + SLOT_SIZE) {
-            throw new RuntimeException("Page is Full! implementation needed: Create new Page");
+        if (getFreeSpace() < spaceNeeded(dataLen)) {
+            throw new RuntimeException("Page is Full! Use TableHeap to spill into a new Page");
         }
 
-        // 2. Write Data (Backwards from the current FreeSpacePtr)
+        // 2. Reserve Data (Backwards from the current FreeSpacePtr)
         int writeStart = getFreeSpacePtr() - dataLen;
-        System.arraycopy(data, 0, page.getData(), writeStart, dataLen);
         setFreeSpacePtr(writeStart);
 
         // 3. Write Slot (Forwards from the last slot)
@@ -86,32 +195,66 @@ public class HeapPage {
      * Reads a Tuple from a specific slot.
      */
     public Tuple getTuple(int slotId, TupleDesc td) {
+        return getTupleView(slotId, new TupleView(td)).toTuple();
+    }
+
+    /**
+     * Points 'view' at the tuple in a slot, without copying or decoding anything.
+     * The view is only good while this page stays pinned; see TupleView.
+     */
+    public TupleView getTupleView(int slotId, TupleView view) {
         if (slotId >= getNumTuples()) {
             throw new IllegalArgumentException("Invalid slot: " + slotId);
         }
+        return view.reset(page, getSlotOffset(slotId), getSlotLength(slotId));
+    }
 
-        int offset = getSlotOffset(slotId);
-        int len = getSlotLength(slotId);
-
-        byte[] data = new byte[len];
-        System.arraycopy(page.getData(), offset, data, 0, len);
-
-        Tuple t = new Tuple(td);
-        t.deserialize(data);
-        return t;
+    /**
+     * Copies INT field 'field' of slots [fromSlot, fromSlot + count) into 'dst', reading
+     * only that field of each tuple (and the lengths of any STRINGs before it).
+     */
+    public void getInts(TupleDesc td, int field, int fromSlot, int[] dst, int dstPos, int count) {
+        // Walk from the last field at a fixed offset: the field itself if no STRING comes before it
+        int from = field;
+        while (td.getOffset(from) < 0) {
+            from--;
+        }
+        int fromOffset = td.getOffset(from);
+        for (int i = 0; i < count; i++) {
+            int start = getSlotOffset(fromSlot + i);
+            int pos = fromOffset;
+            for (int f = from; f < field; f++) {
+                int len = td.getFieldLength(f);
+                pos += len > 0 ? len : 4 + page.getInt(start + pos);
+            }
+            dst[dstPos + i] = page.getInt(start + pos);
+        }
     }
-    
+
     /**
      * Helper to retrieve all valid tuples in this page.
      */
     public List<Tuple> getAllTuples(TupleDesc td) {
         List<Tuple> tuples = new ArrayList<>();
+        TupleView view = new TupleView(td);
         for (int i = 0; i < getNumTuples(); i++) {
-            tuples.add(getTuple(i, td));
+            tuples.add(getTupleView(i, view).toTuple());
         }
         return tuples;
     }
 
+    /**
+     * One view per tuple in this page, decoded lazily. To read rows without any garbage,
+     * reuse a single view with getTupleView instead.
+     */
+    public List<TupleView> getAllTupleViews(TupleDesc td) {
+        List<TupleView> views = new ArrayList<>();
+        for (int i = 0; i < getNumTuples(); i++) {
+            views.add(getTupleView(i, new TupleView(td)));
+        }
+        return views;
+    }
+
     // --- Slot Helpers ---
 
     private void setSlot(int index, int offset, int length) {
@@ -121,11 +264,17 @@ public class HeapPage {
     }
 
     private int getSlotOffset(int index) {
+        if (fixedSize > 0) {
+            return HEADER_SIZE + index * fixedSize;
+        }
         int slotPos = HEADER_SIZE + (index * SLOT_SIZE);
         return page.getInt(slotPos);
     }
 
     private int getSlotLength(int index) {
+        if (fixedSize > 0) {
+            return fixedSize;
+        }
         int slotPos = HEADER_SIZE + (index * SLOT_SIZE);
         return page.getInt(slotPos + 4);
     }
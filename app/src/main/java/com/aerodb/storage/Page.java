@@ -1,17 +1,58 @@
 package com.aerodb.storage;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * A PAGE_SIZE block of memory plus the id of the disk page it holds.
+ * The memory is either a private heap array, a view into a memory-mapped file, or a
+ * frame of the BufferManager's off-heap arena. Frames are reused for different pages,
+ * so a Page handed out by the BufferManager is only valid while it is pinned.
+ * All accessors go through VarHandles and never allocate.
+ *
+ * Threads sharing a pinned page coordinate through its latch: shared to read the
+ * contents, exclusive to change them.
+ *
+ * The last 8 bytes of every page hold its LSN: the end of the last log record that
+ * changed it. Page layouts only use the first USABLE_SIZE bytes. Changes must go through
+ * the set* helpers, which remember the changed byte range for the write-ahead log.
+ * Files written before the trailer existed do not fit this layout; HeapFile refuses them.
+ *
+ * Besides the latch, a page has a version for optimistic readers (see readVersion()):
+ * they read without any lock and check afterwards that no writer got in between.
+ * Writers that want such readers to notice use lockForWrite()/unlockForWrite().
+ */
 public class Page {
-    
-    static final int PAGE_SIZE= 4096;
+
+    public static final int PAGE_SIZE= 4096;
+    //Bytes available to page layouts; the trailer after them holds the page LSN
+    public static final int USABLE_SIZE=PAGE_SIZE-8;
+    private static final int OFF_LSN=USABLE_SIZE;
+
+    private static final VarHandle INT=MethodHandles.byteBufferViewVarHandle(int[].class,ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG=MethodHandles.byteBufferViewVarHandle(long[].class,ByteOrder.BIG_ENDIAN);
+
     private int pageId;
-    private byte[] data;
+    private ByteBuffer buffer;
+    //The memory-mapped file this page is a view of, if any
+    HeapFile mappedFrom;
+    private final ReentrantReadWriteLock latch=new ReentrantReadWriteLock();
+    //Byte ranges changed since the log last took them: [changeFrom[i], changeTo[i]).
+    //A few ranges, since a slotted page changes at both ends at once
+    private static final int MAX_CHANGES=4;
+    private final int[] changeFrom=new int[MAX_CHANGES];
+    private final int[] changeTo=new int[MAX_CHANGES];
+    private int numChanges;
+    //Even while no writer holds the page through lockForWrite(), odd while one does
+    private volatile long version;
 
     // Construtor for a new empty page
     public Page(int pageId){
         this.pageId=pageId;
-        this.data=new byte[PAGE_SIZE]; //4kb zeros
+        this.buffer=ByteBuffer.wrap(new byte[PAGE_SIZE]); //4kb zeros
     }
 
     //Constructor for loading existing data (from disk)
@@ -19,7 +60,16 @@ public class Page {
         this.pageId=pageId;
         if(data.length!=PAGE_SIZE)
             throw new IllegalArgumentException("Data must be of 4096 bytes");
-        this.data=data;
+        this.buffer=ByteBuffer.wrap(data);
+    }
+
+    //Constructor for a page that is a view into other memory (a mapped file, an arena frame).
+    //Reads and writes go straight to that memory, nothing is copied
+    public Page(int pageId, ByteBuffer view){
+        this.pageId=pageId;
+        if(view.capacity()!=PAGE_SIZE)
+            throw new IllegalArgumentException("View must be of 4096 bytes");
+        this.buffer=view;
     }
 
     //Getters
@@ -27,27 +77,285 @@ public class Page {
         return pageId;
     }
 
+    //Used when a frame is loaded with another disk page
+    void setPageId(int pageId){
+        this.pageId=pageId;
+        this.numChanges=0;
+    }
+
+    /**
+     * Returns the backing array of a heap page.
+     * View pages have no array of their own; use getBuffer() or the get/set helpers for those.
+     */
     public byte[] getData(){
-        return data;
+        if(!buffer.hasArray())
+            throw new IllegalStateException("Page "+pageId+" is a view and has no backing array");
+        return buffer.array();
+    }
+
+    //The page contents as a buffer of PAGE_SIZE bytes. Always use absolute get/put on it
+    public ByteBuffer getBuffer(){
+        return buffer;
+    }
+
+    //Latch guarding the page contents between threads that have it pinned
+    public ReentrantReadWriteLock getLatch(){
+        return latch;
+    }
+
+    //True if this page is a view into memory it does not own
+    public boolean isView(){
+        return !buffer.hasArray();
     }
 
-    /**    ByteBuffer function syntax
-     * ByteBuffer.wrap(data).putInt(0,258)
-     * int myId= ByteBuffer.wrap(data).getInt(5)
-     * 
-     * 500 in HEX 0x00 00 01 F4
-     * 
+    /**    VarHandle function syntax
+     * INT.set(buffer,0,258)
+     * int myId= (int)INT.get(buffer,5)
+     *
+     * 500 in HEX 0x00 00 01 F4 (big endian, same as ByteBuffer)
+     *
      */
 
     //Helper to write an integer from a specific offset
     public void setInt(int offset, int value){
-         //Use ByteBuffer to easily convert int to bytes
-        ByteBuffer.wrap(data).putInt(offset,value);
+        INT.set(buffer,offset,value);
+        changed(offset,4);
     }
 
     //Helper to read an integer from a specific offset
     public int getInt(int offset){
-        return ByteBuffer.wrap(data).getInt(offset);
+        return (int)INT.get(buffer,offset);
+    }
+
+    //Helper to write a long from a specific offset
+    public void setLong(int offset, long value){
+        LONG.set(buffer,offset,value);
+        changed(offset,8);
+    }
+
+    public long getLong(int offset){
+        return (long)LONG.get(buffer,offset);
+    }
+
+    public void setByte(int offset, byte value){
+        buffer.put(offset,value);
+        changed(offset,1);
+    }
+
+    //Helper to read a single byte
+    public byte getByte(int offset){
+        return buffer.get(offset);
+    }
+
+    //Sets 'length' bytes from 'offset' to 'value'
+    public void fill(int offset, int length, byte value){
+        for(int i=0;i<length;i++){
+            buffer.put(offset+i,value);
+        }
+        changed(offset,length);
+    }
+
+    //Helper to copy bytes into the page at a specific offset
+    public void setBytes(int offset, byte[] src, int srcOffset, int length){
+        buffer.put(offset, src, srcOffset, length);
+        changed(offset,length);
+    }
+
+    //Encodes 's' as UTF-8 straight into the page, like String.getBytes(UTF_8) but with no
+    //array in between. Returns the number of bytes written (utf8Length(s))
+    public int setUtf8(int offset, String s){
+        int pos=offset;
+        int n=s.length();
+        for(int i=0;i<n;i++){
+            char c=s.charAt(i);
+            if(c<0x80){
+                buffer.put(pos++,(byte)c);
+            }else if(c<0x800){
+                buffer.put(pos++,(byte)(0xC0|(c>>6)));
+                buffer.put(pos++,(byte)(0x80|(c&0x3F)));
+            }else if(Character.isHighSurrogate(c) && i+1<n && Character.isLowSurrogate(s.charAt(i+1))){
+                int cp=Character.toCodePoint(c,s.charAt(++i));
+                buffer.put(pos++,(byte)(0xF0|(cp>>18)));
+                buffer.put(pos++,(byte)(0x80|((cp>>12)&0x3F)));
+                buffer.put(pos++,(byte)(0x80|((cp>>6)&0x3F)));
+                buffer.put(pos++,(byte)(0x80|(cp&0x3F)));
+            }else if(Character.isSurrogate(c)){
+                //Unpaired surrogate: replaced, as the JDK encoder does
+                buffer.put(pos++,(byte)'?');
+            }else{
+                buffer.put(pos++,(byte)(0xE0|(c>>12)));
+                buffer.put(pos++,(byte)(0x80|((c>>6)&0x3F)));
+                buffer.put(pos++,(byte)(0x80|(c&0x3F)));
+            }
+        }
+        changed(offset,pos-offset);
+        return pos-offset;
+    }
+
+    //Number of bytes setUtf8 writes for 's', counted without encoding
+    public static int utf8Length(String s){
+        int n=s.length();
+        int len=n;
+        for(int i=0;i<n;i++){
+            char c=s.charAt(i);
+            if(c>=0x800){
+                if(Character.isHighSurrogate(c) && i+1<n && Character.isLowSurrogate(s.charAt(i+1))){
+                    len+=2;
+                    i++;
+                }else if(!Character.isSurrogate(c)){
+                    len+=2;
+                }
+            }else if(c>=0x80){
+                len++;
+            }
+        }
+        return len;
+    }
+
+    //Helper to copy bytes out of the page from a specific offset
+    public void getBytes(int offset, byte[] dst, int dstOffset, int length){
+        buffer.get(offset, dst, dstOffset, length);
+    }
+
+    //Moves 'length' bytes inside the page in one bulk copy; the ranges may overlap
+    public void copyWithin(int srcOffset, int dstOffset, int length){
+        buffer.put(dstOffset, buffer, srcOffset, length);
+        changed(dstOffset,length);
+    }
+
+    //Copies 'length' bytes from another page in one bulk copy
+    public void copyFrom(Page src, int srcOffset, int dstOffset, int length){
+        buffer.put(dstOffset, src.buffer, srcOffset, length);
+        changed(dstOffset,length);
+    }
+
+    /**
+     * Compares 'length' bytes at 'offset' with those at 'otherOffset' in 'other' as unsigned
+     * bytes, like Arrays.compareUnsigned: negative, zero or positive. Eight bytes per step.
+     */
+    public int compareBytes(int offset, Page other, int otherOffset, int length){
+        int i=0;
+        for(;i+8<=length;i+=8){
+            long a=getLong(offset+i);
+            long b=other.getLong(otherOffset+i);
+            if(a!=b){
+                //Big endian, so the first differing byte decides
+                return Long.compareUnsigned(a,b);
+            }
+        }
+        for(;i<length;i++){
+            int a=getByte(offset+i)&0xFF;
+            int b=other.getByte(otherOffset+i)&0xFF;
+            if(a!=b){
+                return a-b;
+            }
+        }
+        return 0;
+    }
+
+    //LSN of the last logged change to this page (0 if never logged)
+    public long getLsn(){
+        return (long)LONG.get(buffer,OFF_LSN);
+    }
+
+    public void setLsn(long lsn){
+        LONG.set(buffer,OFF_LSN,lsn);
+    }
+
+    /**
+     * Version to validate an optimistic read against, waiting out a writer that holds the page.
+     * Read the contents, then call validate(): if it fails the values read may be torn.
+     */
+    public long readVersion(){
+        long v;
+        while(((v=version)&1)!=0){
+            Thread.onSpinWait();
+        }
+        return v;
+    }
+
+    //True if no writer changed the page since readVersion() returned 'v'
+    public boolean validate(long v){
+        //Keeps the plain reads of the contents from moving past the version check
+        VarHandle.acquireFence();
+        return version==v;
+    }
+
+    //Takes the exclusive latch and makes optimistic readers of the page fail validation
+    public void lockForWrite(){
+        latch.writeLock().lock();
+        version++;
+        VarHandle.storeStoreFence();
+    }
+
+    /**
+     * Upgrades an optimistic read to a write lock: succeeds only if the page is still
+     * at version 'v', so what was read before stays true under the lock.
+     */
+    public boolean tryLockForWrite(long v){
+        if(version!=v){
+            return false;
+        }
+        latch.writeLock().lock();
+        if(version!=v){
+            latch.writeLock().unlock();
+            return false;
+        }
+        version=v+1;
+        VarHandle.storeStoreFence();
+        return true;
+    }
+
+    public void unlockForWrite(){
+        version++;
+        latch.writeLock().unlock();
+    }
+
+    //Changed byte ranges not yet logged, read by the LogManager
+    public int getNumChanges(){
+        return numChanges;
+    }
+
+    public int getChangeFrom(int i){
+        return changeFrom[i];
+    }
+
+    public int getChangeTo(int i){
+        return changeTo[i];
+    }
+
+    public void clearChanges(){
+        numChanges=0;
+    }
+
+    private void changed(int offset, int length){
+        if(length<=0){
+            return; //nothing was written
+        }
+        int end=offset+length;
+        //Grow a range it touches, else start a new one, else merge into the closest
+        int closest=0;
+        int closestGap=Integer.MAX_VALUE;
+        for(int i=0;i<numChanges;i++){
+            int gap=Math.max(changeFrom[i]-end,offset-changeTo[i]);
+            if(gap<=0){
+                closest=i;
+                closestGap=0;
+                break;
+            }
+            if(gap<closestGap){
+                closest=i;
+                closestGap=gap;
+            }
+        }
+        if(closestGap>0 && numChanges<MAX_CHANGES){
+            changeFrom[numChanges]=offset;
+            changeTo[numChanges]=end;
+            numChanges++;
+            return;
+        }
+        changeFrom[closest]=Math.min(changeFrom[closest],offset);
+        changeTo[closest]=Math.max(changeTo[closest],end);
     }
 
     @Override
@@ -55,6 +363,6 @@ public class Page {
         return "Page{id=" +pageId+ "}";
     }
 
-    
+
 
 }
@@ -0,0 +1,216 @@
+package com.aerodb.storage;
+
+import com.aerodb.buffer.BufferManager;
+
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+
+/**
+ * A table spread over all the pages of a HeapFile.
+ * Inserts ask the FreeSpaceMap for a page with room and only allocate
+ * a new page when no existing one fits, so the table can grow without limit.
+ * Safe for concurrent use: each heap page is pinned and latched while it is read or changed.
+ * A table opened with a fixed-width schema puts its rows in fixed-slot pages (see HeapPage).
+ * A columnar table keeps its rows in ColumnarHeapPages instead, for scans that read a
+ * few columns of many rows; the layout is chosen when the table is opened.
+ */
+public class TableHeap {
+    private final BufferManager bufferManager;
+    private final FreeSpaceMap freeSpaceMap;
+    // Row size for new pages in the fixed-slot layout, 0 for slotted pages
+    private final int fixedSize;
+    // Schema of a columnar table, null for a row table
+    private final TupleDesc columnarSchema;
+    // Pages scans may see. A new page is counted only once it is formatted, so a reader
+    // never finds a page whose layout is not decided yet
+    private volatile int numPages;
+
+    public TableHeap(BufferManager bufferManager, FreeSpaceMap freeSpaceMap) {
+        this(bufferManager, freeSpaceMap, null);
+    }
+
+    /**
+     * Opens a table for rows of 'schema'. If every row has the same size, new pages use
+     * the fixed-slot layout; pages already in the file keep theirs.
+     */
+    public TableHeap(BufferManager bufferManager, FreeSpaceMap freeSpaceMap, TupleDesc schema) {
+        this(bufferManager, freeSpaceMap, schema, false);
+    }
+
+    /**
+     * Opens a table for rows of 'schema', in ColumnarHeapPages if 'columnar' and in
+     * row pages otherwise. A file must always be opened with the same choice.
+     * A row table may have no schema (null): its rows then go into slotted pages.
+     */
+    public TableHeap(BufferManager bufferManager, FreeSpaceMap freeSpaceMap, TupleDesc schema, boolean columnar) {
+        if (columnar && schema == null) {
+            throw new IllegalArgumentException("A columnar table needs a schema");
+        }
+        this.bufferManager = bufferManager;
+        this.freeSpaceMap = freeSpaceMap;
+        this.fixedSize = !columnar && schema != null && schema.isFixedWidth() ? schema.getFixedSize() : 0;
+        this.columnarSchema = columnar ? schema : null;
+        trackMissingPages();
+    }
+
+    // Pages written before the map existed (or after it was last flushed) are added once on open
+    private void trackMissingPages() {
+        int filePages = bufferManager.getDiskManager().getNumPages();
+        for (int pageId = freeSpaceMap.getNumTracked(); pageId < filePages; pageId++) {
+            freeSpaceMap.addPage(pageId, freeSpaceOf(bufferManager.pinPage(pageId)));
+            bufferManager.unpinPage(pageId, false);
+        }
+        numPages = filePages;
+    }
+
+    /**
+     * Inserts a Tuple into the first page with enough room.
+     * Returns the RecordId where it was stored.
+     */
+    public RecordId insertTuple(Tuple t) {
+        // Sized up front and encoded straight into the page, so an insert makes no garbage
+        int size = t.getSerializedSize();
+        int maxSize = isColumnar() ? ColumnarHeapPage.maxTupleSize(columnarSchema) : HeapPage.maxTupleSize();
+        if (size > maxSize) {
+            throw new IllegalArgumentException("Tuple of " + size + " bytes does not fit in a page");
+        }
+        // A columnar page takes exactly the serialized size
+        int needed = fixedSize > 0 || isColumnar() ? size : HeapPage.spaceNeeded(size);
+
+        // Set when the map offers a page of the other layout (a table reopened with a
+        // different schema): it has the room but cannot take the row
+        boolean newPage = false;
+        while (true) {
+            int pageId = newPage ? -1 : freeSpaceMap.findPage(needed);
+            if (pageId == -1) {
+                pageId = allocatePage();
+            }
+
+            Page page = bufferManager.pinPage(pageId);
+            Lock latch = page.getLatch().writeLock();
+            latch.lock();
+            int slot = -1;
+            try {
+                int free;
+                if (isColumnar()) {
+                    ColumnarHeapPage columnarPage = new ColumnarHeapPage(page, columnarSchema);
+                    if (columnarPage.getFreeSpace() >= size) {
+                        slot = columnarPage.insertTuple(t);
+                    }
+                    free = columnarPage.getFreeSpace();
+                } else {
+                    HeapPage heapPage = new HeapPage(page, fixedSize);
+                    if (heapPage.fits(size)) {
+                        slot = heapPage.insertTuple(t);
+                    } else {
+                        newPage = heapPage.getFreeSpace() >= needed;
+                    }
+                    free = heapPage.getFreeSpace();
+                }
+                // The map is only a hint: a stale entry is fixed here and we look again
+                freeSpaceMap.update(pageId, free);
+            } finally {
+                // Unpin (and so log the change) before other threads may touch the page
+                bufferManager.unpinPage(pageId, slot != -1);
+                latch.unlock();
+            }
+            if (slot != -1) {
+                return new RecordId(pageId, slot);
+            }
+        }
+    }
+
+    /**
+     * Reads the Tuple stored at the given RecordId.
+     */
+    public Tuple getTuple(RecordId rid, TupleDesc td) {
+        Page page = bufferManager.pinPage(rid.pageId);
+        Lock latch = page.getLatch().readLock();
+        latch.lock();
+        try {
+            // Shared latch: read-only wrappers, which never format the page
+            if (isColumnar()) {
+                return ColumnarHeapPage.readOnly(page, td).getTuple(rid.slotNumber);
+            }
+            return HeapPage.readOnly(page).getTuple(rid.slotNumber, td);
+        } finally {
+            latch.unlock();
+            bufferManager.unpinPage(rid.pageId, false);
+        }
+    }
+
+    public BufferManager getBufferManager() {
+        return bufferManager;
+    }
+
+    public boolean isColumnar() {
+        return columnarSchema != null;
+    }
+
+    /**
+     * Hands each page of a columnar table that may hold rows with lo <= column 'col' <= hi
+     * to 'visitor'; the others are skipped on their header min/max alone, without reading
+     * any column. The page is pinned and latched (shared) only during the call.
+     * DOUBLE columns compare as doubles, TIMESTAMPs as microseconds since the epoch.
+     */
+    public void scanColumnar(int col, long lo, long hi, Consumer<ColumnarHeapPage> visitor) {
+        if (!isColumnar()) {
+            throw new IllegalStateException("Not a columnar table");
+        }
+        int numPages = getNumPages();
+        for (int pageId = 0; pageId < numPages; pageId++) {
+            Page page = bufferManager.pinPage(pageId);
+            Lock latch = page.getLatch().readLock();
+            latch.lock();
+            try {
+                ColumnarHeapPage columnarPage = ColumnarHeapPage.readOnly(page, columnarSchema);
+                if (columnarPage.mayContain(col, lo, hi)) {
+                    visitor.accept(columnarPage);
+                }
+            } finally {
+                latch.unlock();
+                bufferManager.unpinPage(pageId, false);
+            }
+        }
+    }
+
+    // Pages of the table, all formatted
+    public int getNumPages() {
+        return numPages;
+    }
+
+    /**
+     * Writes every dirty heap and free-space-map page to disk.
+     */
+    public void flush() {
+        bufferManager.flushAll();
+        freeSpaceMap.flush();
+    }
+
+    private int allocatePage() {
+        // The map tracks pages in id order, so allocation and registration go together
+        synchronized (freeSpaceMap) {
+            int pageId = bufferManager.allocateNewPage();
+            Page page = bufferManager.pinPage(pageId);
+            Lock latch = page.getLatch().writeLock();
+            latch.lock();
+            try {
+                freeSpaceMap.addPage(pageId, freeSpaceOf(page));
+            } finally {
+                bufferManager.unpinPage(pageId, true);
+                latch.unlock();
+            }
+            // Formatted: scans may read it from now on
+            numPages = pageId + 1;
+            return pageId;
+        }
+    }
+
+    // Free bytes of a page in this table's layout, formatting it if it is blank
+    private int freeSpaceOf(Page page) {
+        if (isColumnar()) {
+            return new ColumnarHeapPage(page, columnarSchema).getFreeSpace();
+        }
+        return new HeapPage(page, fixedSize).getFreeSpace();
+    }
+}
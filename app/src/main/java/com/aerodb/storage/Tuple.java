@@ -6,6 +6,7 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -35,6 +36,78 @@ public class Tuple {
         return this.tupleDesc;
     }
 
+    // Where the tuple is stored, if it was read from a table (null otherwise)
+    public RecordId getRecordId() {
+        return recordId;
+    }
+
+    public void setRecordId(RecordId recordId) {
+        this.recordId = recordId;
+    }
+
+    /**
+     * Number of bytes serialize() produces, computed without encoding anything.
+     * Also rejects a CHAR value that is too long, before any space is reserved for it.
+     */
+    public int getSerializedSize() {
+        int size = 0;
+        for (int i = 0; i < tupleDesc.numFields(); ++i) {
+            Type type = tupleDesc.getType(i);
+            if (type == Type.STRING) {
+                size += 4 + Page.utf8Length((String) fields.get(i));
+            } else {
+                if (type == Type.CHAR) {
+                    checkChar(i, Page.utf8Length((String) fields.get(i)));
+                }
+                size += tupleDesc.getFieldLength(i);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Writes the same bytes as serialize() straight into a page at 'offset', which must
+     * have getSerializedSize() bytes reserved. Allocates nothing.
+     */
+    public void serializeInto(Page page, int offset) {
+        int pos = offset;
+        for (int i = 0; i < tupleDesc.numFields(); ++i) {
+            Type type = tupleDesc.getType(i);
+            Object val = fields.get(i);
+
+            switch (type) {
+                case INT:
+                    page.setInt(pos, (Integer) val);
+                    break;
+                case LONG:
+                    page.setLong(pos, (Long) val);
+                    break;
+                case DOUBLE:
+                    page.setLong(pos, Double.doubleToLongBits((Double) val));
+                    break;
+                case BOOLEAN:
+                    page.setByte(pos, (byte) ((Boolean) val ? 1 : 0));
+                    break;
+                case TIMESTAMP:
+                    page.setLong(pos, microsOf((Instant) val));
+                    break;
+                case CHAR: {
+                    int width = tupleDesc.getFieldLength(i);
+                    int len = page.setUtf8(pos, (String) val);
+                    page.fill(pos + len, width - len, (byte) ' ');
+                    break;
+                }
+                case STRING: {
+                    int len = page.setUtf8(pos + 4, (String) val);
+                    page.setInt(pos, len);
+                    pos += 4 + len;
+                    continue;
+                }
+            }
+            pos += tupleDesc.getFieldLength(i);
+        }
+    }
+
     public byte[] serialize() {
         try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
             DataOutputStream dos = new DataOutputStream(baos)) {
@@ -48,6 +121,21 @@ public class Tuple {
                     byte[] strBytes = ((String) val).getBytes(StandardCharsets.UTF_8);
                     dos.writeInt(strBytes.length);
                     dos.write(strBytes);
+                } else if (type == Type.LONG) {
+                    dos.writeLong((Long) val);
+                } else if (type == Type.DOUBLE) {
+                    dos.writeDouble((Double) val);
+                } else if (type == Type.BOOLEAN) {
+                    dos.writeBoolean((Boolean) val);
+                } else if (type == Type.TIMESTAMP) {
+                    dos.writeLong(microsOf((Instant) val));
+                } else if (type == Type.CHAR) {
+                    byte[] strBytes = ((String) val).getBytes(StandardCharsets.UTF_8);
+                    checkChar(i, strBytes.length);
+                    dos.write(strBytes);
+                    for (int pad = strBytes.length; pad < tupleDesc.getFieldLength(i); pad++) {
+                        dos.writeByte(' ');
+                    }
                 }
             }
 
@@ -70,10 +158,47 @@ public class Tuple {
                     byte[] strBytes = new byte[len];
                     dis.readFully(strBytes);
                     fields.set(i, new String(strBytes, StandardCharsets.UTF_8));
+                } else if (type == Type.LONG) {
+                    fields.set(i, dis.readLong());
+                } else if (type == Type.DOUBLE) {
+                    fields.set(i, dis.readDouble());
+                } else if (type == Type.BOOLEAN) {
+                    fields.set(i, dis.readBoolean());
+                } else if (type == Type.TIMESTAMP) {
+                    fields.set(i, instantOf(dis.readLong()));
+                } else if (type == Type.CHAR) {
+                    byte[] strBytes = new byte[tupleDesc.getFieldLength(i)];
+                    dis.readFully(strBytes);
+                    fields.set(i, charValue(strBytes));
                 }
             }
         } catch (IOException e) {
             throw new RuntimeException("Deserialization failed! Aborting!", e);
         } 
     }
+
+    private void checkChar(int i, int len) {
+        if (len > tupleDesc.getFieldLength(i)) {
+            throw new IllegalArgumentException("Value of " + len + " bytes is too long for CHAR("
+                    + tupleDesc.getFieldLength(i) + ") field " + tupleDesc.getFieldName(i));
+        }
+    }
+
+    // TIMESTAMP values are stored as microseconds since the epoch
+    static long microsOf(Instant t) {
+        return Math.addExact(Math.multiplyExact(t.getEpochSecond(), 1_000_000L), t.getNano() / 1000);
+    }
+
+    static Instant instantOf(long micros) {
+        return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1000);
+    }
+
+    // A CHAR field's bytes without the padding spaces
+    static String charValue(byte[] bytes) {
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] == ' ') {
+            end--;
+        }
+        return new String(bytes, 0, end, StandardCharsets.UTF_8);
+    }
 }
@@ -1,11 +1,25 @@
 package com.aerodb.storage;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Schema of a tuple: the type, width and name of each field.
+ * Field offsets are worked out as fields are added. Every field that comes before the
+ * first STRING sits at the same offset in every row, so it is read without looking at
+ * the row; a schema with no STRING at all has one fixed row size (see isFixedWidth()).
+ */
 public class TupleDesc {
     private List<Type> types;
     private List<String> fieldNames;
+    // Width of each field in bytes (0 for STRING), and its offset in the row if that is
+    // the same in every row (-1 once a STRING came before it)
+    private int[] lengths = new int[4];
+    private int[] offsets = new int[4];
+    // Bytes taken by the fields up to the first STRING
+    private int fixedEnd;
+    private boolean fixedWidth = true;
 
     public TupleDesc() {
         this.types = new ArrayList<>();
@@ -13,8 +27,42 @@ public class TupleDesc {
     }
 
     public void addField(Type type, String name) {
+        if (type == Type.CHAR) {
+            throw new IllegalArgumentException("CHAR field " + name + " needs a length");
+        }
+        add(type, type.getLen(), name);
+    }
+
+    // Adds a CHAR(length) field: 'length' bytes of UTF-8, padded with spaces
+    public void addField(Type type, int length, String name) {
+        if (type != Type.CHAR || length <= 0) {
+            throw new IllegalArgumentException("Only CHAR fields take a length, and it must be positive");
+        }
+        add(type, length, name);
+    }
+
+    // Adds a copy of field i of 'from': same type, width and name
+    public void copyField(TupleDesc from, int i) {
+        add(from.getType(i), from.getFieldLength(i), from.getFieldName(i));
+    }
+
+    private void add(Type type, int length, String name) {
+        int i = types.size();
+        if (i == lengths.length) {
+            lengths = Arrays.copyOf(lengths, i * 2);
+            offsets = Arrays.copyOf(offsets, i * 2);
+        }
         types.add(type);
         fieldNames.add(name);
+        lengths[i] = length;
+        offsets[i] = fixedWidth ? fixedEnd : -1;
+        if (type.isFixedWidth()) {
+            if (fixedWidth) {
+                fixedEnd += length;
+            }
+        } else {
+            fixedWidth = false;
+        }
     }
 
     public int numFields() {
@@ -24,4 +72,31 @@ public class TupleDesc {
     public Type getType(int i) {
         return types.get(i);
     }
+
+    public String getFieldName(int i) {
+        return fieldNames.get(i);
+    }
+
+    // Width of field i in bytes; 0 for a STRING, whose length is stored in the row
+    public int getFieldLength(int i) {
+        return lengths[i];
+    }
+
+    // Offset of field i in every row, or -1 if a STRING before it makes it vary
+    public int getOffset(int i) {
+        return offsets[i];
+    }
+
+    // True if every row has the same size, getFixedSize()
+    public boolean isFixedWidth() {
+        return fixedWidth;
+    }
+
+    // Row size of a fixed-width schema
+    public int getFixedSize() {
+        if (!fixedWidth) {
+            throw new IllegalStateException("Rows with STRING fields have no fixed size");
+        }
+        return fixedEnd;
+    }
 }
@@ -0,0 +1,188 @@
+package com.aerodb.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Read-only view of one serialized tuple inside a page, decoding only the fields asked for.
+ * Nothing is copied when a view is pointed at a slot, and a view can be pointed at row
+ * after row, so reading an INT column out of a whole page allocates nothing.
+ * Fields before the first STRING sit at offsets fixed by the TupleDesc and are read
+ * directly. Later field offsets go into a small per-row table the first time they are
+ * needed; after that every field, including one after strings, is one lookup away.
+ *
+ * A view reads the page in place: it is only valid while the page is pinned and not
+ * changed, and only until it is pointed somewhere else.
+ */
+public class TupleView {
+    private final TupleDesc tupleDesc;
+    // Start of each field relative to the tuple; the first 'known' entries are filled in,
+    // and the first 'fixedKnown' are the same in every row
+    private final int[] fieldOffsets;
+    private final int fixedKnown;
+    private int known;
+
+    private Page page;
+    private int start;
+    private int length;
+
+    public TupleView(TupleDesc tupleDesc) {
+        this.tupleDesc = tupleDesc;
+        this.fieldOffsets = new int[tupleDesc.numFields() + 1];
+        int n = 0;
+        while (n < tupleDesc.numFields() && tupleDesc.getOffset(n) >= 0) {
+            fieldOffsets[n] = tupleDesc.getOffset(n);
+            n++;
+        }
+        // Fields up to the first STRING (and its length prefix) are at the same offset in every row
+        this.fixedKnown = Math.max(n, 1);
+    }
+
+    /**
+     * Points this view at the tuple stored in page[offset, offset + length).
+     */
+    public TupleView reset(Page page, int offset, int length) {
+        this.page = page;
+        this.start = offset;
+        this.length = length;
+        this.known = fixedKnown;
+        return this;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return tupleDesc;
+    }
+
+    // Serialized size of the tuple in bytes
+    public int getLength() {
+        return length;
+    }
+
+    public int getInt(int i) {
+        checkType(i, Type.INT);
+        return page.getInt(start + offsetOf(i));
+    }
+
+    public long getLong(int i) {
+        checkType(i, Type.LONG);
+        return page.getLong(start + offsetOf(i));
+    }
+
+    public double getDouble(int i) {
+        checkType(i, Type.DOUBLE);
+        return Double.longBitsToDouble(page.getLong(start + offsetOf(i)));
+    }
+
+    public boolean getBoolean(int i) {
+        checkType(i, Type.BOOLEAN);
+        return page.getByte(start + offsetOf(i)) != 0;
+    }
+
+    // A TIMESTAMP as microseconds since the epoch, without creating an Instant
+    public long getTimestampMicros(int i) {
+        checkType(i, Type.TIMESTAMP);
+        return page.getLong(start + offsetOf(i));
+    }
+
+    public Instant getTimestamp(int i) {
+        return Tuple.instantOf(getTimestampMicros(i));
+    }
+
+    // A STRING, or a CHAR without its padding
+    public String getString(int i) {
+        int pos = start + offsetOf(i);
+        if (tupleDesc.getType(i) == Type.CHAR) {
+            byte[] bytes = new byte[tupleDesc.getFieldLength(i)];
+            page.getBytes(pos, bytes, 0, bytes.length);
+            return Tuple.charValue(bytes);
+        }
+        checkType(i, Type.STRING);
+        byte[] bytes = new byte[page.getInt(pos)];
+        page.getBytes(pos + 4, bytes, 0, bytes.length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Field i as an object (boxed number, Boolean, Instant or String), like Tuple.getField
+    public Object getField(int i) {
+        switch (tupleDesc.getType(i)) {
+            case INT:
+                return getInt(i);
+            case LONG:
+                return getLong(i);
+            case DOUBLE:
+                return getDouble(i);
+            case BOOLEAN:
+                return getBoolean(i);
+            case TIMESTAMP:
+                return getTimestamp(i);
+            default:
+                return getString(i);
+        }
+    }
+
+    /**
+     * Decodes every field into a Tuple that stays valid after the page is unpinned.
+     */
+    public Tuple toTuple() {
+        Tuple t = new Tuple(tupleDesc);
+        for (int i = 0; i < tupleDesc.numFields(); i++) {
+            t.setField(i, getField(i));
+        }
+        return t;
+    }
+
+    /**
+     * Orders field i of this row against field i of 'other' (same schema) without decoding
+     * either: numbers by value, strings by their UTF-8 bytes, which is code point order.
+     * A CHAR compares with its padding, so "ab" and "ab " are equal.
+     */
+    public int compareField(int i, TupleView other) {
+        int pos = start + offsetOf(i);
+        int otherPos = other.start + other.offsetOf(i);
+        switch (tupleDesc.getType(i)) {
+            case INT:
+                return Integer.compare(page.getInt(pos), other.page.getInt(otherPos));
+            case LONG:
+            case TIMESTAMP:
+                return Long.compare(page.getLong(pos), other.page.getLong(otherPos));
+            case DOUBLE:
+                return Double.compare(Double.longBitsToDouble(page.getLong(pos)),
+                        Double.longBitsToDouble(other.page.getLong(otherPos)));
+            case BOOLEAN:
+                return Byte.compare(page.getByte(pos), other.page.getByte(otherPos));
+            case CHAR:
+                return page.compareBytes(pos, other.page, otherPos, tupleDesc.getFieldLength(i));
+            default:
+                int len = page.getInt(pos);
+                int otherLen = other.page.getInt(otherPos);
+                int c = page.compareBytes(pos + 4, other.page, otherPos + 4, Math.min(len, otherLen));
+                return c != 0 ? c : Integer.compare(len, otherLen);
+        }
+    }
+
+    // Copies the serialized tuple into 'dst' at 'dstOffset' in one bulk copy
+    public void copyTo(Page dst, int dstOffset) {
+        dst.copyFrom(page, start, dstOffset, length);
+    }
+
+    // Offset of field i within the tuple, extending the table up to it if needed
+    private int offsetOf(int i) {
+        while (known <= i) {
+            int prev = known - 1;
+            int pos = fieldOffsets[prev];
+            if (tupleDesc.getType(prev) == Type.STRING) {
+                pos += 4 + page.getInt(start + pos);
+            } else {
+                pos += tupleDesc.getFieldLength(prev);
+            }
+            fieldOffsets[known++] = pos;
+        }
+        return fieldOffsets[i];
+    }
+
+    private void checkType(int i, Type expected) {
+        if (tupleDesc.getType(i) != expected) {
+            throw new IllegalArgumentException("Field " + i + " is " + tupleDesc.getType(i) + ", not " + expected);
+        }
+    }
+}
@@ -1,26 +1,56 @@
 package com.aerodb.storage;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 
+/**
+ * Field types and their Java values:
+ * INT Integer, LONG Long, DOUBLE Double, BOOLEAN Boolean, TIMESTAMP Instant (stored as
+ * microseconds since the epoch), STRING String (length-prefixed UTF-8), and CHAR String
+ * (exactly n bytes of UTF-8, padded with spaces; n is given per field in the TupleDesc).
+ */
 public enum Type {
-    INT,
-    STRING;
+    INT(4),
+    STRING(0),
+    LONG(8),
+    DOUBLE(8),
+    BOOLEAN(1),
+    TIMESTAMP(8),
+    CHAR(0);
 
+    private final int len;
+
+    Type(int len) {
+        this.len = len;
+    }
+
+    // Width in bytes, 0 for STRING (variable) and CHAR (width set per field)
     public int getLen() {
-        if (this == INT) {
-            return 4;
-        }
-        return 0;
+        return len;
+    }
 
+    // False only for STRING: every other field takes the same bytes in every row
+    public boolean isFixedWidth() {
+        return this != STRING;
     }
 
     // Helper to parse bytes into a Java Objectdepending upon the type
     public Object parse(byte[] data, int offset) {
-        if (this == INT) {
-            return (data[offset] << 24) | ((data[offset + 1] & 0xFF) << 16) |
-                    ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
-        } else {
-            return new String(data, StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        switch (this) {
+            case INT:
+                return buf.getInt(offset);
+            case LONG:
+                return buf.getLong(offset);
+            case DOUBLE:
+                return buf.getDouble(offset);
+            case BOOLEAN:
+                return data[offset] != 0;
+            case TIMESTAMP:
+                return Tuple.instantOf(buf.getLong(offset));
+            default:
+                return new String(data, StandardCharsets.UTF_8);
         }
     }
 }
@@ -0,0 +1,373 @@
+package com.aerodb.wal;
+
+import com.aerodb.buffer.BufferManager;
+import com.aerodb.storage.Page;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead log shared by all the files of a database.
+ * Every change to a pooled page is logged as a redo record holding the new bytes of the
+ * changed range, and the page is stamped with the record's LSN (its end position in the
+ * log). A BufferManager flushes the log up to a page's LSN before writing the page, so
+ * after a crash the log always has every change that might be missing from the files.
+ *
+ * Commits use group commit: appends only copy into a memory buffer, and commit() waits
+ * until the log is on disk. One committer at a time writes and fsyncs everything
+ * appended so far; committers arriving meanwhile are covered by the next single fsync.
+ *
+ * Usage: register() every file, then call recover() once before using any of them.
+ * Memory-mapped files cannot be registered: the OS writes their pages back whenever it
+ * likes, so a page could reach the file before the log records of its changes.
+ *
+ * Layout:
+ * [Header: Magic(4B), Unused(4B), BaseLsn(8B)]
+ * [Record: Length(4B), FileId(4B), PageId(4B), Offset(4B), Bytes(Length), CRC32C(4B)]...
+ */
+public class LogManager {
+    private static final int MAGIC = 0x57414C31; // "WAL1"
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_OVERHEAD = 20;
+    // A bigger backlog than this is written out by the appender itself
+    private static final int FLUSH_THRESHOLD = 4 << 20;
+
+    private final File file;
+    private FileChannel channel;
+    // LSN of the first byte after the header
+    private long baseLsn;
+
+    private final Map<Integer, BufferManager> files = new TreeMap<>();
+    private boolean recovered;
+
+    // Appends go to 'buffer' under appendLock; the flusher swaps it with 'spare'
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+    private ByteBuffer spare = ByteBuffer.allocateDirect(1 << 20);
+    private long appendedLsn;
+    private final CRC32C crc = new CRC32C();
+
+    // One flusher at a time; everyone else waits here and usually finds their LSN flushed
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private volatile long flushedLsn;
+    private long fsyncs;
+
+    public LogManager(File f) {
+        this.file = f;
+        try {
+            this.channel = FileChannel.open(f.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() < HEADER_SIZE) {
+                writeHeader(channel, 0);
+                channel.truncate(HEADER_SIZE);
+                channel.force(true);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            if (header.getInt(0) != MAGIC) {
+                throw new IllegalStateException(f.getPath() + " is not a log file");
+            }
+            this.baseLsn = header.getLong(8);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open log file " + f.getPath(), e);
+        }
+    }
+
+    /**
+     * Puts a file under the log. 'fileId' names it in log records, so it must stay the same
+     * across restarts. The file must not be memory-mapped.
+     */
+    public synchronized void register(int fileId, BufferManager bufferManager) {
+        if (recovered) {
+            throw new IllegalStateException("Files must be registered before recover()");
+        }
+        if (bufferManager.getDiskManager().isMemoryMapped()) {
+            throw new IllegalArgumentException("File id " + fileId + " is memory-mapped: its pages could be written before the log");
+        }
+        if (files.putIfAbsent(fileId, bufferManager) != null) {
+            throw new IllegalArgumentException("File id " + fileId + " is already registered");
+        }
+    }
+
+    /**
+     * Redo pass: replays every logged change that is newer than the page it applies to,
+     * writes the result to the files and starts a fresh log. Then turns on logging.
+     */
+    public synchronized void recover() {
+        if (recovered) {
+            throw new IllegalStateException("Already recovered");
+        }
+        long end = redo();
+        appendedLsn = end;
+        flushedLsn = end;
+        for (BufferManager bm : files.values()) {
+            bm.checkpoint();
+        }
+        truncate(end);
+        recovered = true;
+        for (Map.Entry<Integer, BufferManager> e : files.entrySet()) {
+            e.getValue().setLog(this, e.getKey());
+        }
+    }
+
+    // Applies the records of the log, stopping at the first incomplete or corrupt one.
+    // Returns the LSN after the last good record
+    private long redo() {
+        long lsn = baseLsn;
+        try {
+            channel.position(HEADER_SIZE);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+            byte[] data = new byte[Page.USABLE_SIZE];
+            CRC32C check = new CRC32C();
+            while (true) {
+                int length, fileId, pageId, offset;
+                try {
+                    length = in.readInt();
+                    // A record never holds an empty range: a length no record can have ends the log
+                    if (length <= 0 || length > Page.USABLE_SIZE) {
+                        break;
+                    }
+                    fileId = in.readInt();
+                    pageId = in.readInt();
+                    offset = in.readInt();
+                    in.readFully(data, 0, length);
+                    int sum = in.readInt();
+                    check.reset();
+                    check.update(ByteBuffer.allocate(12).putInt(fileId).putInt(pageId).putInt(offset).flip());
+                    check.update(data, 0, length);
+                    if ((int) check.getValue() != sum || offset < 0 || offset + length > Page.USABLE_SIZE) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break; // torn tail: the crash happened while it was written
+                }
+                lsn += RECORD_OVERHEAD + length;
+                BufferManager bm = files.get(fileId);
+                if (bm != null) {
+                    apply(bm, pageId, offset, data, length, lsn);
+                }
+            }
+            // Drop the torn tail so new records follow the last good one
+            channel.truncate(HEADER_SIZE + (lsn - baseLsn));
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading log file " + file.getPath(), e);
+        }
+        return lsn;
+    }
+
+    private void apply(BufferManager bm, int pageId, int offset, byte[] data, int length, long lsn) {
+        // The page may never have been written before the crash
+        while (bm.getDiskManager().getNumPages() <= pageId) {
+            bm.allocateNewPage();
+        }
+        Page page = bm.pinPage(pageId);
+        try {
+            if (page.getLsn() >= lsn) {
+                return; // the page already has this change
+            }
+            page.setBytes(offset, data, 0, length);
+            page.clearChanges();
+            page.setLsn(lsn);
+            bm.setPageDirty(pageId, true);
+        } finally {
+            bm.unpinPage(pageId, false);
+        }
+    }
+
+    /**
+     * Logs the changes made to a page since it was last logged and returns the new
+     * page LSN, or 0 if there was nothing to log. The caller must hold the page's
+     * exclusive latch (or otherwise be the only thread touching it).
+     */
+    public long logPage(int fileId, Page page) {
+        int numChanges = page.getNumChanges();
+        if (numChanges == 0) {
+            return 0;
+        }
+        long lsn;
+        int backlog;
+        appendLock.lock();
+        try {
+            // One record per changed range
+            for (int i = 0; i < numChanges; i++) {
+                int from = page.getChangeFrom(i);
+                int length = page.getChangeTo(i) - from;
+                if (length == 0) {
+                    continue;
+                }
+                int size = RECORD_OVERHEAD + length;
+                if (buffer.remaining() < size) {
+                    grow(size);
+                }
+                int start = buffer.position();
+                buffer.putInt(length).putInt(fileId).putInt(page.getPageId()).putInt(from);
+                buffer.put(buffer.position(), page.getBuffer(), from, length);
+                buffer.position(buffer.position() + length);
+                crc.reset();
+                crc.update(buffer.duplicate().position(start + 4).limit(buffer.position()));
+                buffer.putInt((int) crc.getValue());
+                appendedLsn += size;
+            }
+            lsn = appendedLsn;
+            backlog = buffer.position();
+        } finally {
+            appendLock.unlock();
+        }
+        page.clearChanges();
+        if (backlog >= FLUSH_THRESHOLD) {
+            flush(lsn);
+        }
+        return lsn;
+    }
+
+    // Caller holds appendLock
+    private void grow(int needed) {
+        int capacity = buffer.capacity();
+        while (capacity - buffer.position() < needed) {
+            capacity *= 2;
+        }
+        ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+        grown.put(buffer.flip());
+        buffer = grown;
+    }
+
+    /**
+     * Makes every change logged so far durable. Concurrent callers share one fsync.
+     */
+    public void commit() {
+        long lsn;
+        appendLock.lock();
+        try {
+            lsn = appendedLsn;
+        } finally {
+            appendLock.unlock();
+        }
+        flush(lsn);
+    }
+
+    /**
+     * Makes the log durable at least up to 'lsn'.
+     */
+    public void flush(long lsn) {
+        if (flushedLsn >= lsn) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            // Whoever held the lock before us may already have flushed our records
+            if (flushedLsn >= lsn) {
+                return;
+            }
+            ByteBuffer toWrite;
+            long end;
+            appendLock.lock();
+            try {
+                toWrite = buffer;
+                buffer = spare;
+                spare = toWrite;
+                end = appendedLsn;
+            } finally {
+                appendLock.unlock();
+            }
+            toWrite.flip();
+            long pos = HEADER_SIZE + (end - toWrite.remaining() - baseLsn);
+            while (toWrite.hasRemaining()) {
+                pos += channel.write(toWrite, pos);
+            }
+            toWrite.clear();
+            channel.force(false);
+            fsyncs++;
+            flushedLsn = end;
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing log file " + file.getPath(), e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Writes every dirty page of every file and starts a fresh log, so the log does not
+     * grow without bound and recovery has less to replay.
+     */
+    public void checkpoint() {
+        long start;
+        appendLock.lock();
+        try {
+            start = appendedLsn;
+        } finally {
+            appendLock.unlock();
+        }
+        // Every change before 'start' is in a page that is dirty now or being written by
+        // another thread; bm.checkpoint() writes the first kind and waits for the second
+        for (BufferManager bm : files.values()) {
+            bm.checkpoint();
+        }
+        truncate(start);
+    }
+
+    // Drops the log before 'lsn': the rest is copied to a new file that replaces the old one
+    private void truncate(long lsn) {
+        flushLock.lock();
+        try {
+            // Records before 'lsn' may still be in memory; they must be in the file first
+            flush(lsn);
+            long end = flushedLsn;
+            File tmp = new File(file.getPath() + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writeHeader(out, lsn);
+                // transferTo() writes at the channel position, which writeHeader() leaves at 0
+                out.position(HEADER_SIZE);
+                long from = HEADER_SIZE + (lsn - baseLsn);
+                long count = end - lsn;
+                long copied = 0;
+                while (copied < count) {
+                    copied += channel.transferTo(from + copied, count - copied, out);
+                }
+                out.force(true);
+            }
+            channel.close();
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            baseLsn = lsn;
+        } catch (IOException e) {
+            throw new RuntimeException("Error truncating log file " + file.getPath(), e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private static void writeHeader(FileChannel ch, long base) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(0).putLong(base).flip();
+        while (header.hasRemaining()) {
+            ch.write(header, header.position());
+        }
+    }
+
+    public long getFlushedLsn() {
+        return flushedLsn;
+    }
+
+    // Number of fsyncs so far; with group commit far fewer than commits
+    public long getSyncCount() {
+        return fsyncs;
+    }
+
+    public void close() throws IOException {
+        commit();
+        channel.close();
+    }
+}
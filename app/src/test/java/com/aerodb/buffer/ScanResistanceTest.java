@@ -0,0 +1,67 @@
+package com.aerodb.buffer;
+
+import com.aerodb.storage.HeapFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScanResistanceTest {
+    private static final int FRAMES = 200;
+    private static final int HOT = 100;
+    private static final int SCAN = 2000;
+
+    @TempDir
+    Path dir;
+
+    // Pins every hot page twice, then scans SCAN other pages once each with read-ahead on,
+    // and returns how many hot pages had to be read again afterwards
+    private int hotPagesLostToScan(IntFunction<ReplacementPolicy> policyFactory) throws IOException {
+        HeapFile heapFile = new HeapFile(dir.resolve("scan.db").toFile());
+        while (heapFile.getNumPages() < HOT + SCAN) {
+            heapFile.allocatePage();
+        }
+        BufferManager bufferManager = new BufferManager(heapFile, FRAMES, policyFactory);
+        try {
+            for (int round = 0; round < 2; round++) {
+                for (int pageId = 0; pageId < HOT; pageId++) {
+                    bufferManager.pinPage(pageId);
+                    bufferManager.unpinPage(pageId, false);
+                }
+            }
+            bufferManager.setReadAhead(true);
+            for (int pageId = HOT; pageId < HOT + SCAN; pageId++) {
+                bufferManager.pinPage(pageId);
+                bufferManager.unpinPage(pageId, false);
+            }
+            assertTrue(bufferManager.getPrefetchedPages() > 0, "the scan was read ahead");
+
+            // Without read-ahead, so every lost page shows up as a miss
+            bufferManager.setReadAhead(false);
+            long misses = bufferManager.getReplacementPolicy().getMisses();
+            for (int pageId = 0; pageId < HOT; pageId++) {
+                bufferManager.pinPage(pageId);
+                bufferManager.unpinPage(pageId, false);
+            }
+            return (int) (bufferManager.getReplacementPolicy().getMisses() - misses);
+        } finally {
+            bufferManager.close();
+            heapFile.close();
+        }
+    }
+
+    @Test
+    void lruKKeepsHotPagesThroughAPrefetchedScan() throws IOException {
+        assertEquals(0, hotPagesLostToScan(LruKPolicy::new));
+    }
+
+    @Test
+    void arcKeepsHotPagesThroughAPrefetchedScan() throws IOException {
+        assertEquals(0, hotPagesLostToScan(ArcPolicy::new));
+    }
+}
@@ -0,0 +1,117 @@
+package com.aerodb.exec;
+
+import com.aerodb.storage.Tuple;
+import com.aerodb.storage.TupleDesc;
+import com.aerodb.storage.Type;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ExternalSortTest {
+    // 3 frames: runs of two pages, merged two at a time, so a few thousand rows take
+    // several merge passes
+    private static final int MIN_MEMORY = 3;
+
+    private static final TupleDesc ROW = new TupleDesc();
+
+    static {
+        ROW.addField(Type.INT, "key");
+        ROW.addField(Type.STRING, "name");
+        ROW.addField(Type.INT, "seq");
+    }
+
+    // Few distinct keys, so most rows tie with many others; seq is the input position
+    private static List<Tuple> rows(int n, long seed) {
+        Random random = new Random(seed);
+        List<Tuple> rows = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Tuple t = new Tuple(ROW);
+            t.setField(0, random.nextInt(50) - 25);
+            t.setField(1, "name" + random.nextInt(200));
+            t.setField(2, i);
+            rows.add(t);
+        }
+        return rows;
+    }
+
+    private static List<Tuple> sort(List<Tuple> rows, int memoryPages, int... sortFields) {
+        List<Tuple> out = new ArrayList<>();
+        try (ExternalSort sort = new ExternalSort(new ListScan(ROW, rows), memoryPages, sortFields)) {
+            sort.open();
+            Tuple t;
+            while ((t = sort.next()) != null) {
+                out.add(t);
+            }
+            assertNull(sort.next());
+        }
+        return out;
+    }
+
+    // Compares every field, so a stable sort and an unstable one give different results
+    private static void assertSameRows(List<Tuple> expected, List<Tuple> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            for (int f = 0; f < ROW.numFields(); f++) {
+                assertEquals(expected.get(i).getField(f), actual.get(i).getField(f), "row " + i + " field " + f);
+            }
+        }
+    }
+
+    @Test
+    void multiPassSortMatchesStableInMemorySort() {
+        List<Tuple> rows = rows(20000, 1);
+        List<Tuple> expected = new ArrayList<>(rows);
+        // List.sort is stable: equal keys keep their seq order
+        expected.sort(Comparator.comparing(t -> (Integer) t.getField(0)));
+        assertSameRows(expected, sort(rows, MIN_MEMORY, 0));
+    }
+
+    @Test
+    void sortsOnSeveralFieldsOfDifferentTypes() {
+        List<Tuple> rows = rows(20000, 2);
+        List<Tuple> expected = new ArrayList<>(rows);
+        expected.sort(Comparator.<Tuple, String>comparing(t -> (String) t.getField(1))
+                .thenComparing(t -> (Integer) t.getField(0)));
+        assertSameRows(expected, sort(rows, MIN_MEMORY, 1, 0));
+    }
+
+    @Test
+    void inputThatFitsInMemoryIsSortedTheSameWay() {
+        List<Tuple> rows = rows(500, 3);
+        List<Tuple> expected = new ArrayList<>(rows);
+        expected.sort(Comparator.comparing(t -> (Integer) t.getField(0)));
+        assertSameRows(expected, sort(rows, 64, 0));
+    }
+
+    @Test
+    void emptyInputGivesNoRows() {
+        assertEquals(0, sort(new ArrayList<>(), MIN_MEMORY, 0).size());
+    }
+
+    @Test
+    void reopeningSortsAgain() {
+        List<Tuple> rows = rows(5000, 4);
+        try (ExternalSort sort = new ExternalSort(new ListScan(ROW, rows), MIN_MEMORY, 0)) {
+            for (int round = 0; round < 2; round++) {
+                sort.open();
+                int count = 0;
+                while (sort.next() != null) {
+                    count++;
+                }
+                assertEquals(rows.size(), count);
+            }
+        }
+    }
+
+    @Test
+    void rejectsTooLittleMemory() {
+        assertThrows(IllegalArgumentException.class, () -> new ExternalSort(new ListScan(ROW, new ArrayList<>()), 2, 0));
+    }
+}
@@ -0,0 +1,108 @@
+package com.aerodb.exec;
+
+import com.aerodb.storage.Tuple;
+import com.aerodb.storage.TupleDesc;
+import com.aerodb.storage.Type;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HashJoinTest {
+    // Far below the size of the build inputs here, so the join spills and partitions
+    private static final long SMALL_MEMORY = 32 << 10;
+
+    private static final TupleDesc PROBE = new TupleDesc();
+    private static final TupleDesc BUILD = new TupleDesc();
+
+    static {
+        PROBE.addField(Type.INT, "id");
+        PROBE.addField(Type.INT, "key");
+        BUILD.addField(Type.INT, "key");
+        BUILD.addField(Type.STRING, "name");
+    }
+
+    private static List<Tuple> probeRows(int n, int keys, long seed) {
+        Random random = new Random(seed);
+        List<Tuple> rows = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Tuple t = new Tuple(PROBE);
+            t.setField(0, i);
+            t.setField(1, random.nextInt(keys));
+            rows.add(t);
+        }
+        return rows;
+    }
+
+    private static List<Tuple> buildRows(int n, int keys, long seed) {
+        Random random = new Random(seed);
+        List<Tuple> rows = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Tuple t = new Tuple(BUILD);
+            t.setField(0, random.nextInt(keys));
+            t.setField(1, "build" + i);
+            rows.add(t);
+        }
+        return rows;
+    }
+
+    // Output rows as "id,probeKey,buildKey,name", sorted: the join gives no order across partitions
+    private static List<String> join(List<Tuple> probe, List<Tuple> build, long memoryBytes) {
+        List<String> out = new ArrayList<>();
+        try (HashJoin join = new HashJoin(new ListScan(PROBE, probe), 1, new ListScan(BUILD, build), 0, memoryBytes)) {
+            join.open();
+            Tuple t;
+            while ((t = join.next()) != null) {
+                out.add(t.getField(0) + "," + t.getField(1) + "," + t.getField(2) + "," + t.getField(3));
+            }
+        }
+        Collections.sort(out);
+        return out;
+    }
+
+    private static List<String> nestedLoopJoin(List<Tuple> probe, List<Tuple> build) {
+        Map<Integer, List<Tuple>> byKey = new HashMap<>();
+        for (Tuple b : build) {
+            byKey.computeIfAbsent((Integer) b.getField(0), k -> new ArrayList<>()).add(b);
+        }
+        List<String> out = new ArrayList<>();
+        for (Tuple p : probe) {
+            for (Tuple b : byKey.getOrDefault((Integer) p.getField(1), List.of())) {
+                out.add(p.getField(0) + "," + p.getField(1) + "," + b.getField(0) + "," + b.getField(1));
+            }
+        }
+        Collections.sort(out);
+        return out;
+    }
+
+    @Test
+    void spillingJoinGivesTheSameRowsAsInMemory() {
+        List<Tuple> probe = probeRows(20000, 8000, 1);
+        List<Tuple> build = buildRows(10000, 10000, 2);
+        List<String> expected = nestedLoopJoin(probe, build);
+        assertEquals(expected, join(probe, build, HashJoin.DEFAULT_MEMORY));
+        assertEquals(expected, join(probe, build, SMALL_MEMORY));
+    }
+
+    @Test
+    void singleHotKeyStillJoinsEveryPair() {
+        // Every build row has the same key, so no split on the hash can make a partition smaller
+        List<Tuple> build = buildRows(5000, 1, 3);
+        List<Tuple> probe = probeRows(200, 4, 4);
+        List<String> expected = nestedLoopJoin(probe, build);
+        List<String> spilled = join(probe, build, SMALL_MEMORY);
+        assertEquals(expected.size(), spilled.size());
+        assertEquals(expected, spilled);
+    }
+
+    @Test
+    void emptyBuildGivesNoRows() {
+        assertEquals(List.of(), join(probeRows(1000, 10, 5), new ArrayList<>(), SMALL_MEMORY));
+    }
+}
@@ -0,0 +1,41 @@
+package com.aerodb.exec;
+
+import com.aerodb.storage.Tuple;
+import com.aerodb.storage.TupleDesc;
+
+import java.util.List;
+
+// Rows from a list, as an operator: the input of the operator tests
+final class ListScan implements Operator {
+    private final TupleDesc tupleDesc;
+    private final List<Tuple> rows;
+    private int next = -1;
+
+    ListScan(TupleDesc tupleDesc, List<Tuple> rows) {
+        this.tupleDesc = tupleDesc;
+        this.rows = rows;
+    }
+
+    @Override
+    public void open() {
+        next = 0;
+    }
+
+    @Override
+    public Tuple next() {
+        if (next < 0 || next >= rows.size()) {
+            return null;
+        }
+        return rows.get(next++);
+    }
+
+    @Override
+    public void close() {
+        next = -1;
+    }
+
+    @Override
+    public TupleDesc getTupleDesc() {
+        return tupleDesc;
+    }
+}
@@ -0,0 +1,130 @@
+package com.aerodb.index;
+
+import com.aerodb.buffer.BufferManager;
+import com.aerodb.storage.HeapFile;
+import com.aerodb.storage.RecordId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BTreeBulkLoaderTest {
+    @TempDir
+    Path dir;
+
+    private final class Index {
+        final HeapFile heapFile;
+        final BufferManager bufferManager;
+        final BTreeFile tree;
+
+        Index(String name) {
+            heapFile = new HeapFile(dir.resolve(name).toFile());
+            bufferManager = new BufferManager(heapFile, 64);
+            tree = new BTreeFile(bufferManager);
+        }
+
+        void close() throws IOException {
+            bufferManager.flushAll();
+            bufferManager.close();
+            heapFile.close();
+        }
+    }
+
+    // Keys 0, 3, 6, ...: the gaps leave room for inserts after the load
+    private static int keyAt(int i) {
+        return i * 3;
+    }
+
+    private static void load(BTreeFile tree, int n, double fillFactor) {
+        BTreeBulkLoader loader = tree.bulkLoader(fillFactor);
+        for (int i = 0; i < n; i++) {
+            loader.add(keyAt(i), new RecordId(i, i & 0xFF));
+        }
+        loader.finish();
+    }
+
+    private static void assertLoaded(BTreeFile tree, int n) {
+        assertEquals(n, tree.getKeyCount());
+        for (int i = 0; i < n; i++) {
+            RecordId rid = tree.find(keyAt(i));
+            assertNotNull(rid, "key " + keyAt(i));
+            assertEquals(i, rid.pageId);
+        }
+        assertNull(tree.find(-1));
+        assertNull(tree.find(1));
+        assertNull(tree.find(keyAt(n)));
+        int count = 0;
+        try (BTreeScan scan = tree.scan(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+            while (scan.hasNext()) {
+                scan.next();
+                assertEquals(keyAt(count), scan.getKey());
+                count++;
+            }
+        }
+        assertEquals(n, count);
+    }
+
+    // Sizes around a full leaf and a full internal node, with full and half-full pages
+    @Test
+    void loadedTreesSurviveReopen() throws IOException {
+        int leaf = BTreeLeafPage.MAX_ENTRIES;
+        int[] sizes = {0, 1, leaf - 1, leaf, leaf + 1, leaf * (BTreeInternalPage.MAX_KEYS + 1) + 1, 300000};
+        for (double fillFactor : new double[] {1.0, 0.5}) {
+            for (int n : sizes) {
+                String name = "bulk-" + n + "-" + fillFactor + ".db";
+                Index index = new Index(name);
+                load(index.tree, n, fillFactor);
+                int height = index.tree.getHeight();
+                index.close();
+
+                Index reopened = new Index(name);
+                assertEquals(height, reopened.tree.getHeight());
+                assertLoaded(reopened.tree, n);
+                reopened.close();
+            }
+        }
+    }
+
+    @Test
+    void fullLeavesSplitOnLaterInserts() throws IOException {
+        Index index = new Index("t.db");
+        int n = 100000;
+        load(index.tree, n, 1.0);
+        // Every leaf is full, so each of these splits one
+        for (int i = 0; i < n; i += 50) {
+            index.tree.insert(keyAt(i) + 1, new RecordId(-1, i));
+        }
+        index.close();
+
+        Index reopened = new Index("t.db");
+        assertEquals(n + n / 50, reopened.tree.getKeyCount());
+        for (int i = 0; i < n; i += 50) {
+            assertEquals(i, reopened.tree.find(keyAt(i) + 1).slotNumber);
+            assertEquals(i, reopened.tree.find(keyAt(i)).pageId);
+        }
+        reopened.close();
+    }
+
+    @Test
+    void rejectsBadInput() throws IOException {
+        Index index = new Index("t.db");
+        assertThrows(IllegalArgumentException.class, () -> index.tree.bulkLoader(0));
+        assertThrows(IllegalArgumentException.class, () -> index.tree.bulkLoader(1.5));
+        BTreeBulkLoader loader = index.tree.bulkLoader(1.0);
+        loader.add(5, new RecordId(0, 0));
+        loader.add(5, new RecordId(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> loader.add(4, new RecordId(0, 2)));
+        loader.finish();
+        assertThrows(IllegalStateException.class, () -> loader.add(6, new RecordId(0, 3)));
+        assertTrue(index.tree.getKeyCount() > 0);
+        assertThrows(IllegalStateException.class, () -> index.tree.bulkLoader(1.0));
+        index.close();
+    }
+}
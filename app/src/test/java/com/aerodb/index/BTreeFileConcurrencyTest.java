@@ -0,0 +1,121 @@
+package com.aerodb.index;
+
+import com.aerodb.buffer.BufferManager;
+import com.aerodb.storage.HeapFile;
+import com.aerodb.storage.RecordId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BTreeFileConcurrencyTest {
+    private static final int WRITERS = 4;
+    private static final int READERS = 2;
+    // Enough keys for the root to split twice while the writers run
+    private static final int PER_WRITER = 60000;
+
+    @TempDir
+    Path dir;
+
+    // Writer w inserts the even keys w*2, (WRITERS+w)*2, ...: all writers fill the same
+    // leaves at once. Readers look up keys a writer has already finished
+    @Test
+    void concurrentInsertsAndFindsAcrossRootSplits() throws Exception {
+        HeapFile heapFile = new HeapFile(dir.resolve("index.db").toFile());
+        BufferManager bufferManager = new BufferManager(heapFile, 256);
+        BTreeFile tree = new BTreeFile(bufferManager);
+
+        AtomicIntegerArray done = new AtomicIntegerArray(WRITERS);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        List<Thread> writers = new ArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            writers.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < PER_WRITER; i++) {
+                        int key = keyOf(writer, i);
+                        tree.insert(key, new RecordId(key, writer));
+                        done.set(writer, i + 1);
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }));
+        }
+        for (int r = 0; r < READERS; r++) {
+            long seed = r;
+            readers.add(new Thread(() -> {
+                Random random = new Random(seed);
+                try {
+                    while (writing.get()) {
+                        int writer = random.nextInt(WRITERS);
+                        int finished = done.get(writer);
+                        if (finished > 0) {
+                            int key = keyOf(writer, random.nextInt(finished));
+                            RecordId rid = tree.find(key);
+                            assertNotNull(rid, () -> "key " + key + " was inserted but is not found");
+                            assertEquals(key, rid.pageId);
+                        }
+                        assertNull(tree.find(random.nextInt() | 1), "odd keys are never inserted");
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+        writers.forEach(Thread::start);
+        for (Thread t : writers) {
+            t.join();
+        }
+        writing.set(false);
+        for (Thread t : readers) {
+            t.join();
+        }
+        if (!errors.isEmpty()) {
+            throw new AssertionError("A worker failed", errors.peek());
+        }
+
+        assertTrue(tree.getHeight() >= 3, "the root split at least twice");
+        assertEquals((long) WRITERS * PER_WRITER, tree.getKeyCount());
+        for (int w = 0; w < WRITERS; w++) {
+            for (int i = 0; i < PER_WRITER; i++) {
+                int key = keyOf(w, i);
+                RecordId rid = tree.find(key);
+                assertNotNull(rid, () -> "key " + key + " is lost");
+                assertEquals(w, rid.slotNumber);
+            }
+        }
+        long scanned = 0;
+        int last = Integer.MIN_VALUE;
+        try (BTreeScan scan = tree.scan(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+            while (scan.hasNext()) {
+                scan.next();
+                assertTrue(scan.getKey() > last, "keys come out in order, once each");
+                last = scan.getKey();
+                scanned++;
+            }
+        }
+        assertEquals(tree.getKeyCount(), scanned);
+
+        bufferManager.close();
+        heapFile.close();
+    }
+
+    private static int keyOf(int writer, int i) {
+        return (i * WRITERS + writer) * 2;
+    }
+}
@@ -0,0 +1,177 @@
+package com.aerodb.index;
+
+import com.aerodb.buffer.BufferManager;
+import com.aerodb.storage.HeapFile;
+import com.aerodb.storage.RecordId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BTreeFileTest {
+    // Enough keys for internal nodes to split, so the tree is at least three levels deep
+    private static final int KEYS = 200000;
+
+    @TempDir
+    Path dir;
+
+    private final class Index {
+        final HeapFile heapFile;
+        final BufferManager bufferManager;
+        final BTreeFile tree;
+
+        Index() {
+            heapFile = new HeapFile(dir.resolve("index.db").toFile());
+            bufferManager = new BufferManager(heapFile, 64);
+            tree = new BTreeFile(bufferManager);
+        }
+
+        void close() throws IOException {
+            bufferManager.flushAll();
+            bufferManager.close();
+            heapFile.close();
+        }
+    }
+
+    // Even keys only, so every odd key is absent. Both ends of the int range are included
+    private static List<Integer> shuffledKeys(int n, long seed) {
+        List<Integer> keys = new ArrayList<>(n);
+        keys.add(Integer.MIN_VALUE);
+        keys.add(Integer.MAX_VALUE - 1);
+        for (int i = 1; keys.size() < n; i++) {
+            keys.add(i * 2);
+        }
+        Collections.shuffle(keys, new Random(seed));
+        return keys;
+    }
+
+    private static RecordId ridOf(int key) {
+        return new RecordId(key >>> 16, key & 0xFFFF);
+    }
+
+    private static void assertFound(BTreeFile tree, int key) {
+        RecordId rid = tree.find(key);
+        assertNotNull(rid, () -> "key " + key + " is lost");
+        assertEquals(ridOf(key).pageId, rid.pageId);
+        assertEquals(ridOf(key).slotNumber, rid.slotNumber);
+    }
+
+    private static long assertScanInOrder(BTreeFile tree) {
+        long count = 0;
+        long last = Long.MIN_VALUE;
+        try (BTreeScan scan = tree.scan(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+            while (scan.hasNext()) {
+                scan.next();
+                assertTrue(scan.getKey() > last, "keys come out in order, once each");
+                last = scan.getKey();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    void deepTreeSurvivesReopen() throws IOException {
+        List<Integer> keys = shuffledKeys(KEYS, 1);
+        Index index = new Index();
+        for (int key : keys) {
+            index.tree.insert(key, ridOf(key));
+        }
+        int root = index.tree.getRootPageId();
+        int height = index.tree.getHeight();
+        assertTrue(height >= 3, "internal nodes split");
+        index.close();
+
+        Index reopened = new Index();
+        assertEquals(root, reopened.tree.getRootPageId());
+        assertEquals(height, reopened.tree.getHeight());
+        assertEquals(KEYS, reopened.tree.getKeyCount());
+        for (int key : keys) {
+            assertFound(reopened.tree, key);
+        }
+        assertNull(reopened.tree.find(Integer.MAX_VALUE));
+        assertNull(reopened.tree.find(3));
+        assertEquals(KEYS, assertScanInOrder(reopened.tree));
+
+        // The reopened tree takes new keys in the gaps
+        for (int i = 0; i < 10000; i++) {
+            reopened.tree.insert(i * 2 + 1, ridOf(i * 2 + 1));
+        }
+        reopened.close();
+
+        Index again = new Index();
+        assertEquals(KEYS + 10000, again.tree.getKeyCount());
+        assertFound(again.tree, 19999);
+        assertEquals(KEYS + 10000, assertScanInOrder(again.tree));
+        again.close();
+    }
+
+    @Test
+    void keyCountIsSavedByACheckpoint() throws IOException {
+        Index index = new Index();
+        index.tree.insert(1, ridOf(1));
+        index.tree.insert(2, ridOf(2));
+        // No root split, so only the checkpoint hook writes the new count
+        index.bufferManager.checkpoint();
+        index.bufferManager.close();
+        index.heapFile.close();
+
+        Index reopened = new Index();
+        assertEquals(2, reopened.tree.getKeyCount());
+        reopened.close();
+    }
+
+    @Test
+    void batchesRoundTrip() throws IOException {
+        Index index = new Index();
+        // Single inserts first, so the batch fills leaves that are already there
+        List<Integer> keys = shuffledKeys(KEYS, 2);
+        for (int key : keys.subList(0, KEYS / 2)) {
+            index.tree.insert(key, ridOf(key));
+        }
+        int[] batch = new int[KEYS / 2];
+        RecordId[] rids = new RecordId[batch.length];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = keys.get(KEYS / 2 + i);
+            rids[i] = ridOf(batch[i]);
+        }
+        index.tree.insertBatch(batch, rids);
+        index.tree.insertBatch(new int[0], new RecordId[0]);
+        assertEquals(KEYS, index.tree.getKeyCount());
+        index.close();
+
+        Index reopened = new Index();
+        assertEquals(KEYS, reopened.tree.getKeyCount());
+        // Unsorted, with absent keys and repeats; results follow the order asked
+        int[] lookups = new int[5000];
+        Random random = new Random(3);
+        for (int i = 0; i < lookups.length; i++) {
+            lookups[i] = i % 3 == 0 ? random.nextInt() | 1 : keys.get(random.nextInt(KEYS));
+        }
+        lookups[1] = lookups[2];
+        RecordId[] found = reopened.tree.findBatch(lookups);
+        assertEquals(lookups.length, found.length);
+        for (int i = 0; i < lookups.length; i++) {
+            if (i % 3 == 0) {
+                assertNull(found[i], "odd keys are never inserted");
+            } else {
+                assertNotNull(found[i]);
+                assertEquals(ridOf(lookups[i]).pageId, found[i].pageId);
+                assertEquals(ridOf(lookups[i]).slotNumber, found[i].slotNumber);
+            }
+        }
+        assertEquals(0, reopened.tree.findBatch(new int[0]).length);
+        assertEquals(KEYS, assertScanInOrder(reopened.tree));
+        reopened.close();
+    }
+}
@@ -0,0 +1,178 @@
+package com.aerodb.index;
+
+import com.aerodb.buffer.BufferManager;
+import com.aerodb.storage.HeapFile;
+import com.aerodb.storage.RecordId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VarBTreeFileTest {
+    @TempDir
+    Path dir;
+
+    private final class Index {
+        final HeapFile heapFile;
+        final BufferManager bufferManager;
+        final VarBTreeFile tree;
+
+        Index() {
+            heapFile = new HeapFile(dir.resolve("index.db").toFile());
+            bufferManager = new BufferManager(heapFile, 64);
+            tree = new VarBTreeFile(bufferManager);
+        }
+
+        void close() throws IOException {
+            bufferManager.flushAll();
+            bufferManager.close();
+            heapFile.close();
+        }
+    }
+
+    private static void insertAll(VarBTreeFile tree, List<byte[]> keys) {
+        for (int i = 0; i < keys.size(); i++) {
+            tree.insert(keys.get(i), new RecordId(i, i & 0xFF));
+        }
+    }
+
+    private static void assertAllFound(VarBTreeFile tree, List<byte[]> keys) {
+        assertEquals(keys.size(), tree.getKeyCount());
+        for (int i = 0; i < keys.size(); i++) {
+            RecordId rid = tree.find(keys.get(i));
+            int index = i;
+            assertNotNull(rid, () -> "key " + index + " is lost");
+            assertEquals(i, rid.pageId);
+        }
+    }
+
+    // Longest prefix shared by every key of any leaf in the file
+    private static int longestLeafPrefix(Index index) {
+        int longest = 0;
+        for (int pageId = 1; pageId < index.heapFile.getNumPages(); pageId++) {
+            VarBTreePage node = new VarBTreePage(index.bufferManager.pinPage(pageId), VarBTreePage.TYPE_LEAF);
+            if (node.isLeaf()) {
+                longest = Math.max(longest, node.getPrefixLength());
+            }
+            index.bufferManager.unpinPage(pageId, false);
+        }
+        return longest;
+    }
+
+    @Test
+    void keysWithALongCommonPrefixSurviveReopen() throws IOException {
+        // Every key starts with the same 900 bytes, so every split is between keys
+        // that only differ after them
+        byte[] prefix = new byte[900];
+        Arrays.fill(prefix, (byte) 'p');
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < 60000; i++) {
+            byte[] key = Arrays.copyOf(prefix, prefix.length + 4 + i % 7);
+            key[prefix.length] = (byte) (i >>> 24);
+            key[prefix.length + 1] = (byte) (i >>> 16);
+            key[prefix.length + 2] = (byte) (i >>> 8);
+            key[prefix.length + 3] = (byte) i;
+            keys.add(key);
+        }
+        Collections.shuffle(keys, new Random(1));
+        Index index = new Index();
+        insertAll(index.tree, keys);
+        int height = index.tree.getHeight();
+        assertTrue(height >= 3, "internal nodes split too");
+        // Compression stores the prefix once per page: the keys unshared would take
+        // over 13000 pages
+        assertTrue(index.heapFile.getNumPages() < 2000, "pages: " + index.heapFile.getNumPages());
+        assertTrue(longestLeafPrefix(index) >= prefix.length);
+        index.close();
+
+        Index reopened = new Index();
+        assertEquals(height, reopened.tree.getHeight());
+        assertAllFound(reopened.tree, keys);
+        assertNull(reopened.tree.find(prefix));
+        assertNull(reopened.tree.find(Arrays.copyOf(prefix, prefix.length + 5)));
+        reopened.close();
+    }
+
+    @Test
+    void keysThatArePrefixesOfOthers() throws IOException {
+        // "", "a", "aa", ... and each with a zero byte and a 0xFF byte after it: the
+        // shortest separator between such neighbours is the whole right key
+        List<byte[]> keys = new ArrayList<>();
+        for (int n = 0; n < 400; n++) {
+            byte[] run = new byte[n];
+            Arrays.fill(run, (byte) 'a');
+            keys.add(run);
+            byte[] low = Arrays.copyOf(run, n + 1);
+            keys.add(low);
+            byte[] high = Arrays.copyOf(run, n + 1);
+            high[n] = (byte) 0xFF;
+            keys.add(high);
+        }
+        Collections.shuffle(keys, new Random(2));
+        Index index = new Index();
+        insertAll(index.tree, keys);
+        index.close();
+
+        Index reopened = new Index();
+        assertAllFound(reopened.tree, keys);
+        assertNull(reopened.tree.find(new byte[] {'b'}));
+        assertNull(reopened.tree.find(new byte[] {'a', 0, 0}));
+        reopened.close();
+    }
+
+    @Test
+    void compositeKeysSurviveReopen() throws IOException {
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            keys.add(new KeyBuilder().appendString("tenant-" + i % 13).appendLong(-i).appendInt(i).build());
+        }
+        Index index = new Index();
+        insertAll(index.tree, keys);
+        index.close();
+
+        Index reopened = new Index();
+        assertAllFound(reopened.tree, keys);
+        assertNull(reopened.tree.find(new KeyBuilder().appendString("tenant-1").appendLong(-1).appendInt(2).build()));
+        // The key count is saved by checkpoints too, without a root split
+        reopened.tree.insert(KeyBuilder.ofString("one more"), new RecordId(0, 0));
+        reopened.bufferManager.checkpoint();
+        reopened.bufferManager.close();
+        reopened.heapFile.close();
+
+        Index again = new Index();
+        assertEquals(keys.size() + 1, again.tree.getKeyCount());
+        again.close();
+    }
+
+    @Test
+    void largestKeysFitAndLongerOnesAreRejected() throws IOException {
+        Index index = new Index();
+        List<byte[]> keys = new ArrayList<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 200; i++) {
+            byte[] key = new byte[VarBTreePage.MAX_KEY_SIZE];
+            random.nextBytes(key);
+            keys.add(key);
+        }
+        insertAll(index.tree, keys);
+        assertThrows(IllegalArgumentException.class,
+                () -> index.tree.insert(new byte[VarBTreePage.MAX_KEY_SIZE + 1], new RecordId(0, 0)));
+        index.close();
+
+        Index reopened = new Index();
+        assertAllFound(reopened.tree, keys);
+        reopened.close();
+    }
+}
@@ -0,0 +1,248 @@
+package com.aerodb.storage;
+
+import com.aerodb.buffer.BufferManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnarHeapPageTest {
+    @TempDir
+    Path dir;
+
+    private final class Table {
+        final HeapFile heapFile;
+        final HeapFile fsmFile;
+        final BufferManager bufferManager;
+        final BufferManager fsmBufferManager;
+        final TableHeap heap;
+
+        Table(TupleDesc schema) {
+            heapFile = new HeapFile(dir.resolve("t.db").toFile());
+            fsmFile = new HeapFile(dir.resolve("t.fsm").toFile());
+            bufferManager = new BufferManager(heapFile, 32);
+            fsmBufferManager = new BufferManager(fsmFile, 8);
+            heap = new TableHeap(bufferManager, new FreeSpaceMap(fsmBufferManager), schema, true);
+        }
+
+        void close() throws IOException {
+            heap.flush();
+            bufferManager.close();
+            fsmBufferManager.close();
+            heapFile.close();
+            fsmFile.close();
+        }
+    }
+
+    private static TupleDesc schema() {
+        TupleDesc schema = new TupleDesc();
+        schema.addField(Type.INT, "id");
+        schema.addField(Type.LONG, "l");
+        schema.addField(Type.DOUBLE, "d");
+        schema.addField(Type.BOOLEAN, "b");
+        schema.addField(Type.TIMESTAMP, "t");
+        schema.addField(Type.STRING, "s");
+        schema.addField(Type.CHAR, 6, "c");
+        return schema;
+    }
+
+    // Strings from empty to a few hundred bytes, so pages fill unevenly
+    private static Tuple row(TupleDesc schema, int i) {
+        Tuple t = new Tuple(schema);
+        t.setField(0, i);
+        t.setField(1, (long) i * -1_000_000_007L);
+        t.setField(2, i / 4.0 - 100);
+        t.setField(3, i % 3 == 0);
+        t.setField(4, Instant.ofEpochSecond(1_700_000_000L + i, i % 1000 * 1000));
+        t.setField(5, "s".repeat(i * 7 % 300));
+        t.setField(6, "c" + i % 10000);
+        return t;
+    }
+
+    private static void assertRow(TupleDesc schema, int i, Tuple t) {
+        Tuple expected = row(schema, i);
+        for (int f = 0; f < schema.numFields(); f++) {
+            assertEquals(expected.getField(f), t.getField(f), "row " + i + " field " + f);
+        }
+    }
+
+    @Test
+    void rowsOfEveryTypeSurviveReopen() throws IOException {
+        TupleDesc schema = schema();
+        Table table = new Table(schema);
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            rids.add(table.heap.insertTuple(row(schema, i)));
+        }
+        int pages = table.heap.getNumPages();
+        assertTrue(pages > 1);
+        table.close();
+
+        Table reopened = new Table(schema);
+        assertTrue(reopened.heap.isColumnar());
+        assertEquals(pages, reopened.heap.getNumPages());
+        for (int i = 0; i < rids.size(); i++) {
+            assertRow(schema, i, reopened.heap.getTuple(rids.get(i), schema));
+        }
+        // Page by page, the columns read back the same as whole rows
+        int[] seen = new int[1];
+        reopened.heap.scanColumnar(0, Integer.MIN_VALUE, Integer.MAX_VALUE, page -> {
+            int[] ids = new int[page.getNumTuples()];
+            page.getInts(0, 0, ids, 0, ids.length);
+            for (int row = 0; row < ids.length; row++) {
+                assertEquals(row(schema, ids[row]).getField(5), page.getString(row, 5));
+                assertEquals(row(schema, ids[row]).getField(4), page.getField(row, 4));
+            }
+            seen[0] += ids.length;
+        });
+        assertEquals(rids.size(), seen[0]);
+        // Pages with room left take new rows after the reopen
+        RecordId rid = reopened.heap.insertTuple(row(schema, 0));
+        assertTrue(rid.pageId < pages);
+        reopened.close();
+    }
+
+    @Test
+    void scansSkipPagesOutsideTheRange() throws IOException {
+        TupleDesc schema = schema();
+        Table table = new Table(schema);
+        for (int i = 0; i < 5000; i++) {
+            table.heap.insertTuple(row(schema, i));
+        }
+        table.close();
+
+        // Mostly in id order, though short rows fill gaps left in earlier pages: the
+        // scan visits exactly the pages whose ids overlap the range
+        Table reopened = new Table(schema);
+        int[] overlapping = new int[1];
+        reopened.heap.scanColumnar(0, Integer.MIN_VALUE, Integer.MAX_VALUE, page -> {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int row = 0; row < page.getNumTuples(); row++) {
+                min = Math.min(min, page.getInt(row, 0));
+                max = Math.max(max, page.getInt(row, 0));
+            }
+            assertEquals(min, page.getMin(0));
+            assertEquals(max, page.getMax(0));
+            if (min <= 2009 && max >= 2000) {
+                overlapping[0]++;
+            }
+        });
+        int[] visited = new int[1];
+        int[] matches = new int[1];
+        reopened.heap.scanColumnar(0, 2000, 2009, page -> {
+            visited[0]++;
+            for (int row = 0; row < page.getNumTuples(); row++) {
+                int id = page.getInt(row, 0);
+                if (id >= 2000 && id <= 2009) {
+                    matches[0]++;
+                }
+            }
+        });
+        assertEquals(10, matches[0]);
+        assertEquals(overlapping[0], visited[0]);
+        assertTrue(visited[0] < reopened.heap.getNumPages(), "visited " + visited[0]);
+
+        // DOUBLE columns compare as doubles, TIMESTAMPs as microseconds
+        visited[0] = 0;
+        reopened.heap.scanColumnar(2, Double.doubleToLongBits(1e9), Double.doubleToLongBits(2e9),
+                page -> visited[0]++);
+        reopened.heap.scanColumnar(4, 0, 1_000_000_000L * 1_000_000, page -> visited[0]++);
+        assertEquals(0, visited[0]);
+        visited[0] = 0;
+        long firstMicros = 1_700_000_000L * 1_000_000;
+        reopened.heap.scanColumnar(4, firstMicros, firstMicros, page -> {
+            assertEquals(0, page.getInt(0, 0));
+            visited[0]++;
+        });
+        assertEquals(1, visited[0]);
+        // STRING and CHAR columns have no stats: every page is visited
+        visited[0] = 0;
+        reopened.heap.scanColumnar(5, 0, 0, page -> visited[0]++);
+        assertEquals(reopened.heap.getNumPages(), visited[0]);
+        reopened.close();
+    }
+
+    @Test
+    void pageFillsToTheLastByte() {
+        TupleDesc schema = new TupleDesc();
+        schema.addField(Type.INT, "id");
+        schema.addField(Type.STRING, "s");
+        ColumnarHeapPage page = new ColumnarHeapPage(new Page(0), schema);
+        assertFalse(page.mayContain(0, Integer.MIN_VALUE, Integer.MAX_VALUE));
+        int rows = 0;
+        while (page.getFreeSpace() >= 200) {
+            Tuple t = new Tuple(schema);
+            t.setField(0, rows);
+            t.setField(1, "x".repeat(rows % 50));
+            assertEquals(rows, page.insertTuple(t));
+            rows++;
+        }
+        // A string that takes exactly what is left: the minipages move to make room
+        Tuple last = new Tuple(schema);
+        last.setField(0, rows);
+        last.setField(1, "y".repeat(page.getFreeSpace() - 8));
+        assertEquals(rows, page.insertTuple(last));
+        assertEquals(0, page.getFreeSpace());
+        Tuple empty = new Tuple(schema);
+        empty.setField(0, -1);
+        empty.setField(1, "");
+        assertThrows(RuntimeException.class, () -> page.insertTuple(empty));
+
+        for (int row = 0; row < rows; row++) {
+            assertEquals(row, page.getInt(row, 0));
+            assertEquals("x".repeat(row % 50), page.getString(row, 1));
+        }
+        assertEquals(last.getField(1), page.getString(rows, 1));
+        assertEquals(0, page.getMin(0));
+        assertEquals(rows, page.getMax(0));
+    }
+
+    @Test
+    void largestTupleFitsAnEmptyPage() throws IOException {
+        TupleDesc schema = new TupleDesc();
+        schema.addField(Type.INT, "id");
+        schema.addField(Type.STRING, "s");
+        int max = ColumnarHeapPage.maxTupleSize(schema);
+        Table table = new Table(schema);
+        Tuple tooLarge = new Tuple(schema);
+        tooLarge.setField(0, 1);
+        tooLarge.setField(1, "x".repeat(max - 7));
+        assertThrows(IllegalArgumentException.class, () -> table.heap.insertTuple(tooLarge));
+
+        Tuple largest = new Tuple(schema);
+        largest.setField(0, 2);
+        largest.setField(1, "y".repeat(max - 8));
+        assertEquals(max, largest.getSerializedSize());
+        RecordId rid = table.heap.insertTuple(largest);
+        table.close();
+
+        Table reopened = new Table(schema);
+        assertEquals(largest.getField(1), reopened.heap.getTuple(rid, schema).getField(1));
+        reopened.close();
+    }
+
+    @Test
+    void columnarTableNeedsASchema() throws IOException {
+        HeapFile heapFile = new HeapFile(dir.resolve("t.db").toFile());
+        HeapFile fsmFile = new HeapFile(dir.resolve("t.fsm").toFile());
+        BufferManager bufferManager = new BufferManager(heapFile, 8);
+        BufferManager fsmBufferManager = new BufferManager(fsmFile, 8);
+        FreeSpaceMap map = new FreeSpaceMap(fsmBufferManager);
+        assertThrows(IllegalArgumentException.class, () -> new TableHeap(bufferManager, map, null, true));
+        assertFalse(new TableHeap(bufferManager, map, null, false).isColumnar());
+        bufferManager.close();
+        fsmBufferManager.close();
+        heapFile.close();
+        fsmFile.close();
+    }
+}
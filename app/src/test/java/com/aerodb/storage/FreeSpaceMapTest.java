@@ -0,0 +1,170 @@
+package com.aerodb.storage;
+
+import com.aerodb.buffer.BufferManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FreeSpaceMapTest {
+    // More heap pages than one entry page of the map holds
+    private static final int PAGES = 1000;
+
+    @TempDir
+    Path dir;
+
+    // A file and its pool, closed the way a clean shutdown does
+    private static final class Pool {
+        final HeapFile heapFile;
+        final BufferManager bufferManager;
+
+        Pool(File f) {
+            heapFile = new HeapFile(f);
+            bufferManager = new BufferManager(heapFile, 16);
+        }
+
+        void close() throws IOException {
+            bufferManager.flushAll();
+            bufferManager.close();
+            heapFile.close();
+        }
+    }
+
+    private File fsmFile() {
+        return dir.resolve("t.fsm").toFile();
+    }
+
+    private static int freeBytesOf(int heapPageId) {
+        // Bucket edges and both ends of the range, then spread over the rest
+        int[] edges = {0, 1, 63, 64, 65, Page.USABLE_SIZE, Page.PAGE_SIZE};
+        return heapPageId < edges.length ? edges[heapPageId] : heapPageId * 37 % Page.PAGE_SIZE;
+    }
+
+    @Test
+    void entriesSurviveReopen() throws IOException {
+        Pool pool = new Pool(fsmFile());
+        FreeSpaceMap map = new FreeSpaceMap(pool.bufferManager);
+        for (int p = 0; p < PAGES; p++) {
+            map.addPage(p, freeBytesOf(p));
+        }
+        // Moves between buckets, and within one. The bucket edges stay as they are
+        for (int p = 9; p < PAGES; p += 3) {
+            map.update(p, (freeBytesOf(p) + 500) % Page.PAGE_SIZE);
+        }
+        map.update(PAGES - 1, 1);
+        map.update(PAGES - 1, 2);
+        pool.close();
+
+        Pool reopened = new Pool(fsmFile());
+        FreeSpaceMap again = new FreeSpaceMap(reopened.bufferManager);
+        assertEquals(PAGES, again.getNumTracked());
+        for (int p = 0; p < PAGES - 1; p++) {
+            int expected = p >= 9 && p % 3 == 0 ? (freeBytesOf(p) + 500) % Page.PAGE_SIZE : freeBytesOf(p);
+            assertEquals(expected, again.getFreeSpace(p), "page " + p);
+        }
+        assertEquals(2, again.getFreeSpace(PAGES - 1));
+
+        // The bucket lists came back too: every answer has room, and a full page is found
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            int needed = 1 + random.nextInt(Page.PAGE_SIZE);
+            int page = again.findPage(needed);
+            if (page != -1) {
+                assertTrue(again.getFreeSpace(page) >= needed, "page " + page + " for " + needed);
+            }
+        }
+        assertEquals(6, again.findPage(Page.PAGE_SIZE));
+        reopened.close();
+    }
+
+    @Test
+    void pagesMustBeAddedInOrder() throws IOException {
+        Pool pool = new Pool(fsmFile());
+        FreeSpaceMap map = new FreeSpaceMap(pool.bufferManager);
+        map.addPage(0, 100);
+        assertThrows(IllegalArgumentException.class, () -> map.addPage(2, 100));
+        assertThrows(IllegalArgumentException.class, () -> map.getFreeSpace(1));
+        pool.close();
+    }
+
+    @Test
+    void tableReusesFreeSpaceAfterReopen() throws IOException {
+        TupleDesc schema = new TupleDesc();
+        schema.addField(Type.INT, "id");
+        schema.addField(Type.STRING, "name");
+        File dataFile = dir.resolve("t.db").toFile();
+
+        Pool data = new Pool(dataFile);
+        Pool fsm = new Pool(fsmFile());
+        TableHeap table = new TableHeap(data.bufferManager, new FreeSpaceMap(fsm.bufferManager), schema);
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            rids.add(table.insertTuple(row(schema, i)));
+        }
+        int pages = table.getNumPages();
+        data.close();
+        fsm.close();
+
+        data = new Pool(dataFile);
+        fsm = new Pool(fsmFile());
+        table = new TableHeap(data.bufferManager, new FreeSpaceMap(fsm.bufferManager), schema);
+        assertEquals(pages, table.getNumPages());
+        for (int i = 0; i < rids.size(); i++) {
+            Tuple t = table.getTuple(rids.get(i), schema);
+            assertEquals(i, t.getField(0));
+            assertEquals("name" + i, t.getField(1));
+        }
+        // The last page still had room: a new row goes there, not to a new page
+        RecordId rid = table.insertTuple(row(schema, -1));
+        assertTrue(rid.pageId < pages);
+        assertEquals(pages, table.getNumPages());
+        data.close();
+        fsm.close();
+    }
+
+    @Test
+    void lostMapIsRebuiltFromTheTable() throws IOException {
+        TupleDesc schema = new TupleDesc();
+        schema.addField(Type.INT, "id");
+        schema.addField(Type.STRING, "name");
+        File dataFile = dir.resolve("t.db").toFile();
+
+        Pool data = new Pool(dataFile);
+        Pool fsm = new Pool(fsmFile());
+        TableHeap table = new TableHeap(data.bufferManager, new FreeSpaceMap(fsm.bufferManager), schema);
+        RecordId last = null;
+        for (int i = 0; i < 3000; i++) {
+            last = table.insertTuple(row(schema, i));
+        }
+        data.close();
+        fsm.close();
+        Files.delete(fsmFile().toPath());
+
+        data = new Pool(dataFile);
+        fsm = new Pool(fsmFile());
+        FreeSpaceMap map = new FreeSpaceMap(fsm.bufferManager);
+        table = new TableHeap(data.bufferManager, map, schema);
+        assertEquals(table.getNumPages(), map.getNumTracked());
+        assertEquals(2999, table.getTuple(last, schema).getField(0));
+        assertTrue(map.getFreeSpace(last.pageId) > 0);
+        data.close();
+        fsm.close();
+    }
+
+    private static Tuple row(TupleDesc schema, int i) {
+        Tuple t = new Tuple(schema);
+        t.setField(0, i);
+        t.setField(1, "name" + i);
+        return t;
+    }
+}
@@ -0,0 +1,240 @@
+package com.aerodb.storage;
+
+import com.aerodb.buffer.BufferManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TupleTypesTest {
+    @TempDir
+    Path dir;
+
+    private final class Table {
+        final HeapFile heapFile;
+        final HeapFile fsmFile;
+        final BufferManager bufferManager;
+        final BufferManager fsmBufferManager;
+        final TableHeap heap;
+
+        Table(TupleDesc schema) {
+            heapFile = new HeapFile(dir.resolve("t.db").toFile());
+            fsmFile = new HeapFile(dir.resolve("t.fsm").toFile());
+            bufferManager = new BufferManager(heapFile, 32);
+            fsmBufferManager = new BufferManager(fsmFile, 8);
+            heap = new TableHeap(bufferManager, new FreeSpaceMap(fsmBufferManager), schema);
+        }
+
+        void close() throws IOException {
+            heap.flush();
+            bufferManager.close();
+            fsmBufferManager.close();
+            heapFile.close();
+            fsmFile.close();
+        }
+    }
+
+    private static TupleDesc fixedSchema() {
+        TupleDesc schema = new TupleDesc();
+        schema.addField(Type.INT, "i");
+        schema.addField(Type.LONG, "l");
+        schema.addField(Type.DOUBLE, "d");
+        schema.addField(Type.BOOLEAN, "b");
+        schema.addField(Type.TIMESTAMP, "t");
+        schema.addField(Type.CHAR, 8, "c");
+        return schema;
+    }
+
+    // Extreme values of every type; CHAR values that are empty, exactly full, multi-byte,
+    // or end in spaces (which come back trimmed, like the padding)
+    private static List<Object[]> edgeRows() {
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[] {Integer.MIN_VALUE, Long.MIN_VALUE, Double.NEGATIVE_INFINITY, false,
+                Instant.ofEpochSecond(-1, 999_999_000), "", ""});
+        rows.add(new Object[] {Integer.MAX_VALUE, Long.MAX_VALUE, Double.MAX_VALUE, true,
+                Instant.ofEpochSecond(4_000_000_000L, 123_456_000), "abcdefgh", "abcdefgh"});
+        rows.add(new Object[] {0, 0L, -0.0, true, Instant.EPOCH, "\u00e9t\u00e9", "\u00e9t\u00e9"});
+        rows.add(new Object[] {-1, -1L, Double.NaN, false, Instant.ofEpochSecond(0, 1000), "ab  ", "ab"});
+        rows.add(new Object[] {7, 1L << 40, Double.MIN_VALUE, false, Instant.ofEpochSecond(-62_000_000_000L), " x", " x"});
+        return rows;
+    }
+
+    private static Tuple toTuple(TupleDesc schema, Object[] row) {
+        Tuple t = new Tuple(schema);
+        for (int f = 0; f < schema.numFields(); f++) {
+            t.setField(f, row[f]);
+        }
+        return t;
+    }
+
+    // The last element of an edge row is what the CHAR field reads back as
+    private static void assertRow(Object[] row, Tuple t) {
+        for (int f = 0; f < 5; f++) {
+            assertEquals(row[f], t.getField(f), "field " + f);
+        }
+        assertEquals(row[6], t.getField(5));
+    }
+
+    @Test
+    void everyTypeRoundTripsThroughATable() throws IOException {
+        TupleDesc schema = fixedSchema();
+        assertTrue(schema.isFixedWidth());
+        assertEquals(4 + 8 + 8 + 1 + 8 + 8, schema.getFixedSize());
+
+        Table table = new Table(schema);
+        List<Object[]> rows = edgeRows();
+        List<RecordId> rids = new ArrayList<>();
+        for (Object[] row : rows) {
+            rids.add(table.heap.insertTuple(toTuple(schema, row)));
+        }
+        table.close();
+
+        Table reopened = new Table(schema);
+        for (int i = 0; i < rows.size(); i++) {
+            assertRow(rows.get(i), reopened.heap.getTuple(rids.get(i), schema));
+        }
+        reopened.close();
+    }
+
+    @Test
+    void serializeAndDeserializeAgreeWithThePageEncoding() {
+        TupleDesc schema = fixedSchema();
+        for (Object[] row : edgeRows()) {
+            Tuple t = toTuple(schema, row);
+            byte[] bytes = t.serialize();
+            assertEquals(t.getSerializedSize(), bytes.length);
+
+            Page page = new Page(0);
+            t.serializeInto(page, 100);
+            byte[] inPage = new byte[bytes.length];
+            page.getBuffer().get(100, inPage);
+            assertArrayEquals(bytes, inPage);
+
+            Tuple back = new Tuple(schema);
+            back.deserialize(bytes);
+            assertRow(row, back);
+        }
+    }
+
+    @Test
+    void charValuesThatDoNotFitAreRejected() {
+        TupleDesc schema = new TupleDesc();
+        schema.addField(Type.CHAR, 4, "c");
+        Tuple t = new Tuple(schema);
+        t.setField(0, "abcde");
+        assertThrows(IllegalArgumentException.class, t::getSerializedSize);
+        // Four characters, but five bytes of UTF-8
+        t.setField(0, "\u00e9abc");
+        assertThrows(IllegalArgumentException.class, t::serialize);
+        t.setField(0, "\u00e9ab");
+        assertEquals(4, t.serialize().length);
+
+        assertThrows(IllegalArgumentException.class, () -> schema.addField(Type.CHAR, "no length"));
+        assertThrows(IllegalArgumentException.class, () -> schema.addField(Type.CHAR, 0, "empty"));
+        assertThrows(IllegalArgumentException.class, () -> schema.addField(Type.INT, 4, "not char"));
+    }
+
+    @Test
+    void fixedSlotPageTakesRowsUpToTheLastWholeOne() {
+        TupleDesc schema = fixedSchema();
+        int perPage = (Page.USABLE_SIZE - 8) / schema.getFixedSize();
+        HeapPage heapPage = new HeapPage(new Page(0), schema.getFixedSize());
+        assertTrue(heapPage.isFixedSize());
+        for (int i = 0; i < perPage; i++) {
+            assertTrue(heapPage.fits(schema.getFixedSize()));
+            assertEquals(i, heapPage.insertTuple(toTuple(schema, edgeRows().get(i % 5))));
+        }
+        assertFalse(heapPage.fits(schema.getFixedSize()));
+        assertTrue(heapPage.getFreeSpace() < schema.getFixedSize());
+        assertThrows(RuntimeException.class, () -> heapPage.insertTuple(toTuple(schema, edgeRows().get(0))));
+        // A row of another size never goes into a fixed-slot page
+        assertFalse(new HeapPage(new Page(1), schema.getFixedSize()).fits(schema.getFixedSize() - 1));
+        for (int i = 0; i < perPage; i++) {
+            assertRow(edgeRows().get(i % 5), heapPage.getTuple(i, schema));
+        }
+    }
+
+    @Test
+    void fixedSlotTableSurvivesReopen() throws IOException {
+        TupleDesc schema = fixedSchema();
+        Table table = new Table(schema);
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Object[] row = {i, (long) -i, i / 2.0, i % 2 == 0, Instant.ofEpochSecond(i), "r" + i, "r" + i};
+            rids.add(table.heap.insertTuple(toTuple(schema, row)));
+        }
+        // Rows fill one page after another
+        for (int i = 1; i < rids.size(); i++) {
+            assertTrue(rids.get(i).pageId >= rids.get(i - 1).pageId);
+        }
+        int pages = table.heap.getNumPages();
+        table.close();
+
+        Table reopened = new Table(schema);
+        assertEquals(pages, reopened.heap.getNumPages());
+        for (int pageId = 0; pageId < pages; pageId++) {
+            Page page = reopened.bufferManager.pinPage(pageId);
+            assertTrue(HeapPage.readOnly(page).isFixedSize());
+            reopened.bufferManager.unpinPage(pageId, false);
+        }
+        for (int i = 0; i < rids.size(); i++) {
+            Tuple t = reopened.heap.getTuple(rids.get(i), schema);
+            assertEquals(i, t.getField(0));
+            assertEquals((long) -i, t.getField(1));
+            assertEquals("r" + i, t.getField(5));
+        }
+        reopened.close();
+    }
+
+    @Test
+    void slottedPageTakesTheLargestTupleAndNothingMore() {
+        TupleDesc schema = new TupleDesc();
+        schema.addField(Type.STRING, "s");
+        Tuple largest = new Tuple(schema);
+        largest.setField(0, "x".repeat(HeapPage.maxTupleSize() - 4));
+        assertEquals(HeapPage.maxTupleSize(), largest.getSerializedSize());
+
+        HeapPage heapPage = new HeapPage(new Page(0));
+        assertFalse(heapPage.isFixedSize());
+        assertTrue(heapPage.fits(HeapPage.maxTupleSize()));
+        assertEquals(0, heapPage.insertTuple(largest));
+        assertEquals(0, heapPage.getFreeSpace());
+        Tuple empty = new Tuple(schema);
+        empty.setField(0, "");
+        assertThrows(RuntimeException.class, () -> heapPage.insertTuple(empty));
+        assertEquals(largest.getField(0), heapPage.getTuple(0, schema).getField(0));
+    }
+
+    @Test
+    void tableRejectsRowsLargerThanAPage() throws IOException {
+        TupleDesc schema = new TupleDesc();
+        schema.addField(Type.INT, "id");
+        schema.addField(Type.STRING, "s");
+        Table table = new Table(schema);
+        Tuple tooLarge = new Tuple(schema);
+        tooLarge.setField(0, 1);
+        tooLarge.setField(1, "x".repeat(HeapPage.maxTupleSize()));
+        assertThrows(IllegalArgumentException.class, () -> table.heap.insertTuple(tooLarge));
+
+        // Variable-size rows go to slotted pages, and the largest one still fits
+        Tuple largest = new Tuple(schema);
+        largest.setField(0, 2);
+        largest.setField(1, "y".repeat(HeapPage.maxTupleSize() - 8));
+        RecordId rid = table.heap.insertTuple(largest);
+        table.close();
+
+        Table reopened = new Table(schema);
+        assertEquals(largest.getField(1), reopened.heap.getTuple(rid, schema).getField(1));
+        reopened.close();
+    }
+}
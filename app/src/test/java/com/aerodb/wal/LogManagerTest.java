@@ -0,0 +1,279 @@
+package com.aerodb.wal;
+
+import com.aerodb.buffer.BufferManager;
+import com.aerodb.storage.HeapFile;
+import com.aerodb.storage.Page;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogManagerTest {
+    private static final int HEADER_SIZE = 16;
+    private static final int PAGES = 3;
+
+    @TempDir
+    Path dir;
+
+    // A data file under a log. crash() drops it like a killed process would: dirty pages
+    // are never written, only what commit() made durable is left
+    private final class Db {
+        final HeapFile heapFile;
+        final BufferManager bufferManager;
+        final LogManager log;
+
+        Db() {
+            heapFile = new HeapFile(dir.resolve("t.db").toFile());
+            bufferManager = new BufferManager(heapFile, 16);
+            log = new LogManager(walFile());
+            log.register(0, bufferManager);
+            log.recover();
+            while (heapFile.getNumPages() < PAGES) {
+                bufferManager.allocateNewPage();
+            }
+        }
+
+        void write(int pageId, int offset, int value) {
+            Page page = bufferManager.pinPage(pageId);
+            page.setInt(offset, value);
+            bufferManager.unpinPage(pageId, true);
+        }
+
+        int read(int pageId, int offset) {
+            Page page = bufferManager.pinPage(pageId);
+            try {
+                return page.getInt(offset);
+            } finally {
+                bufferManager.unpinPage(pageId, false);
+            }
+        }
+
+        void crash() throws IOException {
+            bufferManager.close();
+            heapFile.close();
+            log.close();
+        }
+    }
+
+    private File walFile() {
+        return dir.resolve("t.wal").toFile();
+    }
+
+    // What the data file itself holds, without the log
+    private int readFromDisk(int pageId, int offset) throws IOException {
+        HeapFile heapFile = new HeapFile(dir.resolve("t.db").toFile());
+        try {
+            return heapFile.readPage(pageId).getInt(offset);
+        } finally {
+            heapFile.close();
+        }
+    }
+
+    @Test
+    void redoRestoresCommittedChangesAfterCrash() throws IOException {
+        Db db = new Db();
+        for (int p = 0; p < PAGES; p++) {
+            for (int i = 0; i < 100; i++) {
+                db.write(p, i * 4, p * 1000 + i);
+            }
+        }
+        db.log.commit();
+        db.crash();
+        assertEquals(0, readFromDisk(1, 40), "the page never reached the data file");
+
+        Db reopened = new Db();
+        for (int p = 0; p < PAGES; p++) {
+            for (int i = 0; i < 100; i++) {
+                assertEquals(p * 1000 + i, reopened.read(p, i * 4));
+            }
+        }
+        // Recovery writes the pages and starts an empty log
+        assertEquals(42, readFromDisk(0, 4 * 42));
+        assertEquals(HEADER_SIZE, walFile().length());
+        reopened.crash();
+    }
+
+    @Test
+    void tornTailIsDroppedAndNewRecordsFollowTheLastGoodOne() throws IOException {
+        Db db = new Db();
+        db.write(0, 0, 7);
+        db.write(2, 100, 8);
+        db.log.commit();
+        db.crash();
+        long goodLength = walFile().length();
+
+        // A record cut short by the crash: its header and half its bytes
+        try (FileChannel channel = FileChannel.open(walFile().toPath(), StandardOpenOption.WRITE)) {
+            ByteBuffer torn = ByteBuffer.allocate(16 + 50);
+            torn.putInt(100).putInt(0).putInt(1).putInt(0).flip();
+            channel.write(torn, goodLength);
+        }
+
+        Db reopened = new Db();
+        assertEquals(7, reopened.read(0, 0));
+        assertEquals(8, reopened.read(2, 100));
+        assertEquals(0, reopened.read(1, 0), "nothing of the torn record is applied");
+
+        // Logged after the dropped tail, so the next recovery reads it
+        reopened.write(1, 200, 9);
+        reopened.log.commit();
+        reopened.crash();
+
+        Db again = new Db();
+        assertEquals(7, again.read(0, 0));
+        assertEquals(9, again.read(1, 200));
+        again.crash();
+    }
+
+    @Test
+    void emptyWritesDoNotEndTheLog() throws IOException {
+        Db db = new Db();
+        db.write(0, 0, 1);
+        Page page = db.bufferManager.pinPage(1);
+        page.fill(300, 0, (byte) 1);
+        page.setBytes(400, new byte[8], 0, 0);
+        page.copyWithin(0, 500, 0);
+        db.bufferManager.unpinPage(1, true);
+        db.write(2, 0, 3);
+        db.log.commit();
+        db.crash();
+
+        Db reopened = new Db();
+        assertEquals(1, reopened.read(0, 0));
+        assertEquals(3, reopened.read(2, 0));
+        reopened.crash();
+    }
+
+    @Test
+    void checkpointWritesPagesAndTruncatesTheLog() throws IOException {
+        Db db = new Db();
+        for (int i = 0; i < 1000; i++) {
+            db.write(i % PAGES, (i / PAGES) * 4, i);
+        }
+        db.log.commit();
+        assertTrue(walFile().length() > HEADER_SIZE);
+
+        db.log.checkpoint();
+        assertEquals(HEADER_SIZE, walFile().length());
+        assertEquals(999, readFromDisk(999 % PAGES, (999 / PAGES) * 4));
+
+        // Changes after the checkpoint go to the new log and are redone from it
+        db.write(0, 2000, 5);
+        db.log.commit();
+        db.crash();
+
+        Db reopened = new Db();
+        assertEquals(5, reopened.read(0, 2000));
+        assertEquals(500, reopened.read(500 % PAGES, (500 / PAGES) * 4));
+        reopened.crash();
+    }
+
+    // The background writer clears a page's dirty bit before its write reaches the file:
+    // a checkpoint meanwhile must wait for that write before it drops the log
+    @Test
+    void checkpointsWhileTheBackgroundWriterRuns() throws Exception {
+        Db db = new Db();
+        db.bufferManager.startBackgroundWriter(1.0, 1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread checkpointer = new Thread(() -> {
+            while (running.get()) {
+                db.log.checkpoint();
+            }
+        });
+        checkpointer.start();
+        int rounds = 2000;
+        try {
+            for (int i = 0; i < rounds; i++) {
+                db.write(i % PAGES, (i / PAGES % 256) * 4, i);
+                db.log.commit();
+            }
+        } finally {
+            running.set(false);
+            checkpointer.join();
+        }
+        db.bufferManager.stopBackgroundWriter();
+        db.crash();
+
+        Db reopened = new Db();
+        for (int i = rounds - PAGES * 256; i < rounds; i++) {
+            assertEquals(i, reopened.read(i % PAGES, (i / PAGES % 256) * 4));
+        }
+        reopened.crash();
+    }
+
+    // A data file whose page writes stop half way until released
+    private static final class StallingHeapFile extends HeapFile {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        StallingHeapFile(File f) {
+            super(f);
+        }
+
+        @Override
+        public void writePages(Page[] pages, int from, int count) {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.writePages(pages, from, count);
+        }
+    }
+
+    @Test
+    void checkpointWaitsForAWriteAlreadyUnderWay() throws Exception {
+        StallingHeapFile heapFile = new StallingHeapFile(dir.resolve("t.db").toFile());
+        BufferManager bufferManager = new BufferManager(heapFile, 16);
+        LogManager log = new LogManager(walFile());
+        log.register(0, bufferManager);
+        log.recover();
+        int pageId = bufferManager.allocateNewPage();
+        Page page = bufferManager.pinPage(pageId);
+        page.setInt(0, 42);
+        bufferManager.unpinPage(pageId, true);
+        log.commit();
+
+        // The page is clean to everyone else from here until its write ends
+        bufferManager.startBackgroundWriter(1.0, 1);
+        assertTrue(heapFile.writing.await(10, TimeUnit.SECONDS));
+        Thread checkpointer = new Thread(log::checkpoint);
+        checkpointer.start();
+        checkpointer.join(200);
+        assertTrue(checkpointer.isAlive(), "the checkpoint dropped the log before the page was written");
+
+        heapFile.release.countDown();
+        checkpointer.join();
+        assertFalse(checkpointer.isAlive());
+        assertEquals(HEADER_SIZE, walFile().length());
+        assertEquals(42, readFromDisk(pageId, 0));
+
+        bufferManager.stopBackgroundWriter();
+        bufferManager.close();
+        heapFile.close();
+        log.close();
+    }
+
+    @Test
+    void refusesMemoryMappedFiles() throws IOException {
+        HeapFile heapFile = new HeapFile(dir.resolve("m.db").toFile(), true);
+        LogManager log = new LogManager(walFile());
+        assertThrows(IllegalArgumentException.class, () -> log.register(0, new BufferManager(heapFile, 16)));
+        heapFile.close();
+        log.close();
+    }
+}